@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.benchmark;
+
+import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.analysis.MethodAnalysis;
+import net.melxin.asm.transformer.analysis.Reachability;
+import net.melxin.asm.transformer.analysis.TypedFrameAnalyzer;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the method analyses on every method of the jar, the analyses do not change the methods
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalysisBenchmark
+{
+	private final List<ClassNode> classNodes = new ArrayList<>();
+	private final TypedFrameAnalyzer typedFrameAnalyzer = new TypedFrameAnalyzer(null);
+	private int classCount;
+	private long instructionCount;
+
+	@Setup
+	public void load(BenchmarkInput input)
+	{
+		final JarEntryGroup group = new JarEntryGroup(input.file, input.threads);
+		classNodes.addAll(group.getClassNodes());
+		classCount = classNodes.size();
+		for (ClassNode classNode : classNodes)
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				instructionCount += method.instructions.size();
+			}
+		}
+	}
+
+	@Benchmark
+	public void analyzer(ThroughputCounters counters, Blackhole blackhole) throws AnalyzerException
+	{
+		for (ClassNode classNode : classNodes)
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				blackhole.consume(new Analyzer<>(new BasicInterpreter()).analyze(classNode.name, method));
+			}
+		}
+		count(counters);
+	}
+
+	@Benchmark
+	public void basicVerifier(ThroughputCounters counters, Blackhole blackhole) throws AnalyzerException
+	{
+		for (ClassNode classNode : classNodes)
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				blackhole.consume(new Analyzer<>(new BasicVerifier()).analyze(classNode.name, method));
+			}
+		}
+		count(counters);
+	}
+
+	@Benchmark
+	public void typedFrameAnalyzer(ThroughputCounters counters, Blackhole blackhole) throws AnalyzerException
+	{
+		for (ClassNode classNode : classNodes)
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				blackhole.consume(typedFrameAnalyzer.verify(classNode.name, method));
+			}
+		}
+		count(counters);
+	}
+
+	@Benchmark
+	public void reachability(ThroughputCounters counters, Blackhole blackhole) throws AnalyzerException
+	{
+		for (ClassNode classNode : classNodes)
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				blackhole.consume(Reachability.compute(method));
+			}
+		}
+		count(counters);
+	}
+
+	@Benchmark
+	public void controlFlowGraph(ThroughputCounters counters, Blackhole blackhole)
+	{
+		for (ClassNode classNode : classNodes)
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				blackhole.consume(new MethodAnalysis(classNode.name, method));
+			}
+		}
+		count(counters);
+	}
+
+	private void count(ThroughputCounters counters)
+	{
+		counters.classes += classCount;
+		counters.instructions += instructionCount;
+	}
+}
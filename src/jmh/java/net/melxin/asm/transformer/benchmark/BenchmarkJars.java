@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Synthetic input jars for the benchmarks, written once per size to the temp directory
+ *
+ * @see SyntheticJarGenerator
+ */
+public final class BenchmarkJars
+{
+	private BenchmarkJars()
+	{
+	}
+
+	/**
+	 * Get a jar with the given number of classes, creating it on first use
+	 *
+	 * @param classes
+	 * @return the jar file
+	 */
+	public static synchronized File get(int classes) throws IOException
+	{
+		final File jar = new File(System.getProperty("java.io.tmpdir"), "asm-transformer-synthetic-" + classes + ".jar");
+		if (!jar.isFile())
+		{
+			final File tmp = File.createTempFile("asm-transformer-benchmark", ".jar");
+			new SyntheticJarGenerator(classes, 0).write(tmp);
+			if (!tmp.renameTo(jar))
+			{
+				tmp.deleteOnExit();
+				return tmp;
+			}
+		}
+		return jar;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.ClassReferenceIndex;
+import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.basic.UnusedClassRemover;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Measures building the class reference index and removing unused classes on
+ * synthetic jars of an increasing size.
+ * <p>
+ * Every tenth class is empty, half of the empty classes are referenced by a type
+ * instruction of the class before them, the others are unused.
+ * <p>
+ * Usage: ClassReferenceBenchmark [max classes] [iterations]
+ */
+@Slf4j
+public class ClassReferenceBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		final int maxClasses = args.length > 0 ? Integer.parseInt(args[0]) : 64_000;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		final int threads = Runtime.getRuntime().availableProcessors();
+
+		for (int classes = 1_000; classes <= maxClasses; classes *= 4)
+		{
+			final File jar = File.createTempFile("references", ".jar");
+			jar.deleteOnExit();
+			writeJar(jar, classes);
+
+			// Warm up
+			measure(jar, classes, threads, 1);
+
+			final double[] millis = measure(jar, classes, threads, iterations);
+			log.info("classes: {}, index: {} ms, remover: {} ms, per class: {} us", classes,
+				String.format("%.1f", millis[0]), String.format("%.1f", millis[1]), String.format("%.2f", millis[1] * 1000 / classes));
+		}
+	}
+
+	/**
+	 * @return the average time to build the index and to run the remover
+	 */
+	private static double[] measure(File jar, int classes, int threads, int iterations)
+	{
+		long indexNanos = 0;
+		long removerNanos = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			final JarEntryGroup group = new JarEntryGroup(jar, threads);
+			// Build the class nodes up front, they are not part of the measurement
+			group.getClassNodes().forEach(classNode -> { });
+
+			long start = System.nanoTime();
+			ClassReferenceIndex.build(group.getClassNodes(), threads);
+			indexNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			new UnusedClassRemover().transform(group);
+			removerNanos += System.nanoTime() - start;
+
+			final int expected = classes - (classes + 1) / 20;
+			if (group.getClassEntries().size() != expected)
+			{
+				throw new IllegalStateException("Expected " + expected + " classes, found " + group.getClassEntries().size());
+			}
+		}
+		return new double[]{indexNanos / 1_000_000.0 / iterations, removerNanos / 1_000_000.0 / iterations};
+	}
+
+	private static void writeJar(File jar, int classes) throws IOException
+	{
+		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar)))
+		{
+			for (int i = 0; i < classes; i++)
+			{
+				jos.putNextEntry(new JarEntry(name(i) + ".class"));
+				jos.write(i % 10 == 9 ? emptyClass(i) : referencingClass(i));
+				jos.closeEntry();
+			}
+		}
+	}
+
+	private static String name(int i)
+	{
+		return "bench/C" + i;
+	}
+
+	private static byte[] emptyClass(int i)
+	{
+		final ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name(i), null, "java/lang/Object", null);
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	/**
+	 * A class with a field and a method calling the previous class, the class before
+	 * every other empty class checks the empty class with instanceof
+	 */
+	private static byte[] referencingClass(int i)
+	{
+		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name(i), null, "java/lang/Object", null);
+		cw.visitField(Opcodes.ACC_STATIC, "a", "I", null, null).visitEnd();
+
+		final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "b", "(Ljava/lang/Object;)I", null, null);
+		mv.visitCode();
+		if (i % 20 == 8)
+		{
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitTypeInsn(Opcodes.INSTANCEOF, name(i + 1));
+			mv.visitInsn(Opcodes.POP);
+		}
+		if (i > 0 && (i - 1) % 10 != 9)
+		{
+			mv.visitVarInsn(Opcodes.ALOAD, 0);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, name(i - 1), "b", "(Ljava/lang/Object;)I", false);
+			mv.visitInsn(Opcodes.POP);
+		}
+		mv.visitFieldInsn(Opcodes.GETSTATIC, name(i), "a", "I");
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.ClassEntry;
+import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.io.JarResource;
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Measures jar load time for an increasing number of threads.
+ * <p>
+ * Usage: JarLoadBenchmark &lt;input.jar&gt; [max threads] [iterations]
+ */
+@Slf4j
+public class JarLoadBenchmark
+{
+	public static void main(String[] args)
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: JarLoadBenchmark <input.jar> [max threads] [iterations]");
+			return;
+		}
+
+		final File inputJar = new File(args[0]);
+		final int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		// Sequential baseline, also used to check the parallel results
+		final JarEntryGroup baseline = new JarEntryGroup(inputJar, 1);
+		final double baselineMillis = measure(inputJar, 1, iterations);
+		log.info("threads: 1, classes: {}, avg: {} ms", baseline.getClassEntries().size(), String.format("%.1f", baselineMillis));
+
+		for (int threads = 2; threads <= maxThreads; threads *= 2)
+		{
+			final JarEntryGroup group = new JarEntryGroup(inputJar, threads);
+			if (!sameEntries(baseline, group))
+			{
+				log.error("threads: {}, loaded entries differ from the sequential loader", threads);
+				return;
+			}
+
+			final double millis = measure(inputJar, threads, iterations);
+			log.info("threads: {}, avg: {} ms, speedup: {}x", threads, String.format("%.1f", millis), String.format("%.2f", baselineMillis / millis));
+		}
+	}
+
+	private static double measure(File inputJar, int threads, int iterations)
+	{
+		// Warm up
+		new JarEntryGroup(inputJar, threads);
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+		{
+			new JarEntryGroup(inputJar, threads);
+		}
+		return (System.nanoTime() - start) / 1_000_000.0 / iterations;
+	}
+
+	private static boolean sameEntries(JarEntryGroup expected, JarEntryGroup actual)
+	{
+		if (!classNames(expected.getClassEntries()).equals(classNames(actual.getClassEntries())))
+		{
+			return false;
+		}
+
+		final Map<String, JarResource> expectedEntries = expected.getNonClassEntries();
+		final Map<String, JarResource> actualEntries = actual.getNonClassEntries();
+		if (!expectedEntries.keySet().equals(actualEntries.keySet()))
+		{
+			return false;
+		}
+
+		for (Map.Entry<String, JarResource> entry : expectedEntries.entrySet())
+		{
+			if (!entry.getValue().getRawData().equals(actualEntries.get(entry.getKey()).getRawData()))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Set<String> classNames(Set<ClassEntry> classEntries)
+	{
+		return classEntries.stream().map(ClassEntry::getName).collect(Collectors.toCollection(TreeSet::new));
+	}
+}
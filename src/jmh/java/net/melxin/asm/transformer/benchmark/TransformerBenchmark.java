@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.benchmark;
+
+import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.JarEntryTransformer;
+import net.melxin.asm.transformer.basic.DeadMemberEliminator;
+import net.melxin.asm.transformer.basic.ExprArgOrder;
+import net.melxin.asm.transformer.basic.IllegalStateExceptionRemover;
+import net.melxin.asm.transformer.basic.RedundantGotoRemover;
+import net.melxin.asm.transformer.basic.RuntimeTryCatchExceptionBlockRemover;
+import net.melxin.asm.transformer.basic.SortMembersByName;
+import net.melxin.asm.transformer.basic.UnreachableInstructionRemover;
+import net.melxin.asm.transformer.basic.UnusedClassRemover;
+import net.melxin.asm.transformer.basic.UnusedFieldRemover;
+import net.melxin.asm.transformer.basic.UnusedMethodRemover;
+import net.melxin.asm.transformer.runelite.RuneLiteNamedAnnotationsRemover;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every transformer on its own, on a freshly loaded jar with built class trees.
+ * The allocation rate includes loading the jar before each invocation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformerBenchmark
+{
+	@Param({
+		"UnreachableInstructionRemover",
+		"RedundantGotoRemover",
+		"RuntimeTryCatchExceptionBlockRemover",
+		"SortMembersByName",
+		"UnusedFieldRemover",
+		"UnusedMethodRemover",
+		"UnusedClassRemover",
+		"DeadMemberEliminator",
+		"ExprArgOrder",
+		"IllegalStateExceptionRemover",
+		"RuneLiteNamedAnnotationsRemover"
+	})
+	public String transformer;
+
+	private JarEntryGroup group;
+	private int classCount;
+	private long instructionCount;
+
+	@Setup(Level.Invocation)
+	public void load(BenchmarkInput input)
+	{
+		group = new JarEntryGroup(input.file, input.threads);
+		classCount = 0;
+		instructionCount = 0;
+		for (ClassNode classNode : group.getClassNodes())
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				instructionCount += method.instructions.size();
+			}
+			classCount++;
+		}
+	}
+
+	@Benchmark
+	public JarEntryGroup transform(ThroughputCounters counters)
+	{
+		create(transformer).transform(group);
+		counters.classes += classCount;
+		counters.instructions += instructionCount;
+		return group;
+	}
+
+	private static JarEntryTransformer create(String name)
+	{
+		switch (name)
+		{
+			case "UnreachableInstructionRemover":
+				return new UnreachableInstructionRemover();
+			case "RedundantGotoRemover":
+				return new RedundantGotoRemover();
+			case "RuntimeTryCatchExceptionBlockRemover":
+				return new RuntimeTryCatchExceptionBlockRemover();
+			case "SortMembersByName":
+				return new SortMembersByName();
+			case "UnusedFieldRemover":
+				return new UnusedFieldRemover();
+			case "UnusedMethodRemover":
+				return new UnusedMethodRemover();
+			case "UnusedClassRemover":
+				return new UnusedClassRemover();
+			case "DeadMemberEliminator":
+				return new DeadMemberEliminator();
+			case "ExprArgOrder":
+				return new ExprArgOrder();
+			case "IllegalStateExceptionRemover":
+				return new IllegalStateExceptionRemover();
+			case "RuneLiteNamedAnnotationsRemover":
+				return new RuneLiteNamedAnnotationsRemover();
+			default:
+				throw new IllegalArgumentException("Unknown transformer: " + name);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.benchmark;
+
+import net.melxin.asm.transformer.ClassHierarchy;
+import net.melxin.asm.transformer.ClassVerifier;
+import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.NonLoadingClassWriter;
+import net.melxin.asm.transformer.VerificationLevel;
+import net.melxin.asm.transformer.analysis.TypedFrameAnalyzer;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing the class trees, with the frames of the typed frame analyzer or
+ * as the writer flags say, and verifying the class files at each verification level
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class WriteBenchmark
+{
+	@Param({"0", "" + ClassWriter.COMPUTE_FRAMES})
+	public int writerFlags;
+
+	private ClassHierarchy hierarchy;
+	private TypedFrameAnalyzer typedFrameAnalyzer;
+	private final List<ClassNode> classNodes = new ArrayList<>();
+	private final List<byte[]> classFiles = new ArrayList<>();
+	private long instructionCount;
+
+	@Setup
+	public void load(BenchmarkInput input)
+	{
+		final JarEntryGroup group = new JarEntryGroup(input.file, input.threads);
+		hierarchy = group.getHierarchy();
+		typedFrameAnalyzer = new TypedFrameAnalyzer(hierarchy);
+		classNodes.addAll(group.getClassNodes());
+		for (ClassNode classNode : classNodes)
+		{
+			for (MethodNode method : classNode.methods)
+			{
+				instructionCount += method.instructions.size();
+			}
+			classFiles.add(write(classNode));
+		}
+	}
+
+	@Benchmark
+	public void serialize(ThroughputCounters counters, Blackhole blackhole)
+	{
+		for (ClassNode classNode : classNodes)
+		{
+			blackhole.consume(write(classNode));
+		}
+		counters.classes += classNodes.size();
+		counters.instructions += instructionCount;
+	}
+
+	@Benchmark
+	public void serializeTypedFrames(ThroughputCounters counters, Blackhole blackhole)
+	{
+		for (ClassNode classNode : classNodes)
+		{
+			final boolean computed = typedFrameAnalyzer.computeFrames(classNode);
+			final ClassWriter writer = new NonLoadingClassWriter(hierarchy, computed ? 0 : ClassWriter.COMPUTE_FRAMES);
+			classNode.accept(writer);
+			blackhole.consume(writer.toByteArray());
+		}
+		counters.classes += classNodes.size();
+		counters.instructions += instructionCount;
+	}
+
+	@Benchmark
+	public void verifyStructural(ThroughputCounters counters)
+	{
+		verify(VerificationLevel.STRUCTURAL, counters);
+	}
+
+	@Benchmark
+	public void verifySampled(ThroughputCounters counters)
+	{
+		verify(VerificationLevel.SAMPLED, counters);
+	}
+
+	@Benchmark
+	public void verifyFull(ThroughputCounters counters)
+	{
+		verify(VerificationLevel.FULL, counters);
+	}
+
+	@Benchmark
+	public void verifyTyped(ThroughputCounters counters)
+	{
+		verify(VerificationLevel.TYPED, counters);
+	}
+
+	private void verify(VerificationLevel level, ThroughputCounters counters)
+	{
+		try (ClassVerifier verifier = new ClassVerifier(level, 10, hierarchy, 1))
+		{
+			for (int i = 0; i < classFiles.size(); i++)
+			{
+				verifier.verify(classNodes.get(i).name, classFiles.get(i));
+			}
+		}
+		counters.classes += classFiles.size();
+		counters.instructions += instructionCount;
+	}
+
+	private byte[] write(ClassNode classNode)
+	{
+		final ClassWriter writer = new NonLoadingClassWriter(hierarchy, writerFlags);
+		classNode.accept(writer);
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.melxin.asm.transformer.jfr.ClassParseEvent;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class of the jar, kept as raw class file bytes plus a header until a
+ * transformer asks for its {@link ClassNode}.
+ * <p>
+ * Header accessors never build the tree, once the tree is built they read
+ * from it so they always reflect the current state of the class.
+ */
+public class ClassEntry
+{
+	private final String name;
+	private final String superName;
+	private final List<String> interfaces;
+	private final int access;
+	private final List<Member> fields;
+	private final List<Member> methods;
+
+	// Original class file, released once the tree is built
+	private byte[] classFileBuffer;
+
+	private volatile ClassNode classNode;
+
+	/**
+	 * Constructor, reads the header of a class file
+	 *
+	 * @param classFileBuffer
+	 */
+	public ClassEntry(byte[] classFileBuffer)
+	{
+		final ClassParseEvent event = new ClassParseEvent();
+		event.begin();
+		final ClassReader reader = new ClassReader(classFileBuffer);
+		final HeaderVisitor header = new HeaderVisitor();
+		reader.accept(header, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		this.name = reader.getClassName();
+		this.superName = reader.getSuperName();
+		this.interfaces = Collections.unmodifiableList(Arrays.asList(reader.getInterfaces()));
+		this.access = reader.getAccess();
+		this.fields = Collections.unmodifiableList(header.fields);
+		this.methods = Collections.unmodifiableList(header.methods);
+		this.classFileBuffer = classFileBuffer;
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.className = name;
+			event.size = classFileBuffer.length;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Constructor, wraps a class node built elsewhere
+	 *
+	 * @param classNode
+	 */
+	public ClassEntry(ClassNode classNode)
+	{
+		this.name = classNode.name;
+		this.superName = classNode.superName;
+		this.interfaces = Collections.emptyList();
+		this.access = classNode.access;
+		this.fields = Collections.emptyList();
+		this.methods = Collections.emptyList();
+		this.classNode = classNode;
+	}
+
+	/**
+	 * Get the class node, building it from the class file on first use
+	 *
+	 * @return the class node, without stack map frames
+	 */
+	public ClassNode getNode()
+	{
+		ClassNode node = classNode;
+		if (node == null)
+		{
+			synchronized (this)
+			{
+				node = classNode;
+				if (node == null)
+				{
+					final ClassParseEvent event = new ClassParseEvent();
+					event.begin();
+					node = new ClassNode(Opcodes.ASM9);
+					new ClassReader(classFileBuffer).accept(node, ClassReader.SKIP_FRAMES);
+					event.end();
+					if (event.shouldCommit())
+					{
+						event.className = name;
+						event.tree = true;
+						for (MethodNode method : node.methods)
+						{
+							event.instructionCount += method.instructions.size();
+						}
+						event.size = classFileBuffer.length;
+						event.commit();
+					}
+					classNode = node;
+					classFileBuffer = null;
+				}
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * @return true if the class node has been built, it may have been modified since
+	 */
+	public boolean isMaterialized()
+	{
+		return classNode != null;
+	}
+
+	/**
+	 * @return the original class file, or null once the class node has been built
+	 */
+	public synchronized byte[] getClassFileBuffer()
+	{
+		return classFileBuffer;
+	}
+
+	public String getName()
+	{
+		final ClassNode node = classNode;
+		return node != null ? node.name : name;
+	}
+
+	public String getSuperName()
+	{
+		final ClassNode node = classNode;
+		return node != null ? node.superName : superName;
+	}
+
+	public List<String> getInterfaces()
+	{
+		final ClassNode node = classNode;
+		return node != null ? node.interfaces : interfaces;
+	}
+
+	public int getAccess()
+	{
+		final ClassNode node = classNode;
+		return node != null ? node.access : access;
+	}
+
+	public List<Member> getFields()
+	{
+		final ClassNode node = classNode;
+		if (node == null)
+		{
+			return fields;
+		}
+
+		final List<Member> members = new ArrayList<>(node.fields.size());
+		for (FieldNode field : node.fields)
+		{
+			members.add(new Member(field.access, field.name, field.desc));
+		}
+		return members;
+	}
+
+	public List<Member> getMethods()
+	{
+		final ClassNode node = classNode;
+		if (node == null)
+		{
+			return methods;
+		}
+
+		final List<Member> members = new ArrayList<>(node.methods.size());
+		for (MethodNode method : node.methods)
+		{
+			members.add(new Member(method.access, method.name, method.desc));
+		}
+		return members;
+	}
+
+	/**
+	 * Field or method signature
+	 */
+	public static class Member
+	{
+		@Getter(AccessLevel.PUBLIC)
+		private final int access;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final String name;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final String desc;
+
+		public Member(int access, String name, String desc)
+		{
+			this.access = access;
+			this.name = name;
+			this.desc = desc;
+		}
+	}
+
+	private static class HeaderVisitor extends ClassVisitor
+	{
+		private final List<Member> fields = new ArrayList<>();
+		private final List<Member> methods = new ArrayList<>();
+
+		private HeaderVisitor()
+		{
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value)
+		{
+			fields.add(new Member(access, name, descriptor));
+			return null;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
+		{
+			methods.add(new Member(access, name, descriptor));
+			return null;
+		}
+	}
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type hierarchy of the classes in a {@link ClassRegistry}, built from the class
+ * headers so no class node has to be materialized.
+ * <p>
+ * The hierarchy follows the registry, removed classes are dropped from it. Super
+ * types that are not in the registry are resolved from the {@link ClassPath}, if
+ * one is given, and cached. Queries are safe from any thread, changes to the
+ * registry must not run concurrently with queries.
+ */
+@Slf4j
+public class ClassHierarchy implements ClassRegistry.Listener
+{
+	public static final String OBJECT = "java/lang/Object";
+
+	// Marks a type that is not found on the class path
+	private static final TypeNode MISSING = new TypeNode("", null, Collections.emptyList(), false, true);
+
+	private final Map<String, TypeNode> types = new ConcurrentHashMap<>();
+	private final Map<String, TypeNode> libraryTypes = new ConcurrentHashMap<>();
+	private final ClassPath classPath;
+	private final Map<String, List<String>> ancestorCache = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, String>> commonSuperClassCache = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param classRegistry, the classes to index, changes to it are followed
+	 */
+	public ClassHierarchy(ClassRegistry classRegistry)
+	{
+		this(classRegistry, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param classRegistry, the classes to index, changes to it are followed
+	 * @param classPath, resolves the types outside of the registry, may be null
+	 */
+	public ClassHierarchy(ClassRegistry classRegistry, ClassPath classPath)
+	{
+		this.classPath = classPath;
+		for (ClassEntry classEntry : classRegistry)
+		{
+			addType(classEntry);
+		}
+		classRegistry.addListener(this);
+	}
+
+	@Override
+	public void added(ClassEntry classEntry)
+	{
+		addType(classEntry);
+		clearCaches();
+	}
+
+	@Override
+	public void removed(ClassEntry classEntry)
+	{
+		final TypeNode type = types.get(classEntry.getName());
+		if (type == null || type.placeholder)
+		{
+			return;
+		}
+
+		for (String superType : type.superTypes())
+		{
+			final TypeNode superNode = types.get(superType);
+			if (superNode != null)
+			{
+				superNode.subTypes.remove(type.name);
+				if (superNode.placeholder && superNode.subTypes.isEmpty())
+				{
+					types.remove(superType);
+				}
+			}
+		}
+
+		// Classes that still extend the removed one keep it as an unknown type
+		if (type.subTypes.isEmpty())
+		{
+			types.remove(type.name);
+		}
+		else
+		{
+			final TypeNode placeholder = TypeNode.placeholder(type.name);
+			placeholder.subTypes.addAll(type.subTypes);
+			types.put(type.name, placeholder);
+		}
+		clearCaches();
+	}
+
+	/**
+	 * Re-index a class after its super class or interfaces changed
+	 *
+	 * @param classEntry
+	 */
+	public void update(ClassEntry classEntry)
+	{
+		removed(classEntry);
+		added(classEntry);
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @return true if the type is a class of the registry
+	 */
+	public boolean contains(String name)
+	{
+		final TypeNode type = types.get(name);
+		return type != null && !type.placeholder;
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @return true if the type is a known interface
+	 */
+	public boolean isInterface(String name)
+	{
+		final TypeNode type = resolve(name);
+		return type != null && type.isInterface;
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @return the super class, or null for unknown types and java/lang/Object
+	 */
+	public String getSuperName(String name)
+	{
+		final TypeNode type = resolve(name);
+		return type != null ? type.superName : null;
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @return the direct super class and interfaces
+	 */
+	public List<String> getSuperTypes(String name)
+	{
+		final TypeNode type = resolve(name);
+		return type != null ? type.superTypes() : Collections.emptyList();
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @return the classes and interfaces that directly extend or implement the type
+	 */
+	public Set<String> getSubTypes(String name)
+	{
+		final TypeNode type = types.get(name);
+		return type != null ? Collections.unmodifiableSet(type.subTypes) : Collections.emptySet();
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @return every class and interface that extends or implements the type, directly or not
+	 */
+	public Set<String> getAllSubTypes(String name)
+	{
+		final Set<String> subTypes = new LinkedHashSet<>();
+		final List<String> queue = new ArrayList<>(getSubTypes(name));
+		for (int i = 0; i < queue.size(); i++)
+		{
+			final String subType = queue.get(i);
+			if (subTypes.add(subType))
+			{
+				queue.addAll(getSubTypes(subType));
+			}
+		}
+		return subTypes;
+	}
+
+	/**
+	 * @param iface, the internal name of an interface
+	 * @return the non-interface classes that implement the interface, directly or not
+	 */
+	public Set<String> getImplementers(String iface)
+	{
+		final Set<String> implementers = new LinkedHashSet<>();
+		for (String subType : getAllSubTypes(iface))
+		{
+			if (!isInterface(subType))
+			{
+				implementers.add(subType);
+			}
+		}
+		return implementers;
+	}
+
+	/**
+	 * Get the super class chain of a type, starting with the type itself. The chain
+	 * ends at java/lang/Object or at the first class that is not in the registry.
+	 *
+	 * @param name, the internal name
+	 * @return the ancestors
+	 */
+	public List<String> getAncestors(String name)
+	{
+		List<String> ancestors = ancestorCache.get(name);
+		if (ancestors == null)
+		{
+			final List<String> chain = new ArrayList<>();
+			for (String type = name; type != null && !chain.contains(type); type = getSuperName(type))
+			{
+				chain.add(type);
+			}
+			ancestors = Collections.unmodifiableList(chain);
+			ancestorCache.put(name, ancestors);
+		}
+		return ancestors;
+	}
+
+	/**
+	 * @param type, the internal name of a possible super type
+	 * @param subType, the internal name of a possible sub type
+	 * @return true if subType is type or extends or implements it, false if unknown
+	 */
+	public boolean isAssignableFrom(String type, String subType)
+	{
+		if (type.equals(subType) || OBJECT.equals(type))
+		{
+			return true;
+		}
+
+		final List<String> queue = new ArrayList<>();
+		queue.add(subType);
+		for (int i = 0; i < queue.size(); i++)
+		{
+			for (String superType : getSuperTypes(queue.get(i)))
+			{
+				if (superType.equals(type))
+				{
+					return true;
+				}
+				if (!queue.contains(superType))
+				{
+					queue.add(superType);
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the lowest common super class of two types, with the same rules as
+	 * {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}.
+	 * Results are cached until the hierarchy changes.
+	 *
+	 * @param type1, an internal name
+	 * @param type2, an internal name
+	 * @return the common super class, or null if it cannot be decided from the known types
+	 */
+	public String getCommonSuperClass(String type1, String type2)
+	{
+		if (type1.equals(type2))
+		{
+			return type1;
+		}
+
+		// Order the key so both argument orders share one entry
+		final boolean ordered = type1.compareTo(type2) < 0;
+		final String first = ordered ? type1 : type2;
+		final String second = ordered ? type2 : type1;
+		final Map<String, String> cache = commonSuperClassCache.computeIfAbsent(first, k -> new ConcurrentHashMap<>());
+		final String cached = cache.get(second);
+		if (cached != null)
+		{
+			return cached.isEmpty() ? null : cached;
+		}
+
+		final String result = computeCommonSuperClass(type1, type2);
+		cache.put(second, result != null ? result : "");
+		return result;
+	}
+
+	private String computeCommonSuperClass(String type1, String type2)
+	{
+		if (OBJECT.equals(type1) || OBJECT.equals(type2))
+		{
+			return OBJECT;
+		}
+		if (isAssignableFrom(type1, type2))
+		{
+			return type1;
+		}
+		if (isAssignableFrom(type2, type1))
+		{
+			return type2;
+		}
+		if (isInterface(type1) || isInterface(type2))
+		{
+			return OBJECT;
+		}
+
+		final List<String> ancestors1 = getAncestors(type1);
+		final List<String> ancestors2 = getAncestors(type2);
+		for (String ancestor : ancestors1)
+		{
+			if (ancestors2.contains(ancestor))
+			{
+				return ancestor;
+			}
+		}
+
+		// Both chains reached java/lang/Object without meeting, or an unknown class
+		final boolean complete1 = OBJECT.equals(ancestors1.get(ancestors1.size() - 1));
+		final boolean complete2 = OBJECT.equals(ancestors2.get(ancestors2.size() - 1));
+		return complete1 && complete2 ? OBJECT : null;
+	}
+
+	private void addType(ClassEntry classEntry)
+	{
+		final TypeNode type = new TypeNode(classEntry.getName(), classEntry.getSuperName(), new ArrayList<>(classEntry.getInterfaces()),
+			(classEntry.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+		// Pick up the sub types that were indexed first
+		final TypeNode previous = types.put(type.name, type);
+		if (previous != null)
+		{
+			type.subTypes.addAll(previous.subTypes);
+		}
+
+		// Link to the super types, types that are not indexed yet get a placeholder
+		for (String superType : type.superTypes())
+		{
+			types.computeIfAbsent(superType, TypeNode::placeholder).subTypes.add(type.name);
+		}
+	}
+
+	/**
+	 * Find a type in the registry, or on the class path
+	 *
+	 * @param name, the internal name
+	 * @return the type or null if it is unknown
+	 */
+	private TypeNode resolve(String name)
+	{
+		final TypeNode type = types.get(name);
+		if (type != null && !type.placeholder)
+		{
+			return type;
+		}
+		if (classPath == null)
+		{
+			return null;
+		}
+
+		TypeNode libraryType = libraryTypes.get(name);
+		if (libraryType == null)
+		{
+			// Racing threads read the same class file, the first result is kept
+			libraryType = readLibraryType(name);
+			final TypeNode previous = libraryTypes.putIfAbsent(name, libraryType);
+			if (previous != null)
+			{
+				libraryType = previous;
+			}
+		}
+		return libraryType != MISSING ? libraryType : null;
+	}
+
+	private TypeNode readLibraryType(String name)
+	{
+		final byte[] classFile = classPath.getClassFile(name);
+		if (classFile == null)
+		{
+			return MISSING;
+		}
+
+		try
+		{
+			final ClassReader reader = new ClassReader(classFile);
+			return new TypeNode(name, reader.getSuperName(), Arrays.asList(reader.getInterfaces()),
+				(reader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+		}
+		catch (RuntimeException e)
+		{
+			// e.g. a class file newer than ASM supports, resolved like a missing type
+			log.warn("Failed to read library class: {}, treating it as missing", name, e);
+			return MISSING;
+		}
+	}
+
+	private void clearCaches()
+	{
+		ancestorCache.clear();
+		commonSuperClassCache.clear();
+	}
+
+	private static class TypeNode
+	{
+		private final String name;
+		private final String superName;
+		private final List<String> interfaces;
+		private final boolean isInterface;
+		private final boolean placeholder;
+		private final Set<String> subTypes = ConcurrentHashMap.newKeySet();
+
+		private TypeNode(String name, String superName, List<String> interfaces, boolean isInterface)
+		{
+			this(name, superName, interfaces, isInterface, false);
+		}
+
+		private TypeNode(String name, String superName, List<String> interfaces, boolean isInterface, boolean placeholder)
+		{
+			this.name = name;
+			this.superName = superName;
+			this.interfaces = interfaces;
+			this.isInterface = isInterface;
+			this.placeholder = placeholder;
+		}
+
+		private static TypeNode placeholder(String name)
+		{
+			return new TypeNode(name, null, Collections.emptyList(), false, true);
+		}
+
+		private List<String> superTypes()
+		{
+			if (superName == null)
+			{
+				return interfaces;
+			}
+			final List<String> superTypes = new ArrayList<>(interfaces.size() + 1);
+			superTypes.add(superName);
+			superTypes.addAll(interfaces);
+			return superTypes;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.io.JarResource;
+import net.melxin.asm.transformer.io.MappedJarFile;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class files outside of the transformed jar: library jars and the Java runtime.
+ * <p>
+ * Class files are read as resources, nothing is ever loaded or initialized.
+ * Library jars are searched first, in the order they were added.
+ */
+@Slf4j
+public class ClassPath
+{
+	private final Map<String, JarResource> libraryClasses = new ConcurrentHashMap<>();
+
+	/**
+	 * Add a library jar
+	 *
+	 * @param jar
+	 */
+	public void addJar(File jar) throws IOException
+	{
+		int count = 0;
+		for (MappedJarFile.Entry entry : MappedJarFile.open(jar).getEntries())
+		{
+			final String name = entry.getName();
+			if (name.endsWith(".class") && !name.startsWith("META-INF/"))
+			{
+				if (libraryClasses.putIfAbsent(name.substring(0, name.length() - ".class".length()), entry.getResource()) == null)
+				{
+					count++;
+				}
+			}
+		}
+		log.info("Add library: {} with {} classes", jar.getAbsolutePath(), count);
+	}
+
+	/**
+	 * Add a single class file, it shadows library classes with the same name
+	 *
+	 * @param name, the internal name
+	 * @param classFile
+	 */
+	public void addClassFile(String name, byte[] classFile)
+	{
+		libraryClasses.put(name, JarResource.of(classFile));
+	}
+
+	/**
+	 * Get a class file
+	 *
+	 * @param name, the internal name
+	 * @return the class file or null if it is not found
+	 */
+	public byte[] getClassFile(String name)
+	{
+		try
+		{
+			final JarResource resource = libraryClasses.get(name);
+			if (resource != null)
+			{
+				return resource.getBytes();
+			}
+
+			try (InputStream is = ClassLoader.getSystemResourceAsStream(name + ".class"))
+			{
+				return is != null ? is.readAllBytes() : null;
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to read class file: {}", name, e);
+			return null;
+		}
+	}
+}
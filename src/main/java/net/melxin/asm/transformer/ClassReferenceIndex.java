@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Reverse references between the classes of a jar, from every class to the classes
+ * referencing it.
+ * <p>
+ * Covers super types, member descriptors and signatures, annotations, exceptions,
+ * instructions, constants and bootstrap arguments. The InnerClasses, EnclosingMethod
+ * and nest attributes are not references, they only describe how classes are nested.
+ * The index is a snapshot, it is not updated when the classes change.
+ */
+public class ClassReferenceIndex
+{
+	private final Map<String, Set<String>> referencedBy = new HashMap<>();
+
+	private ClassReferenceIndex()
+	{
+	}
+
+	/**
+	 * Index the references of the given classes
+	 *
+	 * @param classNodes
+	 * @param parallelism, the number of threads that collect references
+	 * @return the index
+	 */
+	public static ClassReferenceIndex build(Collection<ClassNode> classNodes, int parallelism)
+	{
+		final List<ClassNode> nodes = new ArrayList<>(classNodes);
+		final List<Set<String>> references;
+		if (parallelism > 1)
+		{
+			final ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try
+			{
+				references = pool.submit(() -> nodes.parallelStream()
+					.map(ClassReferenceIndex::getReferencedClasses)
+					.collect(Collectors.toList())).get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while indexing class references", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new IllegalStateException("Failed to index class references", e.getCause());
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		else
+		{
+			references = nodes.stream().map(ClassReferenceIndex::getReferencedClasses).collect(Collectors.toList());
+		}
+
+		final ClassReferenceIndex index = new ClassReferenceIndex();
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			final String source = nodes.get(i).name;
+			for (String target : references.get(i))
+			{
+				if (!target.equals(source))
+				{
+					index.referencedBy.computeIfAbsent(target, key -> new HashSet<>()).add(source);
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @return the other classes referencing the class when the index was built
+	 */
+	public Set<String> getReferencingClasses(String name)
+	{
+		final Set<String> sources = referencedBy.get(name);
+		return sources != null ? Collections.unmodifiableSet(sources) : Collections.emptySet();
+	}
+
+	/**
+	 * @param name, the internal name
+	 * @param classEntries, the classes that are still in the jar
+	 * @return true if another class that is still in the jar references the class
+	 */
+	public boolean isReferenced(String name, ClassRegistry classEntries)
+	{
+		final Set<String> sources = referencedBy.get(name);
+		if (sources != null)
+		{
+			for (String source : sources)
+			{
+				if (classEntries.get(source) != null)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param classNode
+	 * @return the internal names of the classes the class refers to, array types are reduced to their element type
+	 */
+	public static Set<String> getReferencedClasses(ClassNode classNode)
+	{
+		final Collector collector = new Collector();
+		collector.addInternalName(classNode.superName);
+		classNode.interfaces.forEach(collector::addInternalName);
+		collector.addSignature(classNode.signature);
+		collector.addAnnotations(classNode.visibleAnnotations);
+		collector.addAnnotations(classNode.invisibleAnnotations);
+		collector.addAnnotations(classNode.visibleTypeAnnotations);
+		collector.addAnnotations(classNode.invisibleTypeAnnotations);
+		if (classNode.permittedSubclasses != null)
+		{
+			classNode.permittedSubclasses.forEach(collector::addInternalName);
+		}
+
+		for (FieldNode field : classNode.fields)
+		{
+			collector.addDescriptor(field.desc);
+			collector.addSignature(field.signature);
+			collector.addConstant(field.value);
+			collector.addAnnotations(field.visibleAnnotations);
+			collector.addAnnotations(field.invisibleAnnotations);
+			collector.addAnnotations(field.visibleTypeAnnotations);
+			collector.addAnnotations(field.invisibleTypeAnnotations);
+		}
+
+		for (MethodNode method : classNode.methods)
+		{
+			collector.addMethod(method);
+		}
+		return collector.classes;
+	}
+
+	private static class Collector
+	{
+		private final Set<String> classes = new HashSet<>();
+
+		private void addMethod(MethodNode method)
+		{
+			addDescriptor(method.desc);
+			addSignature(method.signature);
+			if (method.exceptions != null)
+			{
+				method.exceptions.forEach(this::addInternalName);
+			}
+			addAnnotations(method.visibleAnnotations);
+			addAnnotations(method.invisibleAnnotations);
+			addAnnotations(method.visibleTypeAnnotations);
+			addAnnotations(method.invisibleTypeAnnotations);
+			addParameterAnnotations(method.visibleParameterAnnotations);
+			addParameterAnnotations(method.invisibleParameterAnnotations);
+			addAnnotationValue(method.annotationDefault);
+			if (method.tryCatchBlocks != null)
+			{
+				for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks)
+				{
+					addInternalName(tryCatchBlock.type);
+				}
+			}
+			if (method.localVariables != null)
+			{
+				for (LocalVariableNode localVariable : method.localVariables)
+				{
+					addDescriptor(localVariable.desc);
+					addSignature(localVariable.signature);
+				}
+			}
+
+			for (AbstractInsnNode insn : method.instructions)
+			{
+				switch (insn.getType())
+				{
+					case AbstractInsnNode.FIELD_INSN:
+					{
+						final FieldInsnNode fin = (FieldInsnNode) insn;
+						addInternalName(fin.owner);
+						addDescriptor(fin.desc);
+						break;
+					}
+					case AbstractInsnNode.METHOD_INSN:
+					{
+						final MethodInsnNode min = (MethodInsnNode) insn;
+						addInternalName(min.owner);
+						addDescriptor(min.desc);
+						break;
+					}
+					case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+					{
+						final InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+						addDescriptor(indy.desc);
+						addConstant(indy.bsm);
+						for (Object arg : indy.bsmArgs)
+						{
+							addConstant(arg);
+						}
+						break;
+					}
+					case AbstractInsnNode.TYPE_INSN:
+						addInternalName(((TypeInsnNode) insn).desc);
+						break;
+					case AbstractInsnNode.LDC_INSN:
+						addConstant(((LdcInsnNode) insn).cst);
+						break;
+					case AbstractInsnNode.MULTIANEWARRAY_INSN:
+						addDescriptor(((MultiANewArrayInsnNode) insn).desc);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+
+		private void addInternalName(String name)
+		{
+			if (name == null)
+			{
+				return;
+			}
+
+			if (name.startsWith("["))
+			{
+				addDescriptor(name);
+			}
+			else
+			{
+				classes.add(name);
+			}
+		}
+
+		private void addDescriptor(String desc)
+		{
+			if (desc != null)
+			{
+				addType(desc.startsWith("(") ? Type.getMethodType(desc) : Type.getType(desc));
+			}
+		}
+
+		private void addType(Type type)
+		{
+			switch (type.getSort())
+			{
+				case Type.ARRAY:
+					addType(type.getElementType());
+					break;
+				case Type.OBJECT:
+					classes.add(type.getInternalName());
+					break;
+				case Type.METHOD:
+					for (Type argument : type.getArgumentTypes())
+					{
+						addType(argument);
+					}
+					addType(type.getReturnType());
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void addSignature(String signature)
+		{
+			if (signature == null)
+			{
+				return;
+			}
+
+			new SignatureReader(signature).accept(new SignatureVisitor(Opcodes.ASM9)
+			{
+				private String className;
+
+				@Override
+				public void visitClassType(String name)
+				{
+					className = name;
+					classes.add(name);
+				}
+
+				@Override
+				public void visitInnerClassType(String name)
+				{
+					className = className + '$' + name;
+					classes.add(className);
+				}
+			});
+		}
+
+		private void addConstant(Object constant)
+		{
+			if (constant instanceof Type)
+			{
+				addType((Type) constant);
+			}
+			else if (constant instanceof Handle)
+			{
+				final Handle handle = (Handle) constant;
+				addInternalName(handle.getOwner());
+				addDescriptor(handle.getDesc());
+			}
+			else if (constant instanceof ConstantDynamic)
+			{
+				final ConstantDynamic condy = (ConstantDynamic) constant;
+				addDescriptor(condy.getDescriptor());
+				addConstant(condy.getBootstrapMethod());
+				for (int i = 0; i < condy.getBootstrapMethodArgumentCount(); i++)
+				{
+					addConstant(condy.getBootstrapMethodArgument(i));
+				}
+			}
+		}
+
+		private void addAnnotations(List<? extends AnnotationNode> annotations)
+		{
+			if (annotations != null)
+			{
+				for (AnnotationNode annotation : annotations)
+				{
+					addAnnotation(annotation);
+				}
+			}
+		}
+
+		private void addParameterAnnotations(List<AnnotationNode>[] parameterAnnotations)
+		{
+			if (parameterAnnotations != null)
+			{
+				for (List<AnnotationNode> annotations : parameterAnnotations)
+				{
+					addAnnotations(annotations);
+				}
+			}
+		}
+
+		private void addAnnotation(AnnotationNode annotation)
+		{
+			addDescriptor(annotation.desc);
+			if (annotation.values != null)
+			{
+				// Names and values alternate
+				for (int i = 1; i < annotation.values.size(); i += 2)
+				{
+					addAnnotationValue(annotation.values.get(i));
+				}
+			}
+		}
+
+		private void addAnnotationValue(Object value)
+		{
+			if (value instanceof Type)
+			{
+				addType((Type) value);
+			}
+			else if (value instanceof String[])
+			{
+				// Enum constant as descriptor and name
+				addDescriptor(((String[]) value)[0]);
+			}
+			else if (value instanceof AnnotationNode)
+			{
+				addAnnotation((AnnotationNode) value);
+			}
+			else if (value instanceof List)
+			{
+				for (Object element : (List<?>) value)
+				{
+					addAnnotationValue(element);
+				}
+			}
+		}
+	}
+}
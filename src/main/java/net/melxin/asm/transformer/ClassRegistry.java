@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Set of class entries indexed by internal name.
+ * <p>
+ * Lookups by name are constant time and entries iterate in the order they
+ * were added, which for a loaded jar is the order of its central directory.
+ * Entries are indexed by the name they had when added, transformers must
+ * not rename classes that are in the registry.
+ */
+public class ClassRegistry extends AbstractSet<ClassEntry>
+{
+	private final Map<String, ClassEntry> entries = new LinkedHashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Follow entries being added and removed
+	 *
+	 * @param listener
+	 */
+	public void addListener(Listener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Get a class entry
+	 *
+	 * @param name, the internal name
+	 * @return the class entry or null if there is none
+	 */
+	public ClassEntry get(String name)
+	{
+		return entries.get(name);
+	}
+
+	/**
+	 * Remove a class entry
+	 *
+	 * @param name, the internal name
+	 * @return the removed class entry or null if there is none
+	 */
+	public ClassEntry remove(String name)
+	{
+		final ClassEntry classEntry = entries.remove(name);
+		if (classEntry != null)
+		{
+			fireRemoved(classEntry);
+		}
+		return classEntry;
+	}
+
+	/**
+	 * Add a class entry, unless an entry with the same name exists
+	 *
+	 * @param classEntry
+	 * @return true if the entry was added
+	 */
+	@Override
+	public boolean add(ClassEntry classEntry)
+	{
+		if (entries.putIfAbsent(classEntry.getName(), classEntry) != null)
+		{
+			return false;
+		}
+		for (Listener listener : listeners)
+		{
+			listener.added(classEntry);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return o instanceof ClassEntry && entries.get(((ClassEntry) o).getName()) == o;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		if (o instanceof ClassEntry && entries.remove(((ClassEntry) o).getName(), o))
+		{
+			fireRemoved((ClassEntry) o);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Iterator<ClassEntry> iterator()
+	{
+		final Iterator<ClassEntry> it = entries.values().iterator();
+		return new Iterator<>()
+		{
+			private ClassEntry current;
+
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public ClassEntry next()
+			{
+				current = it.next();
+				return current;
+			}
+
+			@Override
+			public void remove()
+			{
+				it.remove();
+				fireRemoved(current);
+			}
+		};
+	}
+
+	@Override
+	public int size()
+	{
+		return entries.size();
+	}
+
+	@Override
+	public void clear()
+	{
+		final List<ClassEntry> removed = new ArrayList<>(entries.values());
+		entries.clear();
+		removed.forEach(this::fireRemoved);
+	}
+
+	private void fireRemoved(ClassEntry classEntry)
+	{
+		for (Listener listener : listeners)
+		{
+			listener.removed(classEntry);
+		}
+	}
+
+	public interface Listener
+	{
+		default void added(ClassEntry classEntry)
+		{
+		}
+
+		default void removed(ClassEntry classEntry)
+		{
+		}
+	}
+}
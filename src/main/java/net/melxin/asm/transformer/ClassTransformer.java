@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * A transformer that only looks at one class at a time.
+ * <p>
+ * Class transformers may be called concurrently for different classes, they must
+ * not touch other classes and must keep shared state thread safe.
+ */
+public interface ClassTransformer extends JarEntryTransformer
+{
+	/**
+	 * Transform a single class
+	 *
+	 * @param classNode
+	 * @return true if the class was changed
+	 */
+	boolean transform(ClassNode classNode);
+
+	/**
+	 * Filter classes from their header, rejected classes are never built
+	 *
+	 * @param classEntry
+	 * @return true if the class should be transformed
+	 */
+	default boolean accepts(ClassEntry classEntry)
+	{
+		return true;
+	}
+
+	/**
+	 * Called once after every class has been transformed
+	 */
+	default void complete()
+	{
+	}
+
+	@Override
+	default void transform(JarEntryGroup jarEntryGroup)
+	{
+		for (ClassEntry classEntry : jarEntryGroup.getClassEntries())
+		{
+			if (accepts(classEntry))
+			{
+				transform(classEntry.getNode());
+			}
+		}
+		complete();
+	}
+}
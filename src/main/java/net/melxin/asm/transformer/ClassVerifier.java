@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.analysis.AnalysisBudget;
+import net.melxin.asm.transformer.analysis.AnalysisBudgetExceededException;
+import net.melxin.asm.transformer.analysis.TypedFrameAnalyzer;
+import net.melxin.asm.transformer.jfr.ValidationEvent;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicVerifier;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+import org.objectweb.asm.util.CheckClassAdapter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies written class files at a {@link VerificationLevel}. With more than one
+ * thread the classes are verified on a pool of their own, next to the compression
+ * of the output jar. Failures are collected and logged as one summary when the
+ * verifier is finished, their stack traces are logged at debug level.
+ */
+@Slf4j
+public class ClassVerifier implements AutoCloseable
+{
+	@Getter(AccessLevel.PUBLIC)
+	private final VerificationLevel level;
+
+	// Share of the classes whose data flow is checked at the SAMPLED level
+	@Getter(AccessLevel.PUBLIC)
+	private final int samplePercent;
+
+	// Resolves reference types at the TYPED level
+	private final ClassHierarchy hierarchy;
+
+	// Limits of the data flow check of each method, methods over them only get the structural check
+	private final AnalysisBudget budget;
+
+	// Data flow checker of each verifier thread, methods with subroutines use the BasicVerifier
+	private final ThreadLocal<TypedFrameAnalyzer> dataFlowAnalyzers;
+
+	// Null when classes are verified on the calling thread
+	private final ExecutorService pool;
+
+	private final AtomicInteger verifiedCount = new AtomicInteger();
+
+	// First error of each failing class, by class name
+	private final Map<String, String> failures = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param level
+	 * @param samplePercent, the share of the classes whose data flow is checked at the SAMPLED level
+	 * @param hierarchy, the type hierarchy, only needed at the TYPED level
+	 * @param parallelism, the number of verifier threads, 1 verifies on the calling thread
+	 */
+	public ClassVerifier(VerificationLevel level, int samplePercent, ClassHierarchy hierarchy, int parallelism)
+	{
+		this(level, samplePercent, hierarchy, AnalysisBudget.UNLIMITED, parallelism);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param level
+	 * @param samplePercent, the share of the classes whose data flow is checked at the SAMPLED level
+	 * @param hierarchy, the type hierarchy, only needed at the TYPED level
+	 * @param budget, the limits of the data flow check of each method, methods over them are recorded with it
+	 * @param parallelism, the number of verifier threads, 1 verifies on the calling thread
+	 */
+	public ClassVerifier(VerificationLevel level, int samplePercent, ClassHierarchy hierarchy, AnalysisBudget budget, int parallelism)
+	{
+		if (level == VerificationLevel.TYPED && hierarchy == null)
+		{
+			throw new IllegalArgumentException("Typed verification needs a class hierarchy");
+		}
+		this.level = level;
+		this.samplePercent = Math.max(0, Math.min(100, samplePercent));
+		this.hierarchy = hierarchy;
+		this.budget = budget;
+		this.dataFlowAnalyzers = ThreadLocal.withInitial(() -> new TypedFrameAnalyzer(null, budget));
+		this.pool = level != VerificationLevel.OFF && parallelism > 1 ? Executors.newFixedThreadPool(parallelism, runnable ->
+		{
+			final Thread thread = new Thread(runnable, "class-verifier");
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
+	}
+
+	/**
+	 * Verify a class file, on the pool if there is one
+	 *
+	 * @param name, the entry name
+	 * @param classFile
+	 */
+	public void submit(String name, byte[] classFile)
+	{
+		if (level == VerificationLevel.OFF)
+		{
+			return;
+		}
+		if (pool != null)
+		{
+			pool.execute(() -> verify(name, classFile));
+		}
+		else
+		{
+			verify(name, classFile);
+		}
+	}
+
+	/**
+	 * Verify a class file on the calling thread, failures are recorded
+	 *
+	 * @param name, the entry name
+	 * @param classFile
+	 * @return true if the class passed
+	 */
+	public boolean verify(String name, byte[] classFile)
+	{
+		final ValidationEvent event = new ValidationEvent();
+		event.begin();
+		event.instructionCount = -1;
+		boolean passed = false;
+		try
+		{
+			check(name, classFile, event);
+			passed = true;
+		}
+		catch (Exception e)
+		{
+			failures.putIfAbsent(name, describe(e));
+			log.debug("Class: {} failed verification", name, e);
+		}
+		verifiedCount.incrementAndGet();
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.className = name;
+			if (event.instructionCount < 0)
+			{
+				event.instructionCount = countInstructions(classFile);
+			}
+			event.level = level.name();
+			event.size = classFile.length;
+			event.passed = passed;
+			event.commit();
+		}
+		return passed;
+	}
+
+	/**
+	 * Check a class at the verification level
+	 *
+	 * @param name, the entry name
+	 * @param classFile
+	 * @param event, gets the instruction count when the class tree is built
+	 * @throws AnalyzerException
+	 */
+	private void check(String name, byte[] classFile, ValidationEvent event) throws AnalyzerException
+	{
+		final ClassReader reader = new ClassReader(classFile);
+		final boolean dataFlow = level == VerificationLevel.FULL
+			|| level == VerificationLevel.SAMPLED && Math.floorMod(name.hashCode(), 100) < samplePercent;
+		reader.accept(new CheckClassAdapter(new ClassVisitor(Opcodes.ASM9)
+		{
+		}, false), 0);
+		if (!dataFlow && level != VerificationLevel.TYPED)
+		{
+			return;
+		}
+
+		final ClassNode classNode = new ClassNode(Opcodes.ASM9);
+		reader.accept(classNode, ClassReader.SKIP_FRAMES);
+		event.instructionCount = countInstructions(classNode);
+		if (dataFlow)
+		{
+			final TypedFrameAnalyzer analyzer = dataFlowAnalyzers.get();
+			for (MethodNode method : classNode.methods)
+			{
+				try
+				{
+					if (!analyzer.verify(classNode.name, method))
+					{
+						budget.newAnalyzer(new BasicVerifier()).analyze(classNode.name, method);
+					}
+				}
+				catch (AnalysisBudgetExceededException e)
+				{
+					budget.record("ClassVerifier", classNode.name, method, e, "structural check");
+				}
+				catch (AnalyzerException e)
+				{
+					throw new AnalyzerException(e.node, method.name + method.desc + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		else
+		{
+			final List<Type> interfaces = new ArrayList<>();
+			classNode.interfaces.forEach(iface -> interfaces.add(Type.getObjectType(iface)));
+			for (MethodNode method : classNode.methods)
+			{
+				final HierarchyVerifier verifier = new HierarchyVerifier(hierarchy, Type.getObjectType(classNode.name),
+					classNode.superName != null ? Type.getObjectType(classNode.superName) : null, interfaces,
+					(classNode.access & Opcodes.ACC_INTERFACE) != 0);
+				try
+				{
+					budget.newAnalyzer(verifier).analyze(classNode.name, method);
+				}
+				catch (AnalysisBudgetExceededException e)
+				{
+					budget.record("ClassVerifier", classNode.name, method, e, "structural check");
+				}
+				catch (AnalyzerException e)
+				{
+					throw new AnalyzerException(e.node, method.name + method.desc + ": " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Count the instructions of a class whose tree was not built, for a recorded event. Labels,
+	 * line numbers and frames are not counted, so the count is the same at every level.
+	 *
+	 * @param classFile
+	 * @return the instruction count, 0 if the class cannot be read
+	 */
+	private static int countInstructions(byte[] classFile)
+	{
+		final ClassNode classNode = new ClassNode(Opcodes.ASM9);
+		try
+		{
+			new ClassReader(classFile).accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		}
+		catch (RuntimeException e)
+		{
+			return 0;
+		}
+		return countInstructions(classNode);
+	}
+
+	private static int countInstructions(ClassNode classNode)
+	{
+		int count = 0;
+		for (MethodNode method : classNode.methods)
+		{
+			for (AbstractInsnNode insn : method.instructions)
+			{
+				if (insn.getOpcode() >= 0)
+				{
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Wait for the submitted classes and log a summary of the failures
+	 *
+	 * @return the first error of each failing class, by class name
+	 */
+	public Map<String, String> finish()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+			try
+			{
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				log.error("Interrupted while verifying classes", e);
+			}
+		}
+
+		if (level == VerificationLevel.OFF)
+		{
+			return failures;
+		}
+		if (failures.isEmpty())
+		{
+			log.info("Verified: {} classes at level {}, no failures", verifiedCount.get(), level);
+		}
+		else
+		{
+			final StringBuilder summary = new StringBuilder();
+			failures.forEach((name, error) -> summary.append(System.lineSeparator()).append("  ").append(name).append(": ").append(error));
+			log.warn("Verified: {} classes at level {}, {} failed:{}", verifiedCount.get(), level, failures.size(), summary);
+		}
+		return failures;
+	}
+
+	@Override
+	public void close()
+	{
+		if (pool != null)
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the messages of the exception and its causes, on one line
+	 */
+	private static String describe(Throwable throwable)
+	{
+		final StringBuilder description = new StringBuilder();
+		for (Throwable cause = throwable; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null)
+		{
+			if (description.length() > 0)
+			{
+				description.append(" <- ");
+			}
+			description.append(cause.getClass().getSimpleName());
+			if (cause.getMessage() != null)
+			{
+				description.append(": ").append(cause.getMessage().replace('\n', ' '));
+			}
+		}
+		return description.toString();
+	}
+
+	/**
+	 * Simple verifier that resolves types with the class hierarchy instead of loading them.
+	 * Like the JVM verifier, interfaces accept any reference, and so do types that are not
+	 * found on the class path.
+	 */
+	private static class HierarchyVerifier extends SimpleVerifier
+	{
+		private final ClassHierarchy hierarchy;
+
+		HierarchyVerifier(ClassHierarchy hierarchy, Type currentClass, Type currentSuperClass, List<Type> currentClassInterfaces, boolean isInterface)
+		{
+			super(Opcodes.ASM9, currentClass, currentSuperClass, currentClassInterfaces, isInterface);
+			this.hierarchy = hierarchy;
+		}
+
+		@Override
+		protected boolean isInterface(Type type)
+		{
+			return type.getSort() == Type.OBJECT && hierarchy.isInterface(type.getInternalName());
+		}
+
+		@Override
+		protected Type getSuperClass(Type type)
+		{
+			if (type.getSort() == Type.ARRAY)
+			{
+				return Type.getObjectType(ClassHierarchy.OBJECT);
+			}
+			final String superName = hierarchy.getSuperName(type.getInternalName());
+			return superName != null ? Type.getObjectType(superName) : null;
+		}
+
+		@Override
+		protected boolean isAssignableFrom(Type type1, Type type2)
+		{
+			if (type1.equals(type2))
+			{
+				return true;
+			}
+
+			if (type1.getSort() == Type.ARRAY)
+			{
+				if (type2.getSort() != Type.ARRAY)
+				{
+					return false;
+				}
+				final Type component1 = Type.getType(type1.getDescriptor().substring(1));
+				final Type component2 = Type.getType(type2.getDescriptor().substring(1));
+				return isReference(component1) && isReference(component2)
+					? isAssignableFrom(component1, component2)
+					: component1.equals(component2);
+			}
+
+			if (type1.getSort() != Type.OBJECT)
+			{
+				return false;
+			}
+			final String name1 = type1.getInternalName();
+			if (type2.getSort() == Type.ARRAY)
+			{
+				return name1.equals(ClassHierarchy.OBJECT) || name1.equals("java/lang/Cloneable") || name1.equals("java/io/Serializable");
+			}
+			if (type2.getSort() != Type.OBJECT)
+			{
+				return false;
+			}
+
+			final String name2 = type2.getInternalName();
+			if (isInterface(type1) || !isKnown(name1) || !isKnown(name2))
+			{
+				return true;
+			}
+			return hierarchy.isAssignableFrom(name1, name2);
+		}
+
+		private boolean isKnown(String name)
+		{
+			final List<String> ancestors = hierarchy.getAncestors(name);
+			return ancestors.get(ancestors.size() - 1).equals(ClassHierarchy.OBJECT);
+		}
+
+		private static boolean isReference(Type type)
+		{
+			return type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY;
+		}
+	}
+}
@@ -26,25 +26,44 @@ package net.melxin.asm.transformer;
 
 import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
+import net.melxin.asm.transformer.analysis.AnalysisBudget;
+import net.melxin.asm.transformer.analysis.TypedFrameAnalyzer;
+import net.melxin.asm.transformer.io.CompressedEntry;
+import net.melxin.asm.transformer.io.JarArchiveWriter;
+import net.melxin.asm.transformer.io.JarResource;
+import net.melxin.asm.transformer.io.MappedJarFile;
+import net.melxin.asm.transformer.jfr.ClassWriteEvent;
+import net.melxin.asm.transformer.jfr.JarLoadEvent;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.util.CheckClassAdapter;
+import org.objectweb.asm.tree.MethodNode;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 
@@ -53,11 +72,75 @@ public class JarEntryGroup
 {
 	// Map to hold non-class entries
 	@Getter(AccessLevel.PUBLIC)
-	private final Map<String, byte[]> nonClassEntries = new HashMap<>();
+	private final Map<String, JarResource> nonClassEntries = new LinkedHashMap<>();
 
-	// Set to hold class entries as ClassNode objects
+	// Registry to hold class entries by name, the class nodes are built on demand
 	@Getter(AccessLevel.PUBLIC)
-	private final Set<ClassNode> classNodes = new HashSet<>();
+	private final ClassRegistry classEntries = new ClassRegistry();
+
+	// View of the class entries as ClassNode objects, iterating it builds every class node
+	@Getter(AccessLevel.PUBLIC)
+	private final Set<ClassNode> classNodes = new ClassNodeSet();
+
+	// Type hierarchy of the class entries, built on first use
+	private ClassHierarchy hierarchy;
+
+	// Library jars and the runtime, used to resolve types outside of the jar
+	@Getter(AccessLevel.PUBLIC)
+	private final ClassPath classPath = new ClassPath();
+
+	// ClassWriter flags used for materialized classes, e.g. ClassWriter.COMPUTE_FRAMES
+	@Getter(AccessLevel.PUBLIC)
+	@Setter(AccessLevel.PUBLIC)
+	private int writerFlags;
+
+	// Compute frames and max stack/locals with the TypedFrameAnalyzer, classes it does not support are written with COMPUTE_FRAMES
+	@Getter(AccessLevel.PUBLIC)
+	@Setter(AccessLevel.PUBLIC)
+	private boolean typedFrames;
+
+	// Limits of the analysis of each method when computing typed frames and verifying, methods over them are recorded with it
+	@Getter(AccessLevel.PUBLIC)
+	@Setter(AccessLevel.PUBLIC)
+	private AnalysisBudget analysisBudget = AnalysisBudget.UNLIMITED;
+
+	// Frame analyzer of each writer thread, it reuses its arrays from one method to the next
+	private final ThreadLocal<TypedFrameAnalyzer> frameAnalyzers = ThreadLocal.withInitial(() -> new TypedFrameAnalyzer(getHierarchy(), analysisBudget));
+
+	// Orders entries by name, keeping the manifest where JarInputStream expects it
+	private static final Comparator<String> MANIFEST_FIRST = Comparator
+		.comparing((String name) -> !name.equals("META-INF/"))
+		.thenComparing(name -> !name.equals(JarFile.MANIFEST_NAME))
+		.thenComparing(Comparator.naturalOrder());
+
+	// The jar the entries were loaded from, its mapping backs the non-class entries
+	private final File inputJar;
+
+	// How the written classes are verified, and the share of classes sampled at the SAMPLED level
+	@Getter(AccessLevel.PUBLIC)
+	@Setter(AccessLevel.PUBLIC)
+	private VerificationLevel verificationLevel = VerificationLevel.FULL;
+	@Getter(AccessLevel.PUBLIC)
+	@Setter(AccessLevel.PUBLIC)
+	private int verificationSamplePercent = 10;
+
+	// Number of worker threads used to load and write the jar, 1 runs sequentially
+	@Getter(AccessLevel.PUBLIC)
+	private final int parallelism;
+
+	// Output class files restored from the transformation cache, written as is
+	private final Map<String, byte[]> cachedClassFiles = new LinkedHashMap<>();
+
+	// Cache for the transformed classes, and the classes whose output is not stored yet
+	private TransformationCache cache;
+	private final Set<String> uncachedClasses = ConcurrentHashMap.newKeySet();
+
+	// Interned names and member IDs of the loaded classes
+	@Getter(AccessLevel.PUBLIC)
+	private final SymbolTable symbolTable;
+
+	// Modification count per aspect, used to skip transformers whose inputs did not change
+	private final AtomicLongArray modifications = new AtomicLongArray(Aspect.values().length);
 
 	/**
 	 * Constructor
@@ -66,7 +149,57 @@ public class JarEntryGroup
 	 */
 	public JarEntryGroup(File inputJar)
 	{
-		this.loadJar(inputJar);
+		this(inputJar, 1);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param inputJar
+	 * @param parallelism, the number of worker threads
+	 */
+	public JarEntryGroup(File inputJar, int parallelism)
+	{
+		this.inputJar = inputJar;
+		this.parallelism = Math.max(1, parallelism);
+		final JarLoadEvent event = new JarLoadEvent();
+		event.begin();
+		if (this.parallelism > 1)
+		{
+			this.loadJarParallel(inputJar);
+		}
+		else
+		{
+			this.loadJar(inputJar);
+		}
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.path = inputJar.getAbsolutePath();
+			event.classCount = classEntries.size();
+			event.resourceCount = nonClassEntries.size();
+			event.size = inputJar.length();
+			event.commit();
+		}
+		this.symbolTable = new SymbolTable(classEntries);
+
+		// Adding or removing classes changes the class set and the hierarchy
+		classEntries.addListener(new ClassRegistry.Listener()
+		{
+			@Override
+			public void added(ClassEntry classEntry)
+			{
+				markModified(Aspect.CLASSES);
+				markModified(Aspect.HIERARCHY);
+			}
+
+			@Override
+			public void removed(ClassEntry classEntry)
+			{
+				markModified(Aspect.CLASSES);
+				markModified(Aspect.HIERARCHY);
+			}
+		});
 	}
 
 	/**
@@ -77,29 +210,22 @@ public class JarEntryGroup
 	private void loadJar(File inputJar)
 	{
 		log.info("Load jar: {}", inputJar.getAbsolutePath());
-		try (JarFile jarFile = new JarFile(inputJar))
+		try
 		{
-			for (Enumeration<JarEntry> it = jarFile.entries(); it.hasMoreElements(); )
+			final MappedJarFile jarFile = MappedJarFile.open(inputJar);
+			for (MappedJarFile.Entry entry : jarFile.getEntries())
 			{
-				final JarEntry entry = it.nextElement();
-				try (InputStream is = jarFile.getInputStream(entry))
+				if (!entry.getName().endsWith(".class"))
 				{
-					if (!entry.getName().endsWith(".class"))
-					{
-						// Store non-class entries
-						final byte[] data = is.readAllBytes();
-						nonClassEntries.put(entry.getName(), data);
-						log.debug("Load non-class entry: {}", entry.getName());
-					}
-					else
-					{
-						// Store class entries
-						final ClassReader reader = new ClassReader(is);
-						final ClassNode classNode = new ClassNode(Opcodes.ASM9);
-						reader.accept(classNode, ClassReader.SKIP_FRAMES);
-						classNodes.add(classNode);
-						log.debug("Load class node: {}", classNode.name);
-					}
+					// Store non-class entries
+					nonClassEntries.put(entry.getName(), entry.getResource());
+					log.debug("Load non-class entry: {}", entry.getName());
+				}
+				else
+				{
+					// Store class entries
+					final ClassEntry classEntry = new ClassEntry(entry.getResource().getBytes());
+					addClassEntry(entry.getName(), classEntry);
 				}
 			}
 		}
@@ -110,80 +236,563 @@ public class JarEntryGroup
 	}
 
 	/**
-	 * Write output jar
+	 * Load the jar file, entries are listed sequentially and
+	 * class entries are inflated and parsed on a fork join pool
+	 *
+	 * @param inputJar
+	 */
+	private void loadJarParallel(File inputJar)
+	{
+		log.info("Load jar: {} using {} threads", inputJar.getAbsolutePath(), parallelism);
+		final List<String> classFileNames = new ArrayList<>();
+		final List<JarResource> classFiles = new ArrayList<>();
+		try
+		{
+			final MappedJarFile jarFile = MappedJarFile.open(inputJar);
+			for (MappedJarFile.Entry entry : jarFile.getEntries())
+			{
+				if (!entry.getName().endsWith(".class"))
+				{
+					// Store non-class entries
+					nonClassEntries.put(entry.getName(), entry.getResource());
+					log.debug("Load non-class entry: {}", entry.getName());
+				}
+				else
+				{
+					// Defer class entries
+					classFileNames.add(entry.getName());
+					classFiles.add(entry.getResource());
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			log.error("Failed to load jar: {}", inputJar.getAbsolutePath(), e);
+			return;
+		}
+
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try
+		{
+			final List<ClassEntry> parsed = pool.submit(() -> classFiles.parallelStream()
+				.map(JarEntryGroup::readClassEntry)
+				.collect(Collectors.toList())).get();
+
+			// Store class entries
+			for (int i = 0; i < parsed.size(); i++)
+			{
+				addClassEntry(classFileNames.get(i), parsed.get(i));
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading jar: " + inputJar.getAbsolutePath(), e);
+		}
+		catch (ExecutionException e)
+		{
+			// Fail the run like the sequential load instead of continuing without the classes
+			throw new IllegalStateException("Failed to load jar: " + inputJar.getAbsolutePath(), e.getCause());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	private void addClassEntry(String entryName, ClassEntry classEntry)
+	{
+		if (!classEntries.add(classEntry))
+		{
+			log.warn("Skip duplicate class: {} in entry: {}", classEntry.getName(), entryName);
+			return;
+		}
+		log.debug("Load class entry: {}", classEntry.getName());
+	}
+
+	/**
+	 * Read a class entry
+	 *
+	 * @param resource
+	 * @return the class entry
+	 */
+	private static ClassEntry readClassEntry(JarResource resource)
+	{
+		try
+		{
+			return new ClassEntry(resource.getBytes());
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Restore unchanged classes from a transformation cache, must be called before
+	 * any transformation. Cached classes that no changed class depends on are taken
+	 * out of the class entries and written as cached, the others are transformed
+	 * and their output is stored when the jar is written.
+	 *
+	 * @param cache
+	 * @param wholeJar, true if the output of every class depends on the whole jar
+	 */
+	public void useCache(TransformationCache cache, boolean wholeJar)
+	{
+		this.cache = cache;
+		cache.index(classEntries, typedFrames || (writerFlags & ClassWriter.COMPUTE_FRAMES) != 0, wholeJar);
+
+		final Map<String, byte[]> hits = new LinkedHashMap<>();
+		for (ClassEntry classEntry : classEntries)
+		{
+			final byte[] cached = cache.load(classEntry.getName());
+			if (cached != null)
+			{
+				hits.put(classEntry.getName(), cached);
+			}
+			else
+			{
+				uncachedClasses.add(classEntry.getName());
+			}
+		}
+
+		// Changed classes are transformed together with every class that references them
+		final Set<String> required = cache.getInboundClosure(uncachedClasses);
+		for (Map.Entry<String, byte[]> hit : hits.entrySet())
+		{
+			if (required.contains(hit.getKey()))
+			{
+				continue;
+			}
+
+			// Still resolvable as a type for the hierarchy
+			final ClassEntry classEntry = classEntries.remove(hit.getKey());
+			classPath.addClassFile(classEntry.getName(), classEntry.getClassFileBuffer());
+			if (hit.getValue().length > 0)
+			{
+				cachedClassFiles.put(hit.getKey(), hit.getValue());
+			}
+		}
+		log.info("Transformation cache: {} hits, {} misses, {} classes to transform", hits.size(), uncachedClasses.size(), classEntries.size());
+	}
+
+	/**
+	 * Write output jar. The jar is written to a temporary file next to it and moved into
+	 * place once complete, a failed write leaves any previous output jar as it was.
 	 *
 	 * @param outputJar
 	 */
 	public void writeOutputJar(File outputJar)
 	{
-		log.info("Write output jar: {}", outputJar.getAbsolutePath());
-		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(outputJar)))
+		if (isSameFile(inputJar, outputJar))
+		{
+			// The mapping of the input jar would be truncated while it is still read
+			nonClassEntries.replaceAll((name, resource) -> resource.toHeap());
+		}
+
+		File tempJar = null;
+		try
+		{
+			tempJar = File.createTempFile(outputJar.getName() + ".", ".tmp", outputJar.getAbsoluteFile().getParentFile());
+			if (parallelism > 1)
+			{
+				log.info("Write output jar: {} using {} threads", outputJar.getAbsolutePath(), parallelism);
+				this.writeOutputJarParallel(tempJar);
+			}
+			else
+			{
+				log.info("Write output jar: {}", outputJar.getAbsolutePath());
+				this.writeOutputJarSequential(tempJar);
+			}
+			moveIntoPlace(tempJar, outputJar);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.error("Failed to write output jar: {}", outputJar.getAbsolutePath(), e);
+			if (tempJar != null && !tempJar.delete() && tempJar.exists())
+			{
+				log.warn("Failed to delete partial output jar: {}", tempJar.getAbsolutePath());
+			}
+		}
+	}
+
+	private static void moveIntoPlace(File tempJar, File outputJar) throws IOException
+	{
+		try
+		{
+			Files.move(tempJar.toPath(), outputJar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(tempJar.toPath(), outputJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Write output jar on the calling thread, in the same entry order as the parallel write
+	 *
+	 * @param outputJar
+	 * @throws IOException
+	 */
+	private void writeOutputJarSequential(File outputJar) throws IOException
+	{
+		try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(outputJar));
+			ClassVerifier verifier = this.createVerifier())
 		{
 			// (Optional) set compression level (0-9)
 			jos.setLevel(Deflater.BEST_COMPRESSION);
 
 			// Write non-class entries
-			for (Map.Entry<String, byte[]> nonClassEntry : nonClassEntries.entrySet())
+			for (String name : getSortedNonClassNames())
 			{
-				final JarEntry newEntry = new JarEntry(nonClassEntry.getKey());
+				final JarEntry newEntry = new JarEntry(name);
 				newEntry.setMethod(ZipEntry.DEFLATED); // Optional
 				jos.putNextEntry(newEntry);
-				jos.write(nonClassEntry.getValue());
+				jos.write(nonClassEntries.get(name).getBytes());
 				jos.closeEntry();
 				log.debug("Write non-class entry: {}", newEntry.getName());
 			}
 
-			// Write class entries
-			for (ClassNode classNode : classNodes)
+			// Write class entries, including the ones restored from the cache
+			for (String className : getSortedClassNames())
 			{
-				final JarEntry newEntry = new JarEntry(classNode.name.replace('.', '/') + ".class");
+				final JarEntry newEntry = new JarEntry(className + ".class");
 				newEntry.setMethod(ZipEntry.DEFLATED); // Optional
 				jos.putNextEntry(newEntry);
-				final ClassWriter writer = new NonLoadingClassWriter(0);
-				classNode.accept(writer);
-				final byte[] classFileBuffer = writer.toByteArray();
-				this.validateDataFlow(newEntry.getName(), classFileBuffer);
-				jos.write(classFileBuffer);
+				final byte[] cachedClassFile = cachedClassFiles.get(className);
+				jos.write(cachedClassFile != null ? cachedClassFile : this.toClassFile(newEntry.getName(), classEntries.get(className), verifier));
 				jos.closeEntry();
 				log.debug("Write class entry: {}", newEntry.getName());
 			}
+			this.storeRemovedClasses();
+			verifier.finish();
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * Write output jar, entries are serialized and compressed on a fork join pool
+	 * and appended in name order so the output is the same for every run
+	 *
+	 * @param outputJar
+	 * @throws IOException
+	 */
+	private void writeOutputJarParallel(File outputJar) throws IOException
+	{
+		final List<String> nonClassNames = getSortedNonClassNames();
+		final List<String> sortedClassNames = getSortedClassNames();
+
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try (JarArchiveWriter writer = new JarArchiveWriter(outputJar);
+			ClassVerifier verifier = this.createVerifier())
 		{
-			log.error("Failed to write output jar: {}", outputJar.getAbsolutePath(), e);
+			final List<ForkJoinTask<CompressedEntry>> tasks = new ArrayList<>(nonClassNames.size() + sortedClassNames.size());
+
+			// Compress non-class entries, already deflated entries are copied as is
+			for (String name : nonClassNames)
+			{
+				final JarResource resource = nonClassEntries.get(name);
+				tasks.add(pool.submit(() -> resource.toCompressedEntry(name, Deflater.BEST_COMPRESSION)));
+			}
+
+			// Serialize and compress class entries
+			for (String className : sortedClassNames)
+			{
+				final byte[] cachedClassFile = cachedClassFiles.get(className);
+				if (cachedClassFile != null)
+				{
+					tasks.add(pool.submit(() -> CompressedEntry.deflate(className + ".class", cachedClassFile, Deflater.BEST_COMPRESSION)));
+					continue;
+				}
+
+				final ClassEntry classEntry = classEntries.get(className);
+				tasks.add(pool.submit(() ->
+				{
+					final String name = classEntry.getName().replace('.', '/') + ".class";
+					return CompressedEntry.deflate(name, this.toClassFile(name, classEntry, verifier), Deflater.BEST_COMPRESSION);
+				}));
+			}
+
+			// Append in submission order while later entries are still being compressed
+			for (ForkJoinTask<CompressedEntry> task : tasks)
+			{
+				final CompressedEntry entry = task.join();
+				writer.putEntry(entry);
+				log.debug("Write entry: {}", entry.getName());
+			}
+			this.storeRemovedClasses();
+
+			// Verification overlapped with compression, wait for the classes still queued
+			verifier.finish();
+		}
+		finally
+		{
+			pool.shutdownNow();
 		}
 	}
 
 	/**
-	 * Validate data flow
+	 * @return the names of the non-class entries, the manifest first and then in name order
+	 */
+	private List<String> getSortedNonClassNames()
+	{
+		final List<String> names = new ArrayList<>(nonClassEntries.keySet());
+		names.sort(MANIFEST_FIRST);
+		return names;
+	}
+
+	/**
+	 * @return the names of the loaded classes and of the classes restored from the cache, in name order
+	 */
+	private List<String> getSortedClassNames()
+	{
+		final List<String> names = new ArrayList<>(classEntries.size() + cachedClassFiles.size());
+		classEntries.forEach(classEntry -> names.add(classEntry.getName()));
+		names.addAll(cachedClassFiles.keySet());
+		names.sort(Comparator.naturalOrder());
+		return names;
+	}
+
+	/**
+	 * Get the class file of a class entry, classes that were never
+	 * materialized are written back verbatim
+	 *
+	 * @param name, the entry name
+	 * @param classEntry
+	 * @param verifier, verifies the classes that were not written back verbatim
+	 * @return the class file
+	 */
+	private byte[] toClassFile(String name, ClassEntry classEntry, ClassVerifier verifier)
+	{
+		final ClassWriteEvent event = new ClassWriteEvent();
+		event.begin();
+		final byte[] original = classEntry.getClassFileBuffer();
+		if (original != null)
+		{
+			this.storeInCache(classEntry.getName(), original);
+			commitWriteEvent(event, classEntry, original);
+			return original;
+		}
+
+		final ClassNode classNode = classEntry.getNode();
+		final ClassWriter writer = new NonLoadingClassWriter(getHierarchy(), this.getClassWriterFlags(classNode));
+		classNode.accept(writer);
+		final byte[] classFileBuffer = writer.toByteArray();
+		verifier.submit(name, classFileBuffer);
+		this.storeInCache(classEntry.getName(), classFileBuffer);
+		commitWriteEvent(event, classEntry, classFileBuffer);
+		return classFileBuffer;
+	}
+
+	/**
+	 * Get the ClassWriter flags of a class, computing its frames first when typed frames are enabled
+	 *
+	 * @param classNode
+	 * @return the writer flags
+	 */
+	private int getClassWriterFlags(ClassNode classNode)
+	{
+		if (!typedFrames || (classNode.version & 0xFFFF) < Opcodes.V1_6)
+		{
+			return writerFlags;
+		}
+		if (frameAnalyzers.get().computeFrames(classNode))
+		{
+			return writerFlags & ~(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+		}
+		log.debug("Compute frames with the ClassWriter: {}", classNode.name);
+		return writerFlags | ClassWriter.COMPUTE_FRAMES;
+	}
+
+	private static void commitWriteEvent(ClassWriteEvent event, ClassEntry classEntry, byte[] classFile)
+	{
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.className = classEntry.getName();
+			event.verbatim = !classEntry.isMaterialized();
+			if (classEntry.isMaterialized())
+			{
+				for (MethodNode method : classEntry.getNode().methods)
+				{
+					event.instructionCount += method.instructions.size();
+				}
+			}
+			event.size = classFile.length;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Create the verifier of the written classes, it runs on its own threads when the jar is written in parallel
 	 *
-	 * @param name, the class name
-	 * @param data
+	 * @return the class verifier
 	 */
-	private void validateDataFlow(String name, byte[] data)
+	private ClassVerifier createVerifier()
+	{
+		final ClassHierarchy typeHierarchy = verificationLevel == VerificationLevel.TYPED ? getHierarchy() : null;
+		return new ClassVerifier(verificationLevel, verificationSamplePercent, typeHierarchy, analysisBudget, parallelism);
+	}
+
+	private void storeInCache(String name, byte[] classFile)
+	{
+		// A class with a method over the time limit may come out differently on the next run
+		if (cache != null && uncachedClasses.remove(name) && !analysisBudget.isTimeLimited(name))
+		{
+			cache.store(name, classFile);
+		}
+	}
+
+	/**
+	 * Record the changed classes that were removed by a transformer
+	 */
+	private void storeRemovedClasses()
+	{
+		if (cache != null)
+		{
+			// Removals may follow from a method left as it is over the time limit
+			if (!analysisBudget.isTimeLimited())
+			{
+				for (String name : uncachedClasses)
+				{
+					cache.store(name, null);
+				}
+			}
+			uncachedClasses.clear();
+		}
+	}
+
+	private static boolean isSameFile(File file1, File file2)
 	{
 		try
 		{
-			final ClassReader cr = new ClassReader(data);
-			final ClassWriter cw = new ClassWriter(cr, 0);
-			final ClassVisitor cv = new CheckClassAdapter(cw, true);
-			cr.accept(cv, 0);
+			return file1.getCanonicalFile().equals(file2.getCanonicalFile());
 		}
-		catch (Exception ex)
+		catch (IOException e)
+		{
+			return file1.getAbsoluteFile().equals(file2.getAbsoluteFile());
+		}
+	}
+
+	/**
+	 * Get the type hierarchy, it is built once and follows class entries being removed
+	 *
+	 * @return the type hierarchy
+	 */
+	public synchronized ClassHierarchy getHierarchy()
+	{
+		if (hierarchy == null)
 		{
-			log.warn("Class: {} failed validation", name, ex);
+			hierarchy = new ClassHierarchy(classEntries, classPath);
 		}
+		return hierarchy;
+	}
+
+	/**
+	 * Record a change to an aspect of the jar
+	 *
+	 * @param aspect
+	 */
+	public void markModified(Aspect aspect)
+	{
+		modifications.incrementAndGet(aspect.ordinal());
+	}
+
+	/**
+	 * Get the modification count of an aspect, it grows with every change
+	 *
+	 * @param aspect
+	 * @return the modification count
+	 */
+	public long getModificationCount(Aspect aspect)
+	{
+		return modifications.get(aspect.ordinal());
+	}
+
+	public ClassEntry findClassEntry(String name)
+	{
+		return classEntries.get(name);
 	}
 
 	public ClassNode findClassNode(String name)
 	{
-		for (ClassNode classNode : classNodes)
+		final ClassEntry classEntry = findClassEntry(name);
+		return classEntry != null ? classEntry.getNode() : null;
+	}
+
+	/**
+	 * Live view of the class entries as class nodes
+	 */
+	private class ClassNodeSet extends AbstractSet<ClassNode>
+	{
+		@Override
+		public Iterator<ClassNode> iterator()
+		{
+			final Iterator<ClassEntry> it = classEntries.iterator();
+			return new Iterator<>()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return it.hasNext();
+				}
+
+				@Override
+				public ClassNode next()
+				{
+					return it.next().getNode();
+				}
+
+				@Override
+				public void remove()
+				{
+					it.remove();
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return classEntries.size();
+		}
+
+		@Override
+		public boolean add(ClassNode classNode)
+		{
+			if (contains(classNode))
+			{
+				return false;
+			}
+			return classEntries.add(new ClassEntry(classNode));
+		}
+
+		@Override
+		public boolean contains(Object o)
 		{
-			if (classNode.name.equals(name))
+			return o instanceof ClassNode && entryOf((ClassNode) o) != null;
+		}
+
+		@Override
+		public boolean remove(Object o)
+		{
+			if (!(o instanceof ClassNode))
+			{
+				return false;
+			}
+			final ClassEntry classEntry = entryOf((ClassNode) o);
+			return classEntry != null && classEntries.remove(classEntry);
+		}
+
+		private ClassEntry entryOf(ClassNode classNode)
+		{
+			final ClassEntry classEntry = classEntries.get(classNode.name);
+
+			// Only a materialized entry can hold this node
+			if (classEntry != null && classEntry.isMaterialized() && classEntry.getNode() == classNode)
 			{
-				return classNode;
+				return classEntry;
 			}
+			return null;
 		}
-		return null;
 	}
 }
@@ -24,7 +24,41 @@
  */
 package net.melxin.asm.transformer;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public interface JarEntryTransformer
 {
 	void transform(JarEntryGroup jarEntryGroup);
-}
\ No newline at end of file
+
+	/**
+	 * Defaults to everything, so undeclared transformers are never reordered
+	 *
+	 * @return the aspects this transformer depends on
+	 */
+	default Set<Aspect> reads()
+	{
+		return EnumSet.allOf(Aspect.class);
+	}
+
+	/**
+	 * Whole-program transformers report their changes with
+	 * {@link JarEntryGroup#markModified(Aspect)}
+	 *
+	 * @return the aspects this transformer may change
+	 */
+	default Set<Aspect> writes()
+	{
+		return EnumSet.allOf(Aspect.class);
+	}
+
+	/**
+	 * Reported in the {@link PassMetrics} of the transformer
+	 *
+	 * @return the number of items changed so far, e.g. removed instructions, or -1 if not counted
+	 */
+	default long getChangeCount()
+	{
+		return -1;
+	}
+}
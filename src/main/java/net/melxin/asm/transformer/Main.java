@@ -25,19 +25,27 @@
 package net.melxin.asm.transformer;
 
 import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.analysis.AnalysisBudget;
+import net.melxin.asm.transformer.basic.DeadMemberEliminator;
 import net.melxin.asm.transformer.basic.ExprArgOrder;
 import net.melxin.asm.transformer.basic.IllegalStateExceptionRemover;
 import net.melxin.asm.transformer.basic.UnreachableInstructionRemover;
+import net.melxin.asm.transformer.basic.ReachabilityShrinker;
 import net.melxin.asm.transformer.basic.RedundantGotoRemover;
 import net.melxin.asm.transformer.basic.RuntimeTryCatchExceptionBlockRemover;
 import net.melxin.asm.transformer.basic.UnusedClassRemover;
 import net.melxin.asm.transformer.basic.UnusedFieldRemover;
 import net.melxin.asm.transformer.basic.UnusedMethodParametersRemover;
 import net.melxin.asm.transformer.basic.UnusedMethodRemover;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
 import net.melxin.asm.transformer.runelite.RuneLiteNamedAnnotationsRemover;
 import net.melxin.asm.transformer.basic.SortMembersByName;
+import org.objectweb.asm.ClassWriter;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 @Slf4j
 public class Main
@@ -53,34 +61,179 @@ public class Main
 		final String inputJarPath = args[0];
 		final String outputJarPath = args[1];
 
+		if (streaming)
+		{
+			// One class at a time, the whole-program transformers need the whole jar and are skipped
+			try
+			{
+				new StreamingPipeline(streamingTransformers).run(new File(inputJarPath), new File(outputJarPath));
+				log.info("Transformation completed!");
+			}
+			catch (IOException e)
+			{
+				log.error("Failed to stream jar: {}", inputJarPath, e);
+			}
+			return;
+		}
+
+		final RunReport report = new RunReport(new File(inputJarPath), new File(outputJarPath), parallelism, rounds);
+
 		// Load entries
-		final JarEntryGroup jarEntryGroup = new JarEntryGroup(new File(inputJarPath));
+		long start = System.nanoTime();
+		final JarEntryGroup jarEntryGroup = new JarEntryGroup(new File(inputJarPath), parallelism);
+		for (String library : libraries)
+		{
+			try
+			{
+				jarEntryGroup.getClassPath().addJar(new File(library));
+			}
+			catch (IOException e)
+			{
+				log.error("Failed to load library: {}", library, e);
+			}
+		}
+		if (computeFrames)
+		{
+			jarEntryGroup.setWriterFlags(ClassWriter.COMPUTE_FRAMES);
+		}
+		jarEntryGroup.setTypedFrames(typedFrames);
+		jarEntryGroup.setAnalysisBudget(analysisBudget);
+		jarEntryGroup.setVerificationLevel(verificationLevel);
+		jarEntryGroup.setVerificationSamplePercent(verificationSamplePercent);
+		if (cacheDirectory != null)
+		{
+			final List<File> libraryFiles = new ArrayList<>();
+			libraries.forEach(library -> libraryFiles.add(new File(library)));
+			final String fingerprint = TransformationCache.fingerprint(jarEntryTransformers, jarEntryGroup.getWriterFlags(), typedFrames, analysisBudget, rounds, libraryFiles);
+			jarEntryGroup.useCache(new TransformationCache(new File(cacheDirectory), fingerprint), shrinker.hasRoots(jarEntryGroup.getClassEntries()));
+		}
+
+		report.setLoadNanos(System.nanoTime() - start);
 
 		// Apply transformations
-		jarEntryTransformers.forEach(transformer ->
-		{
-			transformer.transform(jarEntryGroup);
-		});
+		start = System.nanoTime();
+		final TransformerRunner runner = new TransformerRunner(jarEntryTransformers, parallelism, rounds);
+		runner.run(jarEntryGroup);
+		report.setTransformNanos(System.nanoTime() - start);
+		report.addPasses(runner.getMetrics());
 
 		// Write output jar
+		start = System.nanoTime();
 		jarEntryGroup.writeOutputJar(new File(outputJarPath));
+		report.setWriteNanos(System.nanoTime() - start);
+		report.addBudgetExceeded(analysisBudget.getExceeded());
+
+		report.log();
+		if (reportFile != null)
+		{
+			try
+			{
+				report.write(new File(reportFile));
+			}
+			catch (IOException e)
+			{
+				log.error("Failed to write report: {}", reportFile, e);
+			}
+		}
 
 		log.info("Transformation completed!");
 	}
 
-	private static final List<JarEntryTransformer> jarEntryTransformers = List.of(
-		// Basic
-		new UnreachableInstructionRemover(),
-		new RedundantGotoRemover(),
+	// Number of worker threads, override with -Dasm.transformer.threads=<n>
+	private static final int parallelism = Integer.getInteger("asm.transformer.threads", Runtime.getRuntime().availableProcessors());
+
+	// Repeat the transformers until nothing changes, at most this many times, -Dasm.transformer.rounds=<n>
+	private static final int rounds = Integer.getInteger("asm.transformer.rounds", 1);
+
+	// Recompute stack map frames and max stack/locals on write, enable with -Dasm.transformer.computeFrames=true
+	private static final boolean computeFrames = Boolean.getBoolean("asm.transformer.computeFrames");
+
+	// Compute the frames with the typed frame analyzer instead of the ClassWriter, enable with -Dasm.transformer.typedFrames=true
+	private static final boolean typedFrames = Boolean.getBoolean("asm.transformer.typedFrames");
+
+	// Limits of the analysis of one method, a method over them falls back to a cheaper analysis or is left as it is,
+	// -Dasm.transformer.analysisMaxInstructions=<n> -Dasm.transformer.analysisMaxIterations=<n> -Dasm.transformer.analysisMaxMillis=<n>, 0 is no limit.
+	// The time limit is off by default as its result depends on the machine load, classes hitting it are not cached
+	private static final AnalysisBudget analysisBudget = new AnalysisBudget(
+		Integer.getInteger("asm.transformer.analysisMaxInstructions", 0),
+		Long.getLong("asm.transformer.analysisMaxIterations", 10_000_000),
+		Long.getLong("asm.transformer.analysisMaxMillis", 0));
+
+	// Verification of the written classes, -Dasm.transformer.verify=off|structural|sampled|full|typed
+	private static final VerificationLevel verificationLevel = VerificationLevel.valueOf(System.getProperty("asm.transformer.verify", "full").toUpperCase(Locale.ROOT));
+
+	// Share of the classes whose data flow is checked at the sampled level, -Dasm.transformer.verifySamplePercent=<n>
+	private static final int verificationSamplePercent = Integer.getInteger("asm.transformer.verifySamplePercent", 10);
+
+	// Library jars used to resolve types outside of the input jar, -Dasm.transformer.libraries=<jar>[:<jar>...]
+	private static final List<String> libraries = splitPaths(System.getProperty("asm.transformer.libraries", ""));
+
+	// Directory of the incremental transformation cache, disabled unless set with -Dasm.transformer.cache=<dir>
+	private static final String cacheDirectory = System.getProperty("asm.transformer.cache");
+
+	// JSON report of the run with the metrics of every pass, written when set with -Dasm.transformer.report=<file>
+	private static final String reportFile = System.getProperty("asm.transformer.report");
+
+	private static List<String> splitPaths(String paths)
+	{
+		final List<String> result = new ArrayList<>();
+		for (String path : paths.split(File.pathSeparator))
+		{
+			if (!path.isBlank())
+			{
+				result.add(path);
+			}
+		}
+		return result;
+	}
+
+	// Remove dead members in a single cascading pass instead of once per remover, -Dasm.transformer.fixpoint=true
+	private static final boolean fixpoint = Boolean.getBoolean("asm.transformer.fixpoint");
+
+	private static final List<JarEntryTransformer> deadCodeRemovers = fixpoint
+		? List.of(new DeadMemberEliminator())
+		: List.of(new UnusedFieldRemover(), new UnusedMethodRemover(), new UnusedClassRemover());
+
+	// Entry points of reachability based shrinking, falls back to the dead code removers when none is in the jar,
+	// -Dasm.transformer.roots=<class>[#<name>[#<desc>]][,...] or @<annotation desc>
+	private static final List<String> roots = List.of(System.getProperty("asm.transformer.roots", "client,@Ljavax/inject/Named;").split(","));
+
+	private static final ReachabilityShrinker shrinker = new ReachabilityShrinker(roots, deadCodeRemovers);
+
+	private static final List<JarEntryTransformer> jarEntryTransformers = concat(
+		List.of(
+			// Basic
+			new UnreachableInstructionRemover(analysisBudget),
+			// Local instruction passes share one walk over each method
+			new FusedInstructionPass(new RedundantGotoRemover(), new RuntimeTryCatchExceptionBlockRemover()),
+			new SortMembersByName()
+		),
+		List.of(shrinker),
+		List.of(
+			new FusedInstructionPass(new ExprArgOrder(), new IllegalStateExceptionRemover()),
+			//new UnusedMethodParametersRemover(),
+			// RuneLite
+			new RuneLiteNamedAnnotationsRemover()
+		)
+	);
+
+	// Run only the class local transformers, streaming each class from the input to the output jar, -Dasm.transformer.streaming=true
+	private static final boolean streaming = Boolean.getBoolean("asm.transformer.streaming");
+
+	private static final List<StreamingTransformer> streamingTransformers = List.of(
 		new RuntimeTryCatchExceptionBlockRemover(),
 		new SortMembersByName(),
-		new UnusedFieldRemover(),
-		new UnusedMethodRemover(),
-		new UnusedClassRemover(),
-		new ExprArgOrder(),
-		new IllegalStateExceptionRemover(),
-		//new UnusedMethodParametersRemover(),
-		// RuneLite
 		new RuneLiteNamedAnnotationsRemover()
 	);
+
+	@SafeVarargs
+	private static List<JarEntryTransformer> concat(List<JarEntryTransformer>... lists)
+	{
+		final List<JarEntryTransformer> result = new ArrayList<>();
+		for (List<JarEntryTransformer> list : lists)
+		{
+			result.addAll(list);
+		}
+		return List.copyOf(result);
+	}
 }
\ No newline at end of file
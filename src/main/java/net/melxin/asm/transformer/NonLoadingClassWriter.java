@@ -24,23 +24,44 @@
  */
 package net.melxin.asm.transformer;
 
+import lombok.extern.slf4j.Slf4j;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Class writer that never loads classes to compute frames.
+ * <p>
+ * Common super classes come from the {@link ClassHierarchy}, whose cache is
+ * shared by every writer of the jar, so writers can run on any number of
+ * threads. Types the hierarchy cannot resolve fall back to java/lang/Object,
+ * which is logged once per pair.
+ */
+@Slf4j
 public class NonLoadingClassWriter extends ClassWriter
 {
-	private final Map<String, String> superClassCache = new HashMap<>();
+	// Pairs of types without a resolved common super class, logged once
+	private static final Set<String> unresolvedPairs = ConcurrentHashMap.newKeySet();
+
+	// Hierarchy of the jar classes, may be null
+	private final ClassHierarchy hierarchy;
 
 	public NonLoadingClassWriter(int flags)
 	{
-		super(flags);
+		this((ClassHierarchy) null, flags);
 	}
 
 	public NonLoadingClassWriter(ClassReader reader, int flags)
 	{
 		super(reader, flags);
+		this.hierarchy = null;
+	}
+
+	public NonLoadingClassWriter(ClassHierarchy hierarchy, int flags)
+	{
+		super(flags);
+		this.hierarchy = hierarchy;
 	}
 
 	@Override
@@ -52,41 +73,21 @@ public class NonLoadingClassWriter extends ClassWriter
 			return "java/lang/Object";
 		}
 
-		// Check cache
-		final String key = type1 + ":" + type2;
-		if (superClassCache.containsKey(key))
+		// Resolve from the hierarchy, cached there for all writers
+		if (hierarchy != null)
 		{
-			return superClassCache.get(key);
+			final String commonSuperClass = hierarchy.getCommonSuperClass(type1, type2);
+			if (commonSuperClass != null)
+			{
+				return commonSuperClass;
+			}
 		}
 
-		// Infer common superclass heuristically
-		final String result = inferCommonSuperClass(type1, type2);
-		superClassCache.put(key, result);
-		return result;
-	}
-
-	private String inferCommonSuperClass(String type1, String type2)
-	{
-		final String package1 = getPackageName(type1);
-		final String package2 = getPackageName(type2);
-
-		if (package1.equals(package2))
+		// Object is assignable from both, claiming any other type may not verify
+		if (unresolvedPairs.add(type1 + ' ' + type2))
 		{
-			// Same package: assume sibling classes share a common superclass
-			return type1;
+			log.warn("Unresolved common super class of: {} and {}, using java/lang/Object", type1, type2);
 		}
-
-		// Different packages: default to Object
 		return "java/lang/Object";
 	}
-
-	private String getPackageName(String internalName)
-	{
-		final int lastSlash = internalName.lastIndexOf('/');
-		if (lastSlash == -1)
-		{
-			return ""; // default package
-		}
-		return internalName.substring(0, lastSlash);
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one transformer, summed over every time it ran.
+ * <p>
+ * CPU time and allocated bytes are measured on the threads that call the
+ * transformer. Work a transformer hands to a pool of its own is not included.
+ * Class transformers are measured per class, so their wall time is summed over
+ * the classes and exceeds the elapsed time when classes run in parallel. For
+ * whole-program transformers the methods visited and the instruction totals
+ * cover the class trees that were built, and may include changes of
+ * transformers running next to them.
+ */
+public class PassMetrics
+{
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+	private static final boolean allocationSupported = threads instanceof com.sun.management.ThreadMXBean
+		&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+
+	@Getter(AccessLevel.PUBLIC)
+	private final String name;
+
+	private final LongAdder runs = new LongAdder();
+	private final LongAdder wallNanos = new LongAdder();
+	private final LongAdder cpuNanos = new LongAdder();
+	private final LongAdder allocatedBytes = new LongAdder();
+	private final LongAdder classesVisited = new LongAdder();
+	private final LongAdder methodsVisited = new LongAdder();
+	private final LongAdder instructionsBefore = new LongAdder();
+	private final LongAdder instructionsAfter = new LongAdder();
+	private final LongAdder itemsChanged = new LongAdder();
+
+	/**
+	 * Constructor
+	 *
+	 * @param name, the transformer name
+	 */
+	public PassMetrics(String name)
+	{
+		this.name = name;
+	}
+
+	public long getRuns()
+	{
+		return runs.sum();
+	}
+
+	public long getWallNanos()
+	{
+		return wallNanos.sum();
+	}
+
+	/**
+	 * @return the CPU time, or -1 if the JVM does not measure it
+	 */
+	public long getCpuNanos()
+	{
+		return cpuTimeSupported ? cpuNanos.sum() : -1;
+	}
+
+	/**
+	 * @return the allocated bytes, or -1 if the JVM does not measure them
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocationSupported ? allocatedBytes.sum() : -1;
+	}
+
+	public long getClassesVisited()
+	{
+		return classesVisited.sum();
+	}
+
+	public long getMethodsVisited()
+	{
+		return methodsVisited.sum();
+	}
+
+	public long getInstructionsBefore()
+	{
+		return instructionsBefore.sum();
+	}
+
+	public long getInstructionsAfter()
+	{
+		return instructionsAfter.sum();
+	}
+
+	public long getItemsChanged()
+	{
+		return itemsChanged.sum();
+	}
+
+	void addRun()
+	{
+		runs.increment();
+	}
+
+	void addWallNanos(long nanos)
+	{
+		wallNanos.add(nanos);
+	}
+
+	void addVisited(long classes, long methods, long instructionsBefore, long instructionsAfter)
+	{
+		this.classesVisited.add(classes);
+		this.methodsVisited.add(methods);
+		this.instructionsBefore.add(instructionsBefore);
+		this.instructionsAfter.add(instructionsAfter);
+	}
+
+	void addItemsChanged(long items)
+	{
+		this.itemsChanged.add(items);
+	}
+
+	/**
+	 * Start measuring the current thread
+	 *
+	 * @return the sample to pass to {@link #stop(long[])} on the same thread
+	 */
+	static long[] start()
+	{
+		return new long[]{currentCpuNanos(), currentAllocatedBytes()};
+	}
+
+	/**
+	 * Add the CPU time and allocations of the current thread since the sample was taken
+	 *
+	 * @param sample
+	 */
+	void stop(long[] sample)
+	{
+		cpuNanos.add(currentCpuNanos() - sample[0]);
+		allocatedBytes.add(currentAllocatedBytes() - sample[1]);
+	}
+
+	private static long currentCpuNanos()
+	{
+		return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : 0;
+	}
+
+	private static long currentAllocatedBytes()
+	{
+		return allocationSupported ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.analysis.AnalysisBudget;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Summary of one run, logged per pass and written as JSON for tooling.
+ */
+@Slf4j
+public class RunReport
+{
+	private final File inputJar;
+	private final File outputJar;
+	private final int parallelism;
+	private final int rounds;
+	private final List<PassMetrics> passes = new ArrayList<>();
+	private final List<AnalysisBudget.ExceededMethod> budgetExceeded = new ArrayList<>();
+	private long loadNanos;
+	private long transformNanos;
+	private long writeNanos;
+
+	/**
+	 * Constructor
+	 *
+	 * @param inputJar
+	 * @param outputJar
+	 * @param parallelism
+	 * @param rounds
+	 */
+	public RunReport(File inputJar, File outputJar, int parallelism, int rounds)
+	{
+		this.inputJar = inputJar;
+		this.outputJar = outputJar;
+		this.parallelism = parallelism;
+		this.rounds = rounds;
+	}
+
+	public void setLoadNanos(long loadNanos)
+	{
+		this.loadNanos = loadNanos;
+	}
+
+	public void setTransformNanos(long transformNanos)
+	{
+		this.transformNanos = transformNanos;
+	}
+
+	public void setWriteNanos(long writeNanos)
+	{
+		this.writeNanos = writeNanos;
+	}
+
+	public void addPasses(List<PassMetrics> metrics)
+	{
+		passes.addAll(metrics);
+	}
+
+	/**
+	 * Add the methods whose analysis hit a limit of the analysis budget
+	 *
+	 * @param methods
+	 */
+	public void addBudgetExceeded(List<AnalysisBudget.ExceededMethod> methods)
+	{
+		budgetExceeded.addAll(methods);
+	}
+
+	/**
+	 * Log one line per pass, and the methods over the analysis budget
+	 */
+	public void log()
+	{
+		log.info("Load: {} ms, transform: {} ms, write: {} ms", millis(loadNanos), millis(transformNanos), millis(writeNanos));
+		for (PassMetrics pass : passes)
+		{
+			log.info("Pass {}: {} runs, {} ms wall, {} ms cpu, {} KiB allocated, {} classes, {} methods, {} -> {} instructions, {} changed",
+				pass.getName(), pass.getRuns(), millis(pass.getWallNanos()), millis(pass.getCpuNanos()), pass.getAllocatedBytes() < 0 ? -1 : pass.getAllocatedBytes() / 1024,
+				pass.getClassesVisited(), pass.getMethodsVisited(), pass.getInstructionsBefore(), pass.getInstructionsAfter(), pass.getItemsChanged());
+		}
+		if (!budgetExceeded.isEmpty())
+		{
+			final StringBuilder summary = new StringBuilder();
+			for (AnalysisBudget.ExceededMethod method : budgetExceeded)
+			{
+				summary.append(System.lineSeparator()).append("  ").append(method.getAnalysis()).append(": ")
+					.append(method.getClassName()).append('.').append(method.getMethodName()).append(method.getMethodDescriptor())
+					.append(", ").append(method.getInstructionCount()).append(" instructions, ").append(method.getLimit())
+					.append(" limit, ").append(method.getFallback());
+			}
+			log.warn("Analysis budget exceeded by {} methods:{}", budgetExceeded.size(), summary);
+		}
+	}
+
+	/**
+	 * Write the report as JSON
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException
+	{
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))
+		{
+			writer.write(toJson());
+		}
+	}
+
+	public String toJson()
+	{
+		final StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"input\": ").append(quote(inputJar.getPath())).append(",\n");
+		json.append("  \"output\": ").append(quote(outputJar.getPath())).append(",\n");
+		json.append("  \"threads\": ").append(parallelism).append(",\n");
+		json.append("  \"rounds\": ").append(rounds).append(",\n");
+		json.append("  \"loadNanos\": ").append(loadNanos).append(",\n");
+		json.append("  \"transformNanos\": ").append(transformNanos).append(",\n");
+		json.append("  \"writeNanos\": ").append(writeNanos).append(",\n");
+		json.append("  \"passes\": [");
+		for (int i = 0; i < passes.size(); i++)
+		{
+			final PassMetrics pass = passes.get(i);
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    {");
+			json.append("\"name\": ").append(quote(pass.getName()));
+			json.append(", \"runs\": ").append(pass.getRuns());
+			json.append(", \"wallNanos\": ").append(pass.getWallNanos());
+			json.append(", \"cpuNanos\": ").append(pass.getCpuNanos());
+			json.append(", \"allocatedBytes\": ").append(pass.getAllocatedBytes());
+			json.append(", \"classesVisited\": ").append(pass.getClassesVisited());
+			json.append(", \"methodsVisited\": ").append(pass.getMethodsVisited());
+			json.append(", \"instructionsBefore\": ").append(pass.getInstructionsBefore());
+			json.append(", \"instructionsAfter\": ").append(pass.getInstructionsAfter());
+			json.append(", \"itemsChanged\": ").append(pass.getItemsChanged());
+			json.append("}");
+		}
+		json.append(passes.isEmpty() ? "],\n" : "\n  ],\n");
+		json.append("  \"budgetExceeded\": [");
+		for (int i = 0; i < budgetExceeded.size(); i++)
+		{
+			final AnalysisBudget.ExceededMethod method = budgetExceeded.get(i);
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append("    {");
+			json.append("\"analysis\": ").append(quote(method.getAnalysis()));
+			json.append(", \"class\": ").append(quote(method.getClassName()));
+			json.append(", \"method\": ").append(quote(method.getMethodName()));
+			json.append(", \"descriptor\": ").append(quote(method.getMethodDescriptor()));
+			json.append(", \"instructions\": ").append(method.getInstructionCount());
+			json.append(", \"limit\": ").append(quote(method.getLimit().name()));
+			json.append(", \"iterations\": ").append(method.getIterations());
+			json.append(", \"elapsedNanos\": ").append(method.getElapsedNanos());
+			json.append(", \"fallback\": ").append(quote(method.getFallback()));
+			json.append("}");
+		}
+		json.append(budgetExceeded.isEmpty() ? "]\n" : "\n  ]\n");
+		json.append("}\n");
+		return json.toString();
+	}
+
+	private static String quote(String value)
+	{
+		final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			final char c = value.charAt(i);
+			switch (c)
+			{
+				case '"':
+					quoted.append("\\\"");
+					break;
+				case '\\':
+					quoted.append("\\\\");
+					break;
+				case '\n':
+					quoted.append("\\n");
+					break;
+				case '\r':
+					quoted.append("\\r");
+					break;
+				case '\t':
+					quoted.append("\\t");
+					break;
+				default:
+					if (c < 0x20)
+					{
+						quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+					}
+					else
+					{
+						quoted.append(c);
+					}
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	private static long millis(long nanos)
+	{
+		return nanos < 0 ? -1 : nanos / 1_000_000;
+	}
+}
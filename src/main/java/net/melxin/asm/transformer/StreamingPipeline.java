@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.io.CompressedEntry;
+import net.melxin.asm.transformer.io.JarArchiveWriter;
+import net.melxin.asm.transformer.io.MappedJarFile;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Transforms a jar one class at a time, each class is read, passed through the
+ * adapters of the streaming transformers and written before the next one is read.
+ * <p>
+ * No class tree and no other class is held in memory, so only transformers that
+ * look at a single class can run. Stack map frames are kept as read, the
+ * transformers must leave them valid.
+ */
+@Slf4j
+public class StreamingPipeline
+{
+	private final List<StreamingTransformer> transformers;
+
+	/**
+	 * Constructor
+	 *
+	 * @param transformers, in the order they transform each class
+	 */
+	public StreamingPipeline(List<StreamingTransformer> transformers)
+	{
+		this.transformers = transformers;
+	}
+
+	/**
+	 * Transform the input jar into the output jar
+	 *
+	 * @param inputJar
+	 * @param outputJar
+	 */
+	public void run(File inputJar, File outputJar) throws IOException
+	{
+		log.info("Stream jar: {} to {}", inputJar.getAbsolutePath(), outputJar.getAbsolutePath());
+		final MappedJarFile jarFile = MappedJarFile.open(inputJar);
+		int classCount = 0;
+		try (JarArchiveWriter writer = new JarArchiveWriter(outputJar))
+		{
+			for (MappedJarFile.Entry entry : jarFile.getEntries())
+			{
+				if (!entry.getName().endsWith(".class"))
+				{
+					writer.putEntry(entry.getResource().toCompressedEntry(entry.getName(), Deflater.BEST_COMPRESSION));
+					log.debug("Write non-class entry: {}", entry.getName());
+					continue;
+				}
+
+				final byte[] classFile = transform(entry.getResource().getBytes());
+				writer.putEntry(CompressedEntry.deflate(entry.getName(), classFile, Deflater.BEST_COMPRESSION));
+				log.debug("Write class entry: {}", entry.getName());
+				classCount++;
+			}
+		}
+		transformers.forEach(ClassTransformer::complete);
+		log.info("Streamed {} classes", classCount);
+	}
+
+	/**
+	 * @param classFile
+	 * @return the transformed class file, or the input if no transformer accepts the class
+	 */
+	private byte[] transform(byte[] classFile)
+	{
+		// The header alone tells which transformers accept the class
+		final ClassEntry header = new ClassEntry(classFile);
+		final ClassReader reader = new ClassReader(classFile);
+		final ClassWriter writer = new ClassWriter(reader, 0);
+		ClassVisitor visitor = writer;
+		boolean accepted = false;
+		for (int i = transformers.size() - 1; i >= 0; i--)
+		{
+			final StreamingTransformer transformer = transformers.get(i);
+			if (transformer.accepts(header))
+			{
+				visitor = transformer.adapt(visitor);
+				accepted = true;
+			}
+		}
+
+		if (!accepted)
+		{
+			return classFile;
+		}
+		reader.accept(visitor, 0);
+		return writer.toByteArray();
+	}
+}
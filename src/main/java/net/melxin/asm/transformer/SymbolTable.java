@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import net.melxin.asm.transformer.util.LongIntMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interned names and descriptors, with a dense int ID for every class, field and
+ * method declared in the jar.
+ * <p>
+ * The table is built from the class headers when the jar is loaded and never
+ * changes afterwards, so it can be read from any thread. Lookups never allocate,
+ * members that are not declared in the jar, or were added by a transformer, have
+ * no ID and are reported as -1.
+ */
+public class SymbolTable
+{
+	public static final int MISSING = -1;
+
+	private final Map<String, Integer> symbols = new HashMap<>();
+	private final List<String> strings = new ArrayList<>();
+
+	// Class ID by name symbol
+	private final LongIntMap classes;
+
+	// Name and descriptor pair ID by name and descriptor symbols
+	private final LongIntMap signatures;
+
+	// Member ID by owner symbol and signature ID
+	private final LongIntMap fields;
+	private final LongIntMap methods;
+
+	private final List<String> classNames = new ArrayList<>();
+	private int fieldCount;
+	private int methodCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param classEntries
+	 */
+	public SymbolTable(Collection<ClassEntry> classEntries)
+	{
+		int memberCount = 0;
+		for (ClassEntry classEntry : classEntries)
+		{
+			memberCount += classEntry.getFields().size() + classEntry.getMethods().size();
+		}
+		this.classes = new LongIntMap(classEntries.size(), MISSING);
+		this.signatures = new LongIntMap(memberCount, MISSING);
+		this.fields = new LongIntMap(memberCount, MISSING);
+		this.methods = new LongIntMap(memberCount, MISSING);
+
+		for (ClassEntry classEntry : classEntries)
+		{
+			final int owner = intern(classEntry.getName());
+			if (classes.put(owner, classNames.size()) == MISSING)
+			{
+				classNames.add(classEntry.getName());
+			}
+			for (ClassEntry.Member field : classEntry.getFields())
+			{
+				if (fields.put(LongIntMap.key(owner, internSignature(field.getName(), field.getDesc())), fieldCount) == MISSING)
+				{
+					fieldCount++;
+				}
+			}
+			for (ClassEntry.Member method : classEntry.getMethods())
+			{
+				if (methods.put(LongIntMap.key(owner, internSignature(method.getName(), method.getDesc())), methodCount) == MISSING)
+				{
+					methodCount++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the symbol of a string
+	 *
+	 * @param value
+	 * @return the symbol or -1 if the string is not in the table
+	 */
+	public int getSymbol(String value)
+	{
+		final Integer symbol = symbols.get(value);
+		return symbol != null ? symbol : MISSING;
+	}
+
+	public String getString(int symbol)
+	{
+		return strings.get(symbol);
+	}
+
+	/**
+	 * Get the ID of a class of the jar
+	 *
+	 * @param name, the internal name
+	 * @return the class ID or -1
+	 */
+	public int getClassId(String name)
+	{
+		final int symbol = getSymbol(name);
+		return symbol != MISSING ? classes.get(symbol) : MISSING;
+	}
+
+	public String getClassName(int classId)
+	{
+		return classNames.get(classId);
+	}
+
+	public int getClassCount()
+	{
+		return classNames.size();
+	}
+
+	/**
+	 * Get the ID of a field declared in the jar
+	 *
+	 * @param owner, the declaring class
+	 * @param name
+	 * @param desc
+	 * @return the field ID or -1
+	 */
+	public int getFieldId(String owner, String name, String desc)
+	{
+		return getMemberId(fields, owner, name, desc);
+	}
+
+	public int getFieldCount()
+	{
+		return fieldCount;
+	}
+
+	/**
+	 * Get the ID of a method declared in the jar
+	 *
+	 * @param owner, the declaring class
+	 * @param name
+	 * @param desc
+	 * @return the method ID or -1
+	 */
+	public int getMethodId(String owner, String name, String desc)
+	{
+		return getMemberId(methods, owner, name, desc);
+	}
+
+	public int getMethodCount()
+	{
+		return methodCount;
+	}
+
+	private int getMemberId(LongIntMap members, String owner, String name, String desc)
+	{
+		final int ownerSymbol = getSymbol(owner);
+		final int nameSymbol = getSymbol(name);
+		final int descSymbol = getSymbol(desc);
+		if (ownerSymbol == MISSING || nameSymbol == MISSING || descSymbol == MISSING)
+		{
+			return MISSING;
+		}
+
+		final int signature = signatures.get(LongIntMap.key(nameSymbol, descSymbol));
+		return signature != MISSING ? members.get(LongIntMap.key(ownerSymbol, signature)) : MISSING;
+	}
+
+	private int intern(String value)
+	{
+		Integer symbol = symbols.get(value);
+		if (symbol == null)
+		{
+			symbol = strings.size();
+			symbols.put(value, symbol);
+			strings.add(value);
+		}
+		return symbol;
+	}
+
+	private int internSignature(String name, String desc)
+	{
+		final long key = LongIntMap.key(intern(name), intern(desc));
+		int signature = signatures.get(key);
+		if (signature == MISSING)
+		{
+			signature = signatures.size();
+			signatures.put(key, signature);
+		}
+		return signature;
+	}
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.analysis.AnalysisBudget;
+import net.melxin.asm.transformer.basic.ReachabilityShrinker;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
+import net.melxin.asm.transformer.pass.InstructionHandler;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * On-disk cache of transformed class files.
+ * <p>
+ * A class is keyed by a fingerprint of the configuration, its own content and the
+ * content of every class that transitively references it. Whole-program transformers
+ * only change a class based on what references it (unused members and classes,
+ * subtypes), so a change in one class invalidates exactly the classes it reaches.
+ * When frames are computed the class headers of the whole jar are part of the key,
+ * as common super classes may be resolved through any of them.
+ * <p>
+ * Removed classes are stored as empty files.
+ */
+@Slf4j
+public class TransformationCache
+{
+	// Bump when the key derivation or the pipeline semantics change
+	private static final String FORMAT_VERSION = "2";
+
+	private static final byte[] REMOVED = new byte[0];
+
+	private final File directory;
+	private final String fingerprint;
+
+	// Cache key of every indexed class
+	private final Map<String, String> keys = new HashMap<>();
+
+	// Classes that reference each indexed class
+	private final Map<String, Set<String>> referencedBy = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory, created on first store
+	 * @param fingerprint, see {@link #fingerprint(List, int, boolean, AnalysisBudget, int, List)}
+	 */
+	public TransformationCache(File directory, String fingerprint)
+	{
+		this.directory = directory;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Fingerprint everything besides the input classes that changes the output
+	 *
+	 * @param transformers
+	 * @param writerFlags
+	 * @param typedFrames, true if frames are computed with the typed frame analyzer
+	 * @param analysisBudget, methods over its limits are left as they are
+	 * @param rounds
+	 * @param libraries
+	 * @return the fingerprint
+	 */
+	public static String fingerprint(List<JarEntryTransformer> transformers, int writerFlags, boolean typedFrames, AnalysisBudget analysisBudget, int rounds, List<File> libraries)
+	{
+		final StringBuilder sb = new StringBuilder(FORMAT_VERSION);
+		for (JarEntryTransformer transformer : transformers)
+		{
+			appendTransformer(sb, transformer);
+		}
+		sb.append("|flags=").append(writerFlags).append("|typedFrames=").append(typedFrames)
+			.append("|budget=").append(analysisBudget.getMaxInstructions()).append(':').append(analysisBudget.getMaxIterations()).append(':').append(analysisBudget.getMaxNanos())
+			.append("|rounds=").append(rounds);
+		for (File library : libraries)
+		{
+			sb.append("|lib=").append(library.getAbsolutePath()).append(':').append(library.length()).append(':').append(library.lastModified());
+		}
+		return hex(sha256(sb.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static void appendTransformer(StringBuilder sb, JarEntryTransformer transformer)
+	{
+		sb.append('|').append(transformer.getClass().getName());
+		if (transformer instanceof FusedInstructionPass)
+		{
+			for (InstructionHandler handler : ((FusedInstructionPass) transformer).getHandlers())
+			{
+				sb.append('+').append(handler.getClass().getName());
+			}
+		}
+		else if (transformer instanceof ReachabilityShrinker)
+		{
+			final ReachabilityShrinker shrinker = (ReachabilityShrinker) transformer;
+			sb.append("+roots=").append(String.join(",", shrinker.getPatterns()));
+			for (JarEntryTransformer fallback : shrinker.getFallback())
+			{
+				appendTransformer(sb, fallback);
+			}
+		}
+	}
+
+	/**
+	 * Compute the keys of the classes of a freshly loaded jar
+	 *
+	 * @param classEntries, none of them may be materialized
+	 * @param includeHeaders, true to make every key depend on all class headers
+	 * @param wholeJar, true to make every key depend on all classes, for whole-program transformations
+	 */
+	public void index(Collection<ClassEntry> classEntries, boolean includeHeaders, boolean wholeJar)
+	{
+		final List<String> names = new ArrayList<>(classEntries.size());
+		final Map<String, Integer> ids = new HashMap<>();
+		final List<byte[]> contentHashes = new ArrayList<>(classEntries.size());
+		final List<Set<String>> references = new ArrayList<>(classEntries.size());
+		for (ClassEntry classEntry : classEntries)
+		{
+			final byte[] classFile = classEntry.getClassFileBuffer();
+			if (classFile == null)
+			{
+				throw new IllegalStateException("Class is already materialized: " + classEntry.getName());
+			}
+			ids.put(classEntry.getName(), names.size());
+			names.add(classEntry.getName());
+			contentHashes.add(sha256(classFile));
+			references.add(getReferencedClasses(classFile));
+		}
+
+		// Edges point from a class to the classes referencing it
+		final int[][] edges = new int[names.size()][];
+		final List<Set<Integer>> inbound = new ArrayList<>(names.size());
+		for (int i = 0; i < names.size(); i++)
+		{
+			inbound.add(new TreeSet<>());
+		}
+		for (int i = 0; i < names.size(); i++)
+		{
+			for (String reference : references.get(i))
+			{
+				final Integer target = ids.get(reference);
+				if (target != null && target != i)
+				{
+					inbound.get(target).add(i);
+				}
+			}
+		}
+		for (int i = 0; i < names.size(); i++)
+		{
+			edges[i] = inbound.get(i).stream().mapToInt(Integer::intValue).toArray();
+			final Set<String> referencing = new LinkedHashSet<>();
+			for (int source : edges[i])
+			{
+				referencing.add(names.get(source));
+			}
+			referencedBy.put(names.get(i), referencing);
+		}
+
+		final String headers = includeHeaders ? hashHeaders(classEntries) : "";
+		final String[] closureDigests;
+		if (wholeJar)
+		{
+			final String digest = digestAll(names, contentHashes);
+			closureDigests = new String[names.size()];
+			Arrays.fill(closureDigests, digest);
+		}
+		else
+		{
+			closureDigests = digestClosures(names, contentHashes, edges);
+		}
+		for (int i = 0; i < names.size(); i++)
+		{
+			final String key = fingerprint + '|' + headers + '|' + closureDigests[i] + '|' + names.get(i);
+			keys.put(names.get(i), hex(sha256(key.getBytes(StandardCharsets.UTF_8))));
+		}
+	}
+
+	/**
+	 * Get the classes that transitively reference any of the given classes
+	 *
+	 * @param names
+	 * @return the given classes and every class referencing them
+	 */
+	public Set<String> getInboundClosure(Collection<String> names)
+	{
+		final Set<String> closure = new HashSet<>(names);
+		final Deque<String> worklist = new ArrayDeque<>(names);
+		while (!worklist.isEmpty())
+		{
+			for (String source : referencedBy.getOrDefault(worklist.pop(), Set.of()))
+			{
+				if (closure.add(source))
+				{
+					worklist.push(source);
+				}
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * Load the cached output of a class
+	 *
+	 * @param name, the internal name
+	 * @return the class file, an empty array if the class was removed or null on a miss
+	 */
+	public byte[] load(String name)
+	{
+		final Path path = getPath(name);
+		if (path == null || !Files.isRegularFile(path))
+		{
+			return null;
+		}
+
+		try
+		{
+			return Files.readAllBytes(path);
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to read cached class: {}", name, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Store the output of a class
+	 *
+	 * @param name, the internal name
+	 * @param classFile, the class file or null if the class was removed
+	 */
+	public void store(String name, byte[] classFile)
+	{
+		final Path path = getPath(name);
+		if (path == null)
+		{
+			return;
+		}
+
+		try
+		{
+			Files.createDirectories(path.getParent());
+			final Path temp = Files.createTempFile(path.getParent(), "class", ".tmp");
+			Files.write(temp, classFile != null ? classFile : REMOVED);
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.warn("Failed to store cached class: {}", name, e);
+		}
+	}
+
+	private Path getPath(String name)
+	{
+		final String key = keys.get(name);
+		return key != null ? directory.toPath().resolve(key.substring(0, 2)).resolve(key + ".class") : null;
+	}
+
+	/**
+	 * Digest every class together with all classes reaching it, the strongly connected
+	 * components are digested once in reverse topological order
+	 */
+	private static String[] digestClosures(List<String> names, List<byte[]> contentHashes, int[][] edges)
+	{
+		final int count = names.size();
+		final int[] index = new int[count];
+		final int[] low = new int[count];
+		final int[] component = new int[count];
+		final boolean[] onStack = new boolean[count];
+		Arrays.fill(index, -1);
+		Arrays.fill(component, -1);
+
+		final List<String> componentDigests = new ArrayList<>();
+		final Deque<Integer> stack = new ArrayDeque<>();
+		final Deque<int[]> frames = new ArrayDeque<>();
+		int counter = 0;
+
+		for (int root = 0; root < count; root++)
+		{
+			if (index[root] != -1)
+			{
+				continue;
+			}
+
+			index[root] = low[root] = counter++;
+			stack.push(root);
+			onStack[root] = true;
+			frames.push(new int[]{root, 0});
+			while (!frames.isEmpty())
+			{
+				final int[] frame = frames.peek();
+				final int node = frame[0];
+				if (frame[1] < edges[node].length)
+				{
+					final int next = edges[node][frame[1]++];
+					if (index[next] == -1)
+					{
+						index[next] = low[next] = counter++;
+						stack.push(next);
+						onStack[next] = true;
+						frames.push(new int[]{next, 0});
+					}
+					else if (onStack[next])
+					{
+						low[node] = Math.min(low[node], index[next]);
+					}
+					continue;
+				}
+
+				frames.pop();
+				if (!frames.isEmpty())
+				{
+					final int parent = frames.peek()[0];
+					low[parent] = Math.min(low[parent], low[node]);
+				}
+
+				if (low[node] == index[node])
+				{
+					// Every component reachable from this one already has a digest
+					final int id = componentDigests.size();
+					final List<Integer> members = new ArrayList<>();
+					int member;
+					do
+					{
+						member = stack.pop();
+						onStack[member] = false;
+						component[member] = id;
+						members.add(member);
+					}
+					while (member != node);
+					componentDigests.add(digestComponent(names, contentHashes, edges, component, componentDigests, members));
+				}
+			}
+		}
+
+		final String[] digests = new String[count];
+		for (int i = 0; i < count; i++)
+		{
+			digests[i] = componentDigests.get(component[i]);
+		}
+		return digests;
+	}
+
+	private static String digestComponent(List<String> names, List<byte[]> contentHashes, int[][] edges, int[] component, List<String> componentDigests, List<Integer> members)
+	{
+		final int id = component[members.get(0)];
+		members.sort((a, b) -> names.get(a).compareTo(names.get(b)));
+		final Set<String> successors = new TreeSet<>();
+		final MessageDigest digest = newDigest();
+		for (int member : members)
+		{
+			digest.update(names.get(member).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(contentHashes.get(member));
+			for (int next : edges[member])
+			{
+				if (component[next] != id)
+				{
+					successors.add(componentDigests.get(component[next]));
+				}
+			}
+		}
+		for (String successor : successors)
+		{
+			digest.update(successor.getBytes(StandardCharsets.UTF_8));
+		}
+		return hex(digest.digest());
+	}
+
+	private static String hashHeaders(Collection<ClassEntry> classEntries)
+	{
+		final Set<String> headers = new TreeSet<>();
+		for (ClassEntry classEntry : classEntries)
+		{
+			headers.add(classEntry.getName() + ':' + classEntry.getSuperName() + ':' + classEntry.getInterfaces()
+				+ ':' + (classEntry.getAccess() & Opcodes.ACC_INTERFACE));
+		}
+		return hex(sha256(String.join("\n", headers).getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * @return a digest of every class, independent of the jar order
+	 */
+	private static String digestAll(List<String> names, List<byte[]> contentHashes)
+	{
+		final Map<String, String> sorted = new TreeMap<>();
+		for (int i = 0; i < names.size(); i++)
+		{
+			sorted.put(names.get(i), hex(contentHashes.get(i)));
+		}
+		return hex(sha256(sorted.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Get the classes the class refers to as {@link ClassReferenceIndex} sees them, so
+	 * the cache and the transformers deciding through the index agree on the references.
+	 * That covers descriptors, signatures, annotations and local variables, which have
+	 * no CONSTANT_Class entry. The classes named by the constant pool are added too,
+	 * they include the InnerClasses and nest attributes.
+	 *
+	 * @param classFile
+	 * @return the internal names, array types are reduced to their element type
+	 */
+	private static Set<String> getReferencedClasses(byte[] classFile)
+	{
+		final ClassReader reader = new ClassReader(classFile);
+		final ClassNode classNode = new ClassNode(Opcodes.ASM9);
+		reader.accept(classNode, ClassReader.SKIP_FRAMES);
+		final Set<String> classes = new HashSet<>(ClassReferenceIndex.getReferencedClasses(classNode));
+		final char[] buffer = new char[reader.getMaxStringLength()];
+		for (int i = 1; i < reader.getItemCount(); i++)
+		{
+			final int offset = reader.getItem(i);
+			if (offset > 0 && classFile[offset - 1] == 7) // CONSTANT_Class
+			{
+				String name = reader.readUTF8(offset, buffer);
+				if (name.startsWith("["))
+				{
+					name = name.substring(name.lastIndexOf('[') + 1);
+					if (!name.startsWith("L"))
+					{
+						continue;
+					}
+					name = name.substring(1, name.length() - 1);
+				}
+				classes.add(name);
+			}
+		}
+		return classes;
+	}
+
+	private static byte[] sha256(byte[] data)
+	{
+		return newDigest().digest(data);
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes)
+	{
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.jfr.TransformerEvent;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a list of transformers, ordered by the {@link Aspect}s they read and write.
+ * <p>
+ * Each transformer is placed in the first level after every earlier transformer it
+ * conflicts with, so the declared order is kept wherever it matters. Transformers of
+ * a level are independent: its {@link ClassTransformer}s are merged into a single
+ * pass over the classes on a fork-join pool, and whole-program transformers run
+ * next to it. Transformers whose inputs did not change since their last run are
+ * skipped, which only matters when the pipeline is repeated for several rounds.
+ */
+@Slf4j
+public class TransformerRunner
+{
+	private final List<List<JarEntryTransformer>> levels;
+	private final int parallelism;
+	private final int rounds;
+
+	// Modification counts seen by each transformer when it last ran
+	private final Map<JarEntryTransformer, long[]> lastRun = new IdentityHashMap<>();
+
+	// Metrics of each transformer, in declared order
+	private final Map<JarEntryTransformer, PassMetrics> metrics = new IdentityHashMap<>();
+	private final List<PassMetrics> metricsInOrder = new ArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param transformers, in their declared order
+	 * @param parallelism, the number of worker threads
+	 */
+	public TransformerRunner(List<JarEntryTransformer> transformers, int parallelism)
+	{
+		this(transformers, parallelism, 1);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param transformers, in their declared order
+	 * @param parallelism, the number of worker threads
+	 * @param rounds, the maximum number of times the pipeline is repeated until nothing changes
+	 */
+	public TransformerRunner(List<JarEntryTransformer> transformers, int parallelism, int rounds)
+	{
+		this.levels = schedule(transformers);
+		this.parallelism = Math.max(1, parallelism);
+		this.rounds = Math.max(1, rounds);
+		for (JarEntryTransformer transformer : transformers)
+		{
+			final PassMetrics passMetrics = new PassMetrics(nameOf(transformer));
+			metrics.put(transformer, passMetrics);
+			metricsInOrder.add(passMetrics);
+		}
+
+		for (int i = 0; i < levels.size(); i++)
+		{
+			final List<String> names = new ArrayList<>();
+			levels.get(i).forEach(transformer -> names.add(nameOf(transformer)));
+			log.debug("Level {}: {}", i, names);
+		}
+	}
+
+	/**
+	 * @return the metrics of every transformer, in declared order
+	 */
+	public List<PassMetrics> getMetrics()
+	{
+		return Collections.unmodifiableList(metricsInOrder);
+	}
+
+	public void run(JarEntryGroup jarEntryGroup)
+	{
+		final ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		try
+		{
+			for (int round = 1; round <= rounds; round++)
+			{
+				final long[] before = snapshot(jarEntryGroup);
+				for (List<JarEntryTransformer> level : levels)
+				{
+					final List<JarEntryTransformer> pending = new ArrayList<>();
+					for (JarEntryTransformer transformer : level)
+					{
+						if (isStale(jarEntryGroup, transformer))
+						{
+							pending.add(transformer);
+							lastRun.put(transformer, snapshot(jarEntryGroup));
+						}
+						else
+						{
+							log.debug("Skip transformer: {}, its inputs did not change", nameOf(transformer));
+						}
+					}
+					runLevel(pool, jarEntryGroup, pending);
+				}
+
+				if (Arrays.equals(before, snapshot(jarEntryGroup)))
+				{
+					log.debug("Transformations settled after {} rounds", round);
+					break;
+				}
+			}
+		}
+		finally
+		{
+			if (pool != null)
+			{
+				pool.shutdown();
+			}
+		}
+	}
+
+	private void runLevel(ForkJoinPool pool, JarEntryGroup jarEntryGroup, List<JarEntryTransformer> level)
+	{
+		final List<ClassTransformer> phase = new ArrayList<>();
+		final List<JarEntryTransformer> wholeProgram = new ArrayList<>();
+		for (JarEntryTransformer transformer : level)
+		{
+			if (transformer instanceof ClassTransformer)
+			{
+				phase.add((ClassTransformer) transformer);
+			}
+			else
+			{
+				wholeProgram.add(transformer);
+			}
+		}
+
+		if (pool == null)
+		{
+			runPhase(null, jarEntryGroup, phase);
+			wholeProgram.forEach(transformer -> runWholeProgram(jarEntryGroup, transformer));
+			return;
+		}
+
+		final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (JarEntryTransformer transformer : wholeProgram)
+		{
+			tasks.add(pool.submit(() -> runWholeProgram(jarEntryGroup, transformer)));
+		}
+		runPhase(pool, jarEntryGroup, phase);
+		tasks.forEach(ForkJoinTask::join);
+	}
+
+	private void runWholeProgram(JarEntryGroup jarEntryGroup, JarEntryTransformer transformer)
+	{
+		final PassMetrics passMetrics = metrics.get(transformer);
+		final long changesBefore = transformer.getChangeCount();
+		final long[] before = countBuiltClasses(jarEntryGroup);
+		final TransformerEvent event = new TransformerEvent();
+		final long[] sample = PassMetrics.start();
+		final long start = System.nanoTime();
+		event.begin();
+
+		transformer.transform(jarEntryGroup);
+
+		event.end();
+		passMetrics.addWallNanos(System.nanoTime() - start);
+		passMetrics.stop(sample);
+		passMetrics.addRun();
+		final long instructionsAfter = countBuiltClasses(jarEntryGroup)[2];
+		passMetrics.addVisited(before[0], before[1], before[2], instructionsAfter);
+		final long changesAfter = transformer.getChangeCount();
+		if (changesBefore >= 0 && changesAfter >= 0)
+		{
+			passMetrics.addItemsChanged(changesAfter - changesBefore);
+		}
+		if (event.shouldCommit())
+		{
+			event.transformer = passMetrics.getName();
+			event.instructionCount = before[2];
+			event.instructionsAfter = instructionsAfter;
+			event.changed = changesAfter != changesBefore;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return the number of classes, and the methods and instructions of the classes whose tree was built
+	 */
+	private static long[] countBuiltClasses(JarEntryGroup jarEntryGroup)
+	{
+		final long[] counts = new long[3];
+		for (ClassEntry classEntry : jarEntryGroup.getClassEntries())
+		{
+			counts[0]++;
+			if (classEntry.isMaterialized())
+			{
+				final ClassNode classNode = classEntry.getNode();
+				counts[1] += classNode.methods.size();
+				counts[2] += countInstructions(classNode);
+			}
+		}
+		return counts;
+	}
+
+	private static long countInstructions(ClassNode classNode)
+	{
+		long count = 0;
+		for (MethodNode method : classNode.methods)
+		{
+			count += method.instructions.size();
+		}
+		return count;
+	}
+
+	private void runPhase(ForkJoinPool pool, JarEntryGroup jarEntryGroup, List<ClassTransformer> phase)
+	{
+		if (phase.isEmpty())
+		{
+			return;
+		}
+
+		log.debug("Run {} class transformers using {} threads", phase.size(), parallelism);
+		final List<ClassEntry> classEntries = new ArrayList<>(jarEntryGroup.getClassEntries());
+		final LongAdder[] changedClasses = new LongAdder[phase.size()];
+		final PassMetrics[] phaseMetrics = new PassMetrics[phase.size()];
+		final long[] changesBefore = new long[phase.size()];
+		for (int i = 0; i < phase.size(); i++)
+		{
+			changedClasses[i] = new LongAdder();
+			phaseMetrics[i] = metrics.get(phase.get(i));
+			changesBefore[i] = phase.get(i).getChangeCount();
+		}
+
+		final Runnable task = () -> (pool != null ? classEntries.parallelStream() : classEntries.stream()).forEach(classEntry ->
+		{
+			for (int i = 0; i < phase.size(); i++)
+			{
+				final ClassTransformer transformer = phase.get(i);
+				if (!transformer.accepts(classEntry))
+				{
+					continue;
+				}
+
+				final ClassNode classNode = classEntry.getNode();
+				final long instructionsBefore = countInstructions(classNode);
+				final TransformerEvent event = new TransformerEvent();
+				final long[] sample = PassMetrics.start();
+				final long start = System.nanoTime();
+				event.begin();
+				final boolean changed = transformer.transform(classNode);
+				event.end();
+				if (changed)
+				{
+					changedClasses[i].increment();
+				}
+				phaseMetrics[i].addWallNanos(System.nanoTime() - start);
+				phaseMetrics[i].stop(sample);
+				final long instructionsAfter = countInstructions(classNode);
+				phaseMetrics[i].addVisited(1, classNode.methods.size(), instructionsBefore, instructionsAfter);
+				if (event.shouldCommit())
+				{
+					event.transformer = phaseMetrics[i].getName();
+					event.className = classNode.name;
+					event.instructionCount = instructionsBefore;
+					event.instructionsAfter = instructionsAfter;
+					event.changed = changed;
+					event.commit();
+				}
+			}
+		});
+
+		if (pool == null)
+		{
+			task.run();
+		}
+		else
+		{
+			try
+			{
+				pool.submit(task).get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while transforming classes", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new IllegalStateException("Failed to transform classes", e.getCause());
+			}
+		}
+
+		for (int i = 0; i < phase.size(); i++)
+		{
+			final ClassTransformer transformer = phase.get(i);
+			transformer.complete();
+			if (changedClasses[i].sum() > 0)
+			{
+				transformer.writes().forEach(jarEntryGroup::markModified);
+			}
+
+			// Transformers without a counter report the classes they changed
+			final long changesAfter = transformer.getChangeCount();
+			phaseMetrics[i].addRun();
+			phaseMetrics[i].addItemsChanged(changesBefore[i] >= 0 && changesAfter >= 0 ? changesAfter - changesBefore[i] : changedClasses[i].sum());
+		}
+	}
+
+	/**
+	 * @return the simple class name, with the handlers of a fused instruction pass
+	 */
+	static String nameOf(JarEntryTransformer transformer)
+	{
+		if (transformer instanceof FusedInstructionPass)
+		{
+			final StringJoiner handlers = new StringJoiner("+", "(", ")");
+			((FusedInstructionPass) transformer).getHandlers().forEach(handler -> handlers.add(handler.getClass().getSimpleName()));
+			return transformer.getClass().getSimpleName() + handlers;
+		}
+		return transformer.getClass().getSimpleName();
+	}
+
+	private boolean isStale(JarEntryGroup jarEntryGroup, JarEntryTransformer transformer)
+	{
+		final long[] seen = lastRun.get(transformer);
+		if (seen == null)
+		{
+			return true;
+		}
+
+		for (Aspect aspect : readsOf(transformer))
+		{
+			if (seen[aspect.ordinal()] != jarEntryGroup.getModificationCount(aspect))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long[] snapshot(JarEntryGroup jarEntryGroup)
+	{
+		final Aspect[] aspects = Aspect.values();
+		final long[] counts = new long[aspects.length];
+		for (Aspect aspect : aspects)
+		{
+			counts[aspect.ordinal()] = jarEntryGroup.getModificationCount(aspect);
+		}
+		return counts;
+	}
+
+	/**
+	 * Assign every transformer to the first level after the transformers it conflicts with
+	 *
+	 * @param transformers, in their declared order
+	 * @return the levels in run order, each in declared order
+	 */
+	static List<List<JarEntryTransformer>> schedule(List<JarEntryTransformer> transformers)
+	{
+		final int[] depth = new int[transformers.size()];
+		final List<List<JarEntryTransformer>> levels = new ArrayList<>();
+		for (int i = 0; i < transformers.size(); i++)
+		{
+			for (int j = 0; j < i; j++)
+			{
+				if (conflicts(transformers.get(j), transformers.get(i)))
+				{
+					depth[i] = Math.max(depth[i], depth[j] + 1);
+				}
+			}
+
+			while (levels.size() <= depth[i])
+			{
+				levels.add(new ArrayList<>());
+			}
+			levels.get(depth[i]).add(transformers.get(i));
+		}
+		return levels;
+	}
+
+	private static boolean conflicts(JarEntryTransformer first, JarEntryTransformer second)
+	{
+		return intersects(first.writes(), readsOf(second))
+			|| intersects(first.writes(), second.writes())
+			|| intersects(readsOf(first), second.writes());
+	}
+
+	private static Set<Aspect> readsOf(JarEntryTransformer transformer)
+	{
+		final Set<Aspect> reads = EnumSet.of(Aspect.CLASSES);
+		reads.addAll(transformer.reads());
+		return reads;
+	}
+
+	private static boolean intersects(Set<Aspect> first, Set<Aspect> second)
+	{
+		for (Aspect aspect : first)
+		{
+			if (second.contains(aspect))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
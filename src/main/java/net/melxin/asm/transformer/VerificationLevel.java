@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+/**
+ * How thoroughly written classes are verified, from cheapest to most thorough.
+ */
+public enum VerificationLevel
+{
+	/**
+	 * No verification
+	 */
+	OFF,
+
+	/**
+	 * Class file structure, member signatures and instruction operands
+	 */
+	STRUCTURAL,
+
+	/**
+	 * Structural, and data flow as checked by the {@link org.objectweb.asm.tree.analysis.BasicVerifier}
+	 * for a fixed sample of the classes
+	 */
+	SAMPLED,
+
+	/**
+	 * Structural, and data flow as checked by the {@link org.objectweb.asm.tree.analysis.BasicVerifier},
+	 * with the {@link net.melxin.asm.transformer.analysis.TypedFrameAnalyzer} for methods without subroutines
+	 */
+	FULL,
+
+	/**
+	 * Structural, and data flow with a {@link org.objectweb.asm.tree.analysis.SimpleVerifier}
+	 * that checks reference types against the class hierarchy
+	 */
+	TYPED
+}
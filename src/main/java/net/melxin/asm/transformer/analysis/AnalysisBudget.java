@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.analysis;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.melxin.asm.transformer.jfr.AnalysisBudgetEvent;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.Interpreter;
+import org.objectweb.asm.tree.analysis.Value;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits of the analysis of one method: its instruction count, the instructions
+ * the analysis may visit, and the time it may take. A limit of 0 is no limit.
+ * <p>
+ * An analysis calls {@link #start(int)} before it begins and {@link #check(long, long)}
+ * as it goes, both throw {@link AnalysisBudgetExceededException} when a limit is hit.
+ * The caller then falls back to a cheaper analysis or skips the method, and records
+ * the method with {@link #record}. A budget is shared by the threads of a run.
+ * <p>
+ * The instruction and iteration limits give the same result on every run, the time
+ * limit depends on the machine load.
+ */
+public class AnalysisBudget
+{
+	public static final AnalysisBudget UNLIMITED = new AnalysisBudget(0, 0, 0);
+
+	public enum Limit
+	{
+		INSTRUCTIONS,
+		ITERATIONS,
+		TIME
+	}
+
+	@Getter(AccessLevel.PUBLIC)
+	private final int maxInstructions;
+
+	// Instructions visited, counted again each time the analysis visits them
+	@Getter(AccessLevel.PUBLIC)
+	private final long maxIterations;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final long maxNanos;
+
+	private final Queue<ExceededMethod> exceeded = new ConcurrentLinkedQueue<>();
+
+	// Classes with a method over the time limit, their output depends on the machine load
+	private final Set<String> timeLimitedClasses = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxInstructions, the instruction count of the largest method to analyze, 0 for no limit
+	 * @param maxIterations, the instructions an analysis may visit, 0 for no limit
+	 * @param maxMillis, the time an analysis may take, 0 for no limit
+	 */
+	public AnalysisBudget(int maxInstructions, long maxIterations, long maxMillis)
+	{
+		this.maxInstructions = Math.max(0, maxInstructions);
+		this.maxIterations = Math.max(0, maxIterations);
+		this.maxNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxMillis));
+	}
+
+	/**
+	 * Start an analysis
+	 *
+	 * @param instructionCount, the instruction count of the method
+	 * @return the start time to pass to {@link #check(long, long)}
+	 * @throws AnalysisBudgetExceededException if the method has too many instructions
+	 */
+	public long start(int instructionCount) throws AnalysisBudgetExceededException
+	{
+		if (maxInstructions > 0 && instructionCount > maxInstructions)
+		{
+			throw new AnalysisBudgetExceededException(Limit.INSTRUCTIONS, instructionCount, 0, 0);
+		}
+		return maxNanos > 0 ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Check an analysis against the iteration and time limits. The time is read on
+	 * every call, analyses visiting single instructions call this every few hundred.
+	 *
+	 * @param iterations, the instructions visited so far
+	 * @param start, the time returned by {@link #start(int)}
+	 * @throws AnalysisBudgetExceededException if a limit is hit
+	 */
+	public void check(long iterations, long start) throws AnalysisBudgetExceededException
+	{
+		if (maxIterations > 0 && iterations > maxIterations)
+		{
+			throw new AnalysisBudgetExceededException(Limit.ITERATIONS, 0, iterations, maxNanos > 0 ? System.nanoTime() - start : 0);
+		}
+		if (maxNanos > 0)
+		{
+			final long elapsed = System.nanoTime() - start;
+			if (elapsed > maxNanos)
+			{
+				throw new AnalysisBudgetExceededException(Limit.TIME, 0, iterations, elapsed);
+			}
+		}
+	}
+
+	/**
+	 * @return false if any limit is set
+	 */
+	public boolean isUnlimited()
+	{
+		return maxInstructions == 0 && maxIterations == 0 && maxNanos == 0;
+	}
+
+	/**
+	 * Create an analyzer that stops when a limit is hit, counting the control flow
+	 * edges it follows as iterations
+	 *
+	 * @param interpreter
+	 * @return the analyzer, its analyze method throws {@link AnalysisBudgetExceededException}
+	 */
+	public <V extends Value> Analyzer<V> newAnalyzer(Interpreter<V> interpreter)
+	{
+		return isUnlimited() ? new Analyzer<>(interpreter) : new BudgetedAnalyzer<>(interpreter, this);
+	}
+
+	/**
+	 * Record a method whose analysis hit a limit, and emit a JFR event for it
+	 *
+	 * @param analysis, the name of the analysis
+	 * @param owner, the internal name of the class declaring the method
+	 * @param method
+	 * @param e, the exception of the analysis
+	 * @param fallback, what was done instead
+	 */
+	public void record(String analysis, String owner, MethodNode method, AnalysisBudgetExceededException e, String fallback)
+	{
+		final ExceededMethod entry = new ExceededMethod(analysis, owner, method.name, method.desc, method.instructions.size(),
+			e.getLimit(), e.getIterations(), e.getElapsedNanos(), fallback);
+		exceeded.add(entry);
+		if (e.getLimit() == Limit.TIME)
+		{
+			timeLimitedClasses.add(owner);
+		}
+
+		final AnalysisBudgetEvent event = new AnalysisBudgetEvent();
+		if (event.shouldCommit())
+		{
+			event.analysis = analysis;
+			event.className = owner;
+			event.methodName = method.name;
+			event.methodDescriptor = method.desc;
+			event.instructionCount = entry.instructionCount;
+			event.limit = e.getLimit().name();
+			event.iterations = e.getIterations();
+			event.elapsed = e.getElapsedNanos();
+			event.fallback = fallback;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param className, the internal name
+	 * @return true if a method of the class hit the time limit
+	 */
+	public boolean isTimeLimited(String className)
+	{
+		return timeLimitedClasses.contains(className);
+	}
+
+	/**
+	 * @return true if any method hit the time limit
+	 */
+	public boolean isTimeLimited()
+	{
+		return !timeLimitedClasses.isEmpty();
+	}
+
+	/**
+	 * @return the methods that hit a limit, by analysis, class and method
+	 */
+	public List<ExceededMethod> getExceeded()
+	{
+		final List<ExceededMethod> result = new ArrayList<>(exceeded);
+		result.sort(Comparator.comparing(ExceededMethod::getAnalysis)
+			.thenComparing(ExceededMethod::getClassName)
+			.thenComparing(ExceededMethod::getMethodName)
+			.thenComparing(ExceededMethod::getMethodDescriptor));
+		return result;
+	}
+
+	/**
+	 * A method whose analysis hit a limit
+	 */
+	public static class ExceededMethod
+	{
+		@Getter(AccessLevel.PUBLIC)
+		private final String analysis;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final String className;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final String methodName;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final String methodDescriptor;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final int instructionCount;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final Limit limit;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final long iterations;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final long elapsedNanos;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final String fallback;
+
+		ExceededMethod(String analysis, String className, String methodName, String methodDescriptor, int instructionCount,
+			Limit limit, long iterations, long elapsedNanos, String fallback)
+		{
+			this.analysis = analysis;
+			this.className = className;
+			this.methodName = methodName;
+			this.methodDescriptor = methodDescriptor;
+			this.instructionCount = instructionCount;
+			this.limit = limit;
+			this.iterations = iterations;
+			this.elapsedNanos = elapsedNanos;
+			this.fallback = fallback;
+		}
+	}
+
+	/**
+	 * Analyzer counting the control flow edges it follows. The Analyzer wraps the
+	 * unchecked exceptions of its hooks, the budget exception is unwrapped again.
+	 */
+	private static class BudgetedAnalyzer<V extends Value> extends Analyzer<V>
+	{
+		private final AnalysisBudget budget;
+		private long iterations;
+		private long start;
+
+		BudgetedAnalyzer(Interpreter<V> interpreter, AnalysisBudget budget)
+		{
+			super(interpreter);
+			this.budget = budget;
+		}
+
+		@Override
+		public Frame<V>[] analyze(String owner, MethodNode method) throws AnalyzerException
+		{
+			start = budget.start(method.instructions.size());
+			iterations = 0;
+			try
+			{
+				return super.analyze(owner, method);
+			}
+			catch (AnalyzerException e)
+			{
+				if (e.getCause() instanceof Exceeded)
+				{
+					throw ((Exceeded) e.getCause()).exception;
+				}
+				throw e;
+			}
+		}
+
+		@Override
+		protected void newControlFlowEdge(int insnIndex, int successorIndex)
+		{
+			if ((++iterations & 0xFF) == 0)
+			{
+				try
+				{
+					budget.check(iterations, start);
+				}
+				catch (AnalysisBudgetExceededException e)
+				{
+					throw new Exceeded(e);
+				}
+			}
+		}
+	}
+
+	private static class Exceeded extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final AnalysisBudgetExceededException exception;
+
+		Exceeded(AnalysisBudgetExceededException exception)
+		{
+			super(null, null, false, false);
+			this.exception = exception;
+		}
+	}
+}
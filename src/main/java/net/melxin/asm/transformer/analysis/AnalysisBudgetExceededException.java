@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.analysis;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+
+/**
+ * Thrown when the analysis of a method hits a limit of its {@link AnalysisBudget}.
+ * It is an {@link AnalyzerException}, callers that do not handle it treat the method
+ * as one that failed the analysis.
+ */
+public class AnalysisBudgetExceededException extends AnalyzerException
+{
+	private static final long serialVersionUID = 1L;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final AnalysisBudget.Limit limit;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final long iterations;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final long elapsedNanos;
+
+	/**
+	 * Constructor
+	 *
+	 * @param limit, the limit that was hit
+	 * @param instructionCount, the instruction count of the method, if it is over the limit
+	 * @param iterations, the instructions visited when the limit was hit
+	 * @param elapsedNanos, the time taken when the limit was hit, 0 if it was not measured
+	 */
+	public AnalysisBudgetExceededException(AnalysisBudget.Limit limit, int instructionCount, long iterations, long elapsedNanos)
+	{
+		super(null, message(limit, instructionCount, iterations, elapsedNanos));
+		this.limit = limit;
+		this.iterations = iterations;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	private static String message(AnalysisBudget.Limit limit, int instructionCount, long iterations, long elapsedNanos)
+	{
+		switch (limit)
+		{
+			case INSTRUCTIONS:
+				return "Method has " + instructionCount + " instructions, over the analysis limit";
+			case ITERATIONS:
+				return "Analysis visited " + iterations + " instructions, over the limit";
+			default:
+				return "Analysis took " + elapsedNanos / 1_000_000 + " ms, over the limit";
+		}
+	}
+}
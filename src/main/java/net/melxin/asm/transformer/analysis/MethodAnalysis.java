@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.analysis;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Control flow graph of a method.
+ * <p>
+ * The instructions are split into basic blocks, with the normal and exceptional
+ * successors and the predecessors of each block as block indices. A block ends at
+ * a jump, switch, return, throw or RET, and before a jump target, an exception
+ * handler or a try catch range boundary, so a block is either inside or outside
+ * of each try catch range. JSR jumps to the subroutine, and RET may return to
+ * the instruction after any JSR.
+ * <p>
+ * The analysis is a snapshot of the method, it is not updated when the method changes.
+ */
+public class MethodAnalysis
+{
+	private static final int[] NONE = new int[0];
+
+	@Getter(AccessLevel.PUBLIC)
+	private final String owner;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final MethodNode method;
+
+	// Instruction nodes by index, at the time of the analysis
+	private final AbstractInsnNode[] instructions;
+
+	// First instruction of each block, and one past the last block
+	private final int[] blockStarts;
+
+	// Block of each instruction
+	private final int[] blockOf;
+
+	private final int[][] successors;
+	private final int[][] exceptionSuccessors;
+	private final int[][] predecessors;
+
+	// Frames are computed on demand
+	private Frame<BasicValue>[] frames;
+	private AnalyzerException framesFailure;
+
+	/**
+	 * Constructor
+	 *
+	 * @param owner, the internal name of the class declaring the method
+	 * @param method
+	 */
+	public MethodAnalysis(String owner, MethodNode method)
+	{
+		this.owner = owner;
+		this.method = method;
+		this.instructions = method.instructions.toArray();
+
+		final int count = this.instructions.length;
+		final boolean[] leaders = new boolean[count + 1];
+		leaders[0] = true;
+		leaders[count] = true;
+		boolean hasRet = false;
+		int maxTargets = Math.max(count, method.tryCatchBlocks.size());
+		for (int i = 0; i < count; i++)
+		{
+			final AbstractInsnNode insn = this.instructions[i];
+			switch (insn.getType())
+			{
+				case AbstractInsnNode.JUMP_INSN:
+					leaders[indexOf(((JumpInsnNode) insn).label)] = true;
+					leaders[i + 1] = true;
+					break;
+				case AbstractInsnNode.TABLESWITCH_INSN:
+				case AbstractInsnNode.LOOKUPSWITCH_INSN:
+					final LabelNode[] labels = switchLabels(insn);
+					for (LabelNode label : labels)
+					{
+						leaders[indexOf(label)] = true;
+					}
+					maxTargets = Math.max(maxTargets, labels.length);
+					leaders[i + 1] = true;
+					break;
+				default:
+					if (isExit(insn.getOpcode()))
+					{
+						hasRet |= insn.getOpcode() == Opcodes.RET;
+						leaders[i + 1] = true;
+					}
+			}
+		}
+		for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks)
+		{
+			leaders[indexOf(tryCatchBlock.start)] = true;
+			leaders[indexOf(tryCatchBlock.end)] = true;
+			leaders[indexOf(tryCatchBlock.handler)] = true;
+		}
+
+		// Number the blocks
+		int blockCount = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (leaders[i])
+			{
+				blockCount++;
+			}
+		}
+		this.blockStarts = new int[blockCount + 1];
+		this.blockOf = new int[count];
+		for (int i = 0, block = -1; i < count; i++)
+		{
+			if (leaders[i])
+			{
+				blockStarts[++block] = i;
+			}
+			blockOf[i] = block;
+		}
+		blockStarts[blockCount] = count;
+
+		// Return sites of subroutines, only needed when the method has a RET
+		final int[] returnSites = hasRet ? returnSites() : NONE;
+
+		this.successors = new int[blockCount][];
+		this.exceptionSuccessors = new int[blockCount][];
+		final int[] targets = new int[maxTargets];
+		for (int block = 0; block < blockCount; block++)
+		{
+			final int last = blockStarts[block + 1] - 1;
+			successors[block] = distinct(targets, normalTargets(last, targets, returnSites));
+
+			int handlers = 0;
+			for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks)
+			{
+				final int start = indexOf(tryCatchBlock.start);
+				final int end = indexOf(tryCatchBlock.end);
+				if (blockStarts[block] >= start && blockStarts[block] < end)
+				{
+					targets[handlers++] = blockOf[indexOf(tryCatchBlock.handler)];
+				}
+			}
+			exceptionSuccessors[block] = distinct(targets, handlers);
+		}
+
+		// Invert the edges
+		final int[] predecessorCounts = new int[blockCount];
+		for (int block = 0; block < blockCount; block++)
+		{
+			for (int successor : successors[block])
+			{
+				predecessorCounts[successor]++;
+			}
+			for (int successor : exceptionSuccessors[block])
+			{
+				if (Arrays.binarySearch(successors[block], successor) < 0)
+				{
+					predecessorCounts[successor]++;
+				}
+			}
+		}
+		this.predecessors = new int[blockCount][];
+		for (int block = 0; block < blockCount; block++)
+		{
+			predecessors[block] = predecessorCounts[block] == 0 ? NONE : new int[predecessorCounts[block]];
+			predecessorCounts[block] = 0;
+		}
+		for (int block = 0; block < blockCount; block++)
+		{
+			for (int successor : successors[block])
+			{
+				predecessors[successor][predecessorCounts[successor]++] = block;
+			}
+			for (int successor : exceptionSuccessors[block])
+			{
+				if (Arrays.binarySearch(successors[block], successor) < 0)
+				{
+					predecessors[successor][predecessorCounts[successor]++] = block;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collect the instructions control may pass to after the last instruction of a block
+	 *
+	 * @return the number of targets written to the array
+	 */
+	private int normalTargets(int last, int[] targets, int[] returnSites)
+	{
+		final AbstractInsnNode insn = instructions[last];
+		final int opcode = insn.getOpcode();
+		int count = 0;
+		switch (insn.getType())
+		{
+			case AbstractInsnNode.JUMP_INSN:
+				targets[count++] = blockOf[indexOf(((JumpInsnNode) insn).label)];
+				if (opcode != Opcodes.GOTO && opcode != Opcodes.JSR && last + 1 < instructions.length)
+				{
+					targets[count++] = blockOf[last + 1];
+				}
+				return count;
+			case AbstractInsnNode.TABLESWITCH_INSN:
+			case AbstractInsnNode.LOOKUPSWITCH_INSN:
+				for (LabelNode label : switchLabels(insn))
+				{
+					targets[count++] = blockOf[indexOf(label)];
+				}
+				return count;
+			default:
+				if (opcode == Opcodes.RET)
+				{
+					for (int returnSite : returnSites)
+					{
+						targets[count++] = blockOf[returnSite];
+					}
+					return count;
+				}
+				if (!isExit(opcode) && last + 1 < instructions.length)
+				{
+					targets[count++] = blockOf[last + 1];
+				}
+				return count;
+		}
+	}
+
+	private int[] returnSites()
+	{
+		int count = 0;
+		final int[] sites = new int[instructions.length];
+		for (int i = 0; i + 1 < instructions.length; i++)
+		{
+			if (instructions[i].getOpcode() == Opcodes.JSR)
+			{
+				sites[count++] = i + 1;
+			}
+		}
+		return Arrays.copyOf(sites, count);
+	}
+
+	private static LabelNode[] switchLabels(AbstractInsnNode insn)
+	{
+		final LabelNode dflt;
+		final List<LabelNode> labels;
+		if (insn instanceof TableSwitchInsnNode)
+		{
+			dflt = ((TableSwitchInsnNode) insn).dflt;
+			labels = ((TableSwitchInsnNode) insn).labels;
+		}
+		else
+		{
+			dflt = ((LookupSwitchInsnNode) insn).dflt;
+			labels = ((LookupSwitchInsnNode) insn).labels;
+		}
+		final LabelNode[] all = labels.toArray(new LabelNode[labels.size() + 1]);
+		all[labels.size()] = dflt;
+		return all;
+	}
+
+	/**
+	 * @return true for instructions after which control never falls through
+	 */
+	static boolean isExit(int opcode)
+	{
+		return opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN || opcode == Opcodes.ATHROW || opcode == Opcodes.RET
+			|| opcode == Opcodes.GOTO || opcode == Opcodes.JSR;
+	}
+
+	/**
+	 * @return the first values of the array, sorted and without duplicates
+	 */
+	private static int[] distinct(int[] values, int count)
+	{
+		if (count == 0)
+		{
+			return NONE;
+		}
+		final int[] result = Arrays.copyOf(values, count);
+		Arrays.sort(result);
+		int size = 1;
+		for (int i = 1; i < count; i++)
+		{
+			if (result[i] != result[size - 1])
+			{
+				result[size++] = result[i];
+			}
+		}
+		return size == count ? result : Arrays.copyOf(result, size);
+	}
+
+	private int indexOf(AbstractInsnNode insn)
+	{
+		return method.instructions.indexOf(insn);
+	}
+
+	/**
+	 * @return the instruction nodes by index, at the time of the analysis
+	 */
+	public AbstractInsnNode[] getInstructions()
+	{
+		return instructions;
+	}
+
+	public int getInstructionCount()
+	{
+		return instructions.length;
+	}
+
+	public int getBlockCount()
+	{
+		return successors.length;
+	}
+
+	/**
+	 * @return the index of the first instruction of the block
+	 */
+	public int getBlockStart(int block)
+	{
+		return blockStarts[block];
+	}
+
+	/**
+	 * @return the index after the last instruction of the block
+	 */
+	public int getBlockEnd(int block)
+	{
+		return blockStarts[block + 1];
+	}
+
+	/**
+	 * @return the block of the instruction at the index
+	 */
+	public int getBlock(int instruction)
+	{
+		return blockOf[instruction];
+	}
+
+	/**
+	 * @return the blocks reached by jumps, switches, RET or falling through, sorted
+	 */
+	public int[] getSuccessors(int block)
+	{
+		return successors[block];
+	}
+
+	/**
+	 * @return the exception handler blocks of the try catch ranges covering the block, sorted
+	 */
+	public int[] getExceptionSuccessors(int block)
+	{
+		return exceptionSuccessors[block];
+	}
+
+	/**
+	 * @return the blocks with a normal or exceptional edge to the block
+	 */
+	public int[] getPredecessors(int block)
+	{
+		return predecessors[block];
+	}
+
+	/**
+	 * Get the frames computed with a {@link BasicInterpreter}, they are kept with the analysis
+	 *
+	 * @return the frame before each instruction, null for unreachable instructions
+	 * @throws AnalyzerException if the method does not pass the analysis
+	 */
+	public Frame<BasicValue>[] getFrames() throws AnalyzerException
+	{
+		return getFrames(AnalysisBudget.UNLIMITED);
+	}
+
+	/**
+	 * Get the frames computed with a {@link BasicInterpreter} within a budget. An analysis
+	 * that hits a limit is not kept, a later call with a larger budget may succeed.
+	 *
+	 * @param budget
+	 * @return the frame before each instruction, null for unreachable instructions
+	 * @throws AnalyzerException if the method does not pass the analysis, or
+	 * {@link AnalysisBudgetExceededException} if a limit is hit
+	 */
+	public Frame<BasicValue>[] getFrames(AnalysisBudget budget) throws AnalyzerException
+	{
+		if (framesFailure != null)
+		{
+			throw framesFailure;
+		}
+
+		if (frames == null)
+		{
+			try
+			{
+				frames = budget.newAnalyzer(new BasicInterpreter()).analyze(owner, method);
+			}
+			catch (AnalysisBudgetExceededException e)
+			{
+				throw e;
+			}
+			catch (AnalyzerException e)
+			{
+				framesFailure = e;
+				throw e;
+			}
+		}
+		return frames;
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.analysis;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import java.util.List;
+
+/**
+ * Finds the instructions reachable from the start of a method by following jumps,
+ * switches, fall through and exception handlers, without simulating the operand
+ * stack. The work is done in a few primitive arrays per method, no object is
+ * allocated per instruction.
+ * <p>
+ * For methods that pass verification the result is the same as the instructions
+ * with a frame from {@link org.objectweb.asm.tree.analysis.Analyzer}. Subroutines
+ * are not supported, methods with JSR or RET need the Analyzer.
+ */
+public class Reachability
+{
+	private Reachability()
+	{
+	}
+
+	/**
+	 * Find the reachable instructions of a method
+	 *
+	 * @param method
+	 * @return whether each instruction is reachable, by index, or null if the method has a JSR or RET
+	 * @throws AnalyzerException if execution can fall off the end of the code, as the Analyzer reports
+	 */
+	public static boolean[] compute(MethodNode method) throws AnalyzerException
+	{
+		return compute(method, AnalysisBudget.UNLIMITED);
+	}
+
+	/**
+	 * Find the reachable instructions of a method within a budget. Every instruction
+	 * taken off the worklist is an iteration, and so is every instruction and try catch
+	 * block scanned for new handlers.
+	 *
+	 * @param method
+	 * @param budget
+	 * @return whether each instruction is reachable, by index, or null if the method has a JSR or RET
+	 * @throws AnalyzerException if execution can fall off the end of the code, or
+	 * {@link AnalysisBudgetExceededException} if a limit is hit
+	 */
+	public static boolean[] compute(MethodNode method, AnalysisBudget budget) throws AnalyzerException
+	{
+		final InsnList instructions = method.instructions;
+		final int count = instructions.size();
+		final long startNanos = budget.start(count);
+		final boolean[] reached = new boolean[count];
+		if (count == 0)
+		{
+			return reached;
+		}
+		final boolean limited = !budget.isUnlimited();
+		long iterations = 0;
+
+		final int[] worklist = new int[count];
+		int size = 0;
+		reached[0] = true;
+		worklist[size++] = 0;
+
+		final List<TryCatchBlockNode> tryCatchBlocks = method.tryCatchBlocks;
+		final int handlerCount = tryCatchBlocks != null ? tryCatchBlocks.size() : 0;
+		final boolean[] handled = new boolean[handlerCount];
+		int[] reachedBefore = null;
+
+		while (true)
+		{
+			// Follow the normal control flow
+			while (size > 0)
+			{
+				final int index = worklist[--size];
+				if (limited && (++iterations & 0xFF) == 0)
+				{
+					budget.check(iterations, startNanos);
+				}
+				final AbstractInsnNode insn = instructions.get(index);
+				final int opcode = insn.getOpcode();
+				switch (insn.getType())
+				{
+					case AbstractInsnNode.JUMP_INSN:
+						if (opcode == Opcodes.JSR)
+						{
+							return null;
+						}
+						size = push(instructions.indexOf(((JumpInsnNode) insn).label), reached, worklist, size);
+						if (opcode != Opcodes.GOTO)
+						{
+							size = pushNext(index, count, reached, worklist, size);
+						}
+						break;
+					case AbstractInsnNode.TABLESWITCH_INSN:
+						final TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) insn;
+						size = push(instructions.indexOf(tableSwitch.dflt), reached, worklist, size);
+						for (LabelNode label : tableSwitch.labels)
+						{
+							size = push(instructions.indexOf(label), reached, worklist, size);
+						}
+						break;
+					case AbstractInsnNode.LOOKUPSWITCH_INSN:
+						final LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) insn;
+						size = push(instructions.indexOf(lookupSwitch.dflt), reached, worklist, size);
+						for (LabelNode label : lookupSwitch.labels)
+						{
+							size = push(instructions.indexOf(label), reached, worklist, size);
+						}
+						break;
+					default:
+						if (opcode == Opcodes.RET)
+						{
+							return null;
+						}
+						if (opcode < Opcodes.IRETURN || opcode > Opcodes.RETURN && opcode != Opcodes.ATHROW)
+						{
+							size = pushNext(index, count, reached, worklist, size);
+						}
+				}
+			}
+
+			// Reach the handlers of try catch ranges holding a reached instruction, until no new handler is reached
+			if (handlerCount == 0)
+			{
+				return reached;
+			}
+			if (limited)
+			{
+				iterations += count + handlerCount;
+				budget.check(iterations, startNanos);
+			}
+			if (reachedBefore == null)
+			{
+				reachedBefore = new int[count + 1];
+			}
+			for (int i = 0; i < count; i++)
+			{
+				reachedBefore[i + 1] = reachedBefore[i] + (reached[i] ? 1 : 0);
+			}
+			for (int i = 0; i < handlerCount; i++)
+			{
+				if (!handled[i])
+				{
+					final TryCatchBlockNode tryCatchBlock = tryCatchBlocks.get(i);
+					final int start = instructions.indexOf(tryCatchBlock.start);
+					final int end = instructions.indexOf(tryCatchBlock.end);
+					if (start < end && reachedBefore[end] > reachedBefore[start])
+					{
+						handled[i] = true;
+						size = push(instructions.indexOf(tryCatchBlock.handler), reached, worklist, size);
+					}
+				}
+			}
+			if (size == 0)
+			{
+				return reached;
+			}
+		}
+	}
+
+	private static int push(int index, boolean[] reached, int[] worklist, int size)
+	{
+		if (!reached[index])
+		{
+			reached[index] = true;
+			worklist[size++] = index;
+		}
+		return size;
+	}
+
+	private static int pushNext(int index, int count, boolean[] reached, int[] worklist, int size) throws AnalyzerException
+	{
+		if (index + 1 >= count)
+		{
+			throw new AnalyzerException(null, "Execution can fall off the end of the code");
+		}
+		return push(index + 1, reached, worklist, size);
+	}
+}
@@ -0,0 +1,1806 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.analysis;
+
+import net.melxin.asm.transformer.ClassHierarchy;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data flow analyzer with verification types packed in ints.
+ * <p>
+ * Frames are only kept at the start of basic blocks, in flat int arrays that are
+ * reused from one method to the next, and the instructions of a block are run on
+ * a single working frame. Long and double values take two slots, the second one
+ * is TOP, on the stack as in the locals.
+ * <p>
+ * {@link #verify(String, MethodNode)} checks a method like the
+ * {@link org.objectweb.asm.tree.analysis.BasicVerifier}: value kinds, stack heights,
+ * max stack and locals. {@link #computeFrames(String, MethodNode)} adds compressed
+ * StackMapTable frames and sets max stack and locals, merging references with the
+ * class hierarchy. Compressed frames can only be written for Java 6 and later.
+ * Methods with JSR or RET are not supported, and neither is unreachable code that
+ * needs a frame. An {@link AnalysisBudget} bounds the work done on each method.
+ * <p>
+ * An analyzer must not be used by two threads at once.
+ */
+public class TypedFrameAnalyzer
+{
+	// | dimensions (8 bits) | kind (4 bits) | value (20 bits) |
+	private static final int DIM_SHIFT = 24;
+	private static final int DIM_ONE = 1 << DIM_SHIFT;
+	private static final int DIM_MASK = 0xFF << DIM_SHIFT;
+	private static final int KIND_SHIFT = 20;
+	private static final int KIND_MASK = 0xF << KIND_SHIFT;
+	private static final int VALUE_MASK = (1 << KIND_SHIFT) - 1;
+
+	// Kinds, constants are primitives and special types, references index the type names
+	private static final int CONSTANT = 0;
+	private static final int REFERENCE = 1 << KIND_SHIFT;
+	private static final int UNINITIALIZED = 2 << KIND_SHIFT;
+
+	// Return type of void methods, never a value
+	private static final int VOID = 3 << KIND_SHIFT;
+
+	private static final int TOP = CONSTANT;
+	private static final int INTEGER = CONSTANT | 1;
+	private static final int FLOAT = CONSTANT | 2;
+	private static final int LONG = CONSTANT | 3;
+	private static final int DOUBLE = CONSTANT | 4;
+	private static final int NULL = CONSTANT | 5;
+	private static final int UNINITIALIZED_THIS = CONSTANT | 6;
+
+	// Array element types only
+	private static final int BOOLEAN = CONSTANT | 7;
+	private static final int BYTE = CONSTANT | 8;
+	private static final int CHAR = CONSTANT | 9;
+	private static final int SHORT = CONSTANT | 10;
+
+	// Interned types are dropped when there are more, to bound the tables of a long lived analyzer
+	private static final int MAX_TYPES = 1 << 16;
+
+	private static final String OBJECT = "java/lang/Object";
+	private static final String THROWABLE = "java/lang/Throwable";
+
+	// Resolves common super classes when computing frames, may be null
+	private final ClassHierarchy hierarchy;
+
+	// Limits of the analysis of one method, the instructions run are the iterations
+	private final AnalysisBudget budget;
+	private long iterations;
+	private long startNanos;
+
+	// Reference type names, indexed by the value of reference types, kept from one method to the next
+	private final List<String> typeNames = new ArrayList<>();
+	private final Map<String, Integer> typeIds = new HashMap<>();
+
+	// Parsed field descriptors, and method descriptors as the argument types followed by the return type
+	private final Map<String, Integer> descriptorTypes = new HashMap<>();
+	private final Map<String, int[]> methodTypes = new HashMap<>();
+
+	// Method under analysis
+	private String owner;
+	private MethodNode method;
+	private AbstractInsnNode[] instructions = new AbstractInsnNode[64];
+	private int instructionCount;
+	private boolean computing;
+	private int maxLocals;
+	private int maxStack;
+	private int stackHigh;
+
+	// Blocks, reused from one method to the next
+	private int blockCount;
+	private int[] blockStarts = new int[16];
+	private int[] blockOf = new int[64];
+	private boolean[] frameNeeded = new boolean[16];
+	private boolean[] leaders = new boolean[64];
+	private boolean[] targets = new boolean[64];
+	private int[] entryLocals = new int[64];
+	private int[] entryStacks = new int[64];
+	private int[] entrySizes = new int[16];
+	private int[] worklist = new int[16];
+	private boolean[] queued = new boolean[16];
+
+	// Try catch blocks as instruction indices, and the handlers covering each block
+	private int[] handlerStarts = new int[4];
+	private int[] handlerEnds = new int[4];
+	private int[] handlerBlocks = new int[4];
+	private int[] handlerTypes = new int[4];
+
+	// Working frame
+	private int[] locals = new int[16];
+	private int[] stack = new int[16];
+	private int top;
+
+	/**
+	 * Constructor
+	 *
+	 * @param hierarchy, resolves the common super class of merged references, may be null
+	 */
+	public TypedFrameAnalyzer(ClassHierarchy hierarchy)
+	{
+		this(hierarchy, AnalysisBudget.UNLIMITED);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param hierarchy, resolves the common super class of merged references, may be null
+	 * @param budget, the limits of the analysis of each method
+	 */
+	public TypedFrameAnalyzer(ClassHierarchy hierarchy, AnalysisBudget budget)
+	{
+		this.hierarchy = hierarchy;
+		this.budget = budget;
+	}
+
+	/**
+	 * Compute the frames of every method of a class
+	 *
+	 * @param classNode
+	 * @return true if every method got its frames, false if a method needs the ClassWriter to compute them
+	 * or the class is older than Java 6. Methods over the budget are recorded with it.
+	 */
+	public boolean computeFrames(ClassNode classNode)
+	{
+		if ((classNode.version & 0xFFFF) < Opcodes.V1_6)
+		{
+			return false;
+		}
+		for (MethodNode method : classNode.methods)
+		{
+			try
+			{
+				if (!computeFrames(classNode.name, method))
+				{
+					return false;
+				}
+			}
+			catch (AnalysisBudgetExceededException e)
+			{
+				budget.record("TypedFrameAnalyzer", classNode.name, method, e, "ClassWriter frames");
+				return false;
+			}
+			catch (AnalyzerException e)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Verify a method, within its max stack and locals
+	 *
+	 * @param owner, the internal name of the class declaring the method
+	 * @param method
+	 * @return true if the method verifies, false if it has a JSR or RET
+	 * @throws AnalyzerException if the method does not verify, or
+	 * {@link AnalysisBudgetExceededException} if a limit of the budget is hit
+	 */
+	public boolean verify(String owner, MethodNode method) throws AnalyzerException
+	{
+		if (method.instructions.size() == 0)
+		{
+			if ((method.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0)
+			{
+				throw new AnalyzerException(null, "Execution can fall off the end of the code");
+			}
+			return true;
+		}
+		startNanos = budget.start(method.instructions.size());
+		iterations = 0;
+		return analyze(owner, method, false, method.maxLocals, method.maxStack);
+	}
+
+	/**
+	 * Replace the frames of a method and set its max stack and locals. The method is
+	 * only changed if the analysis succeeds.
+	 *
+	 * @param owner, the internal name of the class declaring the method
+	 * @param method
+	 * @return true if the frames were computed, false if the method has a JSR or RET
+	 * @throws AnalyzerException if the method does not verify, or has unreachable code that needs a frame,
+	 * or {@link AnalysisBudgetExceededException} if a limit of the budget is hit
+	 */
+	public boolean computeFrames(String owner, MethodNode method) throws AnalyzerException
+	{
+		if (method.instructions.size() == 0)
+		{
+			return true;
+		}
+
+		startNanos = budget.start(method.instructions.size());
+		iterations = 0;
+		int stackLimit = Math.max(8, method.maxStack);
+		while (true)
+		{
+			try
+			{
+				if (!analyze(owner, method, true, countLocals(method), stackLimit))
+				{
+					return false;
+				}
+				break;
+			}
+			catch (StackOverflow e)
+			{
+				stackLimit *= 2;
+			}
+		}
+
+		// Every frame must describe reachable code
+		for (int block = 0; block < blockCount; block++)
+		{
+			if (frameNeeded[block])
+			{
+				final int target = frameBlock(block);
+				if (target >= 0 && entrySizes[target] < 0)
+				{
+					throw new AnalyzerException(instructions[blockStarts[target]], "Unreachable code needs a frame");
+				}
+			}
+		}
+
+		final InsnList list = method.instructions;
+		for (int i = 0; i < instructionCount; i++)
+		{
+			if (instructions[i].getType() == AbstractInsnNode.FRAME)
+			{
+				list.remove(instructions[i]);
+			}
+		}
+		// Frames are compressed against the previous one, the first against the locals of the descriptor
+		final Map<Integer, LabelNode> newLabels = new HashMap<>();
+		initLocals();
+		Object[] previousLocals = toFrameElements(locals, 0, maxLocals, true, newLabels);
+		int previousBlock = -1;
+		for (int block = 0; block < blockCount; block++)
+		{
+			if (!frameNeeded[block])
+			{
+				continue;
+			}
+
+			final int target = frameBlock(block);
+			if (target < 0 || target == previousBlock)
+			{
+				continue;
+			}
+			previousBlock = target;
+			final Object[] frameLocals = toFrameElements(entryLocals, target * maxLocals, maxLocals, true, newLabels);
+			final Object[] frameStack = toFrameElements(entryStacks, target * maxStack, entrySizes[target], false, newLabels);
+			list.insertBefore(firstCode(target), toFrameNode(frameLocals, frameStack, previousLocals));
+			previousLocals = frameLocals;
+		}
+		method.maxLocals = maxLocals;
+		method.maxStack = stackHigh;
+		return true;
+	}
+
+	/**
+	 * Frames belong to the next real instruction, blocks of labels only share it
+	 *
+	 * @return the first block with code from the given one, or -1 if there is none
+	 */
+	private int frameBlock(int block)
+	{
+		for (int target = block; target < blockCount; target++)
+		{
+			if (firstCode(target) != null)
+			{
+				return target;
+			}
+		}
+		return -1;
+	}
+
+	private AbstractInsnNode firstCode(int block)
+	{
+		for (int i = blockStarts[block]; i < blockStarts[block + 1]; i++)
+		{
+			if (instructions[i].getOpcode() >= 0)
+			{
+				return instructions[i];
+			}
+		}
+		return null;
+	}
+
+	private static int countLocals(MethodNode method)
+	{
+		int count = Type.getArgumentsAndReturnSizes(method.desc) >> 2;
+		if ((method.access & Opcodes.ACC_STATIC) != 0)
+		{
+			count--;
+		}
+		for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext())
+		{
+			if (insn instanceof VarInsnNode)
+			{
+				final int opcode = insn.getOpcode();
+				final int size = opcode == Opcodes.LLOAD || opcode == Opcodes.DLOAD || opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE ? 2 : 1;
+				count = Math.max(count, ((VarInsnNode) insn).var + size);
+			}
+			else if (insn instanceof IincInsnNode)
+			{
+				count = Math.max(count, ((IincInsnNode) insn).var + 1);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Run the data flow to a fixed point, leaving the entry frame of every reached block
+	 *
+	 * @return false if the method has a JSR or RET
+	 */
+	private boolean analyze(String owner, MethodNode method, boolean computing, int maxLocals, int maxStack) throws AnalyzerException
+	{
+		this.owner = owner;
+		this.method = method;
+		final InsnList list = method.instructions;
+		this.instructionCount = list.size();
+		if (instructions.length < instructionCount)
+		{
+			instructions = new AbstractInsnNode[Math.max(instructionCount, instructions.length * 2)];
+		}
+		int index = 0;
+		for (AbstractInsnNode insn = list.getFirst(); insn != null; insn = insn.getNext())
+		{
+			instructions[index++] = insn;
+		}
+		this.computing = computing;
+		this.maxLocals = maxLocals;
+		this.maxStack = maxStack;
+		this.stackHigh = 0;
+		if (typeNames.size() > MAX_TYPES)
+		{
+			typeNames.clear();
+			typeIds.clear();
+			descriptorTypes.clear();
+			methodTypes.clear();
+		}
+
+		if (!findBlocks())
+		{
+			return false;
+		}
+		final int blockCount = this.blockCount;
+		locals = ensure(locals, maxLocals);
+		stack = ensure(stack, maxStack);
+		entryLocals = ensure(entryLocals, blockCount * maxLocals);
+		entryStacks = ensure(entryStacks, blockCount * maxStack);
+		entrySizes = ensure(entrySizes, blockCount);
+		worklist = ensure(worklist, blockCount);
+		queued = ensure(queued, blockCount);
+		Arrays.fill(entrySizes, 0, blockCount, -1);
+		Arrays.fill(queued, 0, blockCount, false);
+
+		initLocals();
+		top = 0;
+		merge(null, 0);
+		int size = 1;
+		worklist[0] = 0;
+		queued[0] = true;
+
+		final boolean limited = !budget.isUnlimited();
+		while (size > 0)
+		{
+			final int block = worklist[--size];
+			queued[block] = false;
+			System.arraycopy(entryLocals, block * maxLocals, locals, 0, maxLocals);
+			System.arraycopy(entryStacks, block * maxStack, stack, 0, entrySizes[block]);
+			top = entrySizes[block];
+
+			final int start = blockStarts[block];
+			final int end = blockStarts[block + 1];
+			if (limited)
+			{
+				iterations += end - start;
+				budget.check(iterations, startNanos);
+			}
+			size = mergeHandlers(block, size);
+			for (int i = start; i < end; i++)
+			{
+				final AbstractInsnNode insn = instructions[i];
+				final int opcode = insn.getOpcode();
+				if (opcode < 0)
+				{
+					continue;
+				}
+				if (execute(insn, i) && i + 1 < end)
+				{
+					// The handlers see the locals before every instruction of the range
+					size = mergeHandlers(block, size);
+				}
+			}
+
+			// Successors of the last instruction
+			final AbstractInsnNode last = instructions[end - 1];
+			switch (last.getType())
+			{
+				case AbstractInsnNode.JUMP_INSN:
+					size = mergeInto(last, blockOf[indexOf(((JumpInsnNode) last).label)], size);
+					if (last.getOpcode() != Opcodes.GOTO)
+					{
+						size = fallThrough(last, end, size);
+					}
+					break;
+				case AbstractInsnNode.TABLESWITCH_INSN:
+					final TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) last;
+					size = mergeInto(last, blockOf[indexOf(tableSwitch.dflt)], size);
+					for (LabelNode label : tableSwitch.labels)
+					{
+						size = mergeInto(last, blockOf[indexOf(label)], size);
+					}
+					break;
+				case AbstractInsnNode.LOOKUPSWITCH_INSN:
+					final LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) last;
+					size = mergeInto(last, blockOf[indexOf(lookupSwitch.dflt)], size);
+					for (LabelNode label : lookupSwitch.labels)
+					{
+						size = mergeInto(last, blockOf[indexOf(label)], size);
+					}
+					break;
+				default:
+					final int opcode = last.getOpcode();
+					if (opcode < Opcodes.IRETURN || opcode > Opcodes.RETURN && opcode != Opcodes.ATHROW)
+					{
+						size = fallThrough(last, end, size);
+					}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Set the working locals to the entry frame, from the descriptor
+	 */
+	private void initLocals() throws AnalyzerException
+	{
+		Arrays.fill(locals, 0, maxLocals, TOP);
+		int local = 0;
+		if ((method.access & Opcodes.ACC_STATIC) == 0)
+		{
+			checkLocal(null, local, 1);
+			locals[local++] = "<init>".equals(method.name) && !OBJECT.equals(owner) ? UNINITIALIZED_THIS : reference(owner);
+		}
+		final int[] signature = methodTypes(method.desc);
+		for (int i = 0; i < signature.length - 1; i++)
+		{
+			checkLocal(null, local, isWide(signature[i]) ? 2 : 1);
+			local = setLocal(local, signature[i]);
+		}
+	}
+
+	private int fallThrough(AbstractInsnNode insn, int end, int size) throws AnalyzerException
+	{
+		if (end >= instructionCount)
+		{
+			throw new AnalyzerException(insn, "Execution can fall off the end of the code");
+		}
+		return mergeInto(insn, blockOf[end], size);
+	}
+
+	private int indexOf(AbstractInsnNode insn)
+	{
+		return method.instructions.indexOf(insn);
+	}
+
+	/**
+	 * Split the instructions into blocks that start at jump targets, handlers, try catch
+	 * range boundaries and after control transfers, and index the try catch blocks
+	 *
+	 * @return false if the method has a JSR or RET
+	 */
+	private boolean findBlocks()
+	{
+		final int count = instructionCount;
+		final boolean[] leaders = this.leaders = ensure(this.leaders, count + 1);
+		final boolean[] targets = this.targets = ensure(this.targets, count + 1);
+		Arrays.fill(leaders, 0, count + 1, false);
+		Arrays.fill(targets, 0, count + 1, false);
+		leaders[0] = true;
+		for (int i = 0; i < count; i++)
+		{
+			final AbstractInsnNode insn = instructions[i];
+			switch (insn.getType())
+			{
+				case AbstractInsnNode.JUMP_INSN:
+					if (insn.getOpcode() == Opcodes.JSR)
+					{
+						return false;
+					}
+					targets[indexOf(((JumpInsnNode) insn).label)] = true;
+					leaders[i + 1] = true;
+					if (insn.getOpcode() == Opcodes.GOTO)
+					{
+						targets[i + 1] = true;
+					}
+					break;
+				case AbstractInsnNode.TABLESWITCH_INSN:
+					targets[indexOf(((TableSwitchInsnNode) insn).dflt)] = true;
+					((TableSwitchInsnNode) insn).labels.forEach(label -> targets[indexOf(label)] = true);
+					leaders[i + 1] = true;
+					targets[i + 1] = true;
+					break;
+				case AbstractInsnNode.LOOKUPSWITCH_INSN:
+					targets[indexOf(((LookupSwitchInsnNode) insn).dflt)] = true;
+					((LookupSwitchInsnNode) insn).labels.forEach(label -> targets[indexOf(label)] = true);
+					leaders[i + 1] = true;
+					targets[i + 1] = true;
+					break;
+				default:
+					final int opcode = insn.getOpcode();
+					if (opcode == Opcodes.RET)
+					{
+						return false;
+					}
+					if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN || opcode == Opcodes.ATHROW)
+					{
+						leaders[i + 1] = true;
+						targets[i + 1] = true;
+					}
+			}
+		}
+
+		final List<TryCatchBlockNode> tryCatchBlocks = method.tryCatchBlocks;
+		final int handlerCount = tryCatchBlocks != null ? tryCatchBlocks.size() : 0;
+		handlerStarts = ensure(handlerStarts, handlerCount);
+		handlerEnds = ensure(handlerEnds, handlerCount);
+		handlerBlocks = ensure(handlerBlocks, handlerCount);
+		handlerTypes = ensure(handlerTypes, handlerCount);
+		for (int i = 0; i < handlerCount; i++)
+		{
+			final TryCatchBlockNode tryCatchBlock = tryCatchBlocks.get(i);
+			handlerStarts[i] = indexOf(tryCatchBlock.start);
+			handlerEnds[i] = indexOf(tryCatchBlock.end);
+			final int handler = indexOf(tryCatchBlock.handler);
+			leaders[handlerStarts[i]] = true;
+			leaders[handlerEnds[i]] = true;
+			leaders[handler] = true;
+			targets[handler] = true;
+			handlerBlocks[i] = handler;
+			handlerTypes[i] = tryCatchBlock.type != null ? reference(tryCatchBlock.type) : reference(THROWABLE);
+		}
+		for (int i = 0; i < count; i++)
+		{
+			leaders[i] |= targets[i];
+		}
+
+		int blocks = 0;
+		for (int i = 0; i < count; i++)
+		{
+			if (leaders[i])
+			{
+				blocks++;
+			}
+		}
+		blockCount = blocks;
+		blockStarts = ensure(blockStarts, blocks + 1);
+		blockOf = ensure(blockOf, count);
+		frameNeeded = ensure(frameNeeded, blocks);
+		for (int i = 0, block = -1; i < count; i++)
+		{
+			if (leaders[i])
+			{
+				blockStarts[++block] = i;
+				frameNeeded[block] = targets[i];
+			}
+			blockOf[i] = block;
+		}
+		blockStarts[blocks] = count;
+		for (int i = 0; i < handlerCount; i++)
+		{
+			handlerBlocks[i] = blockOf[handlerBlocks[i]];
+		}
+		return true;
+	}
+
+	/**
+	 * Merge the working locals, with the exception on the stack, into the handlers covering the block
+	 */
+	private int mergeHandlers(int block, int size) throws AnalyzerException
+	{
+		final List<TryCatchBlockNode> tryCatchBlocks = method.tryCatchBlocks;
+		final int handlerCount = tryCatchBlocks != null ? tryCatchBlocks.size() : 0;
+		if (handlerCount == 0)
+		{
+			return size;
+		}
+
+		final int start = blockStarts[block];
+		final int savedTop = top;
+		final int savedValue = stack[0];
+		for (int i = 0; i < handlerCount; i++)
+		{
+			if (start >= handlerStarts[i] && start < handlerEnds[i])
+			{
+				top = 1;
+				stack[0] = handlerTypes[i];
+				size = mergeInto(instructions[start], handlerBlocks[i], size);
+			}
+		}
+		top = savedTop;
+		stack[0] = savedValue;
+		return size;
+	}
+
+	private int mergeInto(AbstractInsnNode insn, int block, int size) throws AnalyzerException
+	{
+		if (merge(insn, block) && !queued[block])
+		{
+			queued[block] = true;
+			worklist[size++] = block;
+		}
+		return size;
+	}
+
+	/**
+	 * Merge the working frame into the entry frame of a block
+	 *
+	 * @return true if the entry frame changed
+	 */
+	private boolean merge(AbstractInsnNode insn, int block) throws AnalyzerException
+	{
+		final int localsOffset = block * maxLocals;
+		final int stackOffset = block * maxStack;
+		if (entrySizes[block] < 0)
+		{
+			System.arraycopy(locals, 0, entryLocals, localsOffset, maxLocals);
+			System.arraycopy(stack, 0, entryStacks, stackOffset, top);
+			entrySizes[block] = top;
+			return true;
+		}
+		if (entrySizes[block] != top)
+		{
+			throw new AnalyzerException(insn, "Incompatible stack heights");
+		}
+
+		boolean changed = false;
+		for (int i = 0; i < maxLocals; i++)
+		{
+			final int merged = mergeTypes(entryLocals[localsOffset + i], locals[i]);
+			if (merged != entryLocals[localsOffset + i])
+			{
+				entryLocals[localsOffset + i] = merged;
+				changed = true;
+			}
+		}
+		for (int i = 0; i < top; i++)
+		{
+			final int merged = mergeTypes(entryStacks[stackOffset + i], stack[i]);
+			if (merged != entryStacks[stackOffset + i])
+			{
+				entryStacks[stackOffset + i] = merged;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	private int mergeTypes(int type1, int type2)
+	{
+		if (type1 == type2)
+		{
+			return type1;
+		}
+		if (!isReference(type1) || !isReference(type2) || isUninitialized(type1) || isUninitialized(type2))
+		{
+			return TOP;
+		}
+		if (type1 == NULL)
+		{
+			return type2;
+		}
+		if (type2 == NULL)
+		{
+			return type1;
+		}
+		if (!computing)
+		{
+			// Only the kind is checked, any reference will do
+			return reference(OBJECT);
+		}
+
+		final int dimensions1 = type1 & DIM_MASK;
+		final int dimensions2 = type2 & DIM_MASK;
+		final boolean object1 = (type1 & KIND_MASK) == REFERENCE;
+		final boolean object2 = (type2 & KIND_MASK) == REFERENCE;
+		if (dimensions1 == dimensions2 && object1 && object2)
+		{
+			return dimensions1 | reference(commonSuperClass(typeNames.get(type1 & VALUE_MASK), typeNames.get(type2 & VALUE_MASK)));
+		}
+
+		// Arrays of different shapes merge to an array of objects of the common dimensions
+		final int objectDimensions1 = object1 ? dimensions1 : dimensions1 - DIM_ONE;
+		final int objectDimensions2 = object2 ? dimensions2 : dimensions2 - DIM_ONE;
+		return Math.min(objectDimensions1, objectDimensions2) | reference(OBJECT);
+	}
+
+	private String commonSuperClass(String type1, String type2)
+	{
+		if (hierarchy == null || OBJECT.equals(type1) || OBJECT.equals(type2))
+		{
+			return OBJECT;
+		}
+		final String commonSuperClass = hierarchy.getCommonSuperClass(type1, type2);
+		return commonSuperClass != null ? commonSuperClass : OBJECT;
+	}
+
+	/**
+	 * Run one instruction on the working frame
+	 *
+	 * @return true if the instruction changed the locals
+	 */
+	private boolean execute(AbstractInsnNode insn, int index) throws AnalyzerException
+	{
+		final int opcode = insn.getOpcode();
+		switch (opcode)
+		{
+			case Opcodes.NOP:
+				return false;
+			case Opcodes.ACONST_NULL:
+				push(insn, NULL);
+				return false;
+			case Opcodes.ICONST_M1:
+			case Opcodes.ICONST_0:
+			case Opcodes.ICONST_1:
+			case Opcodes.ICONST_2:
+			case Opcodes.ICONST_3:
+			case Opcodes.ICONST_4:
+			case Opcodes.ICONST_5:
+			case Opcodes.BIPUSH:
+			case Opcodes.SIPUSH:
+				push(insn, INTEGER);
+				return false;
+			case Opcodes.LCONST_0:
+			case Opcodes.LCONST_1:
+				push(insn, LONG);
+				return false;
+			case Opcodes.FCONST_0:
+			case Opcodes.FCONST_1:
+			case Opcodes.FCONST_2:
+				push(insn, FLOAT);
+				return false;
+			case Opcodes.DCONST_0:
+			case Opcodes.DCONST_1:
+				push(insn, DOUBLE);
+				return false;
+			case Opcodes.LDC:
+				push(insn, constantType(insn, ((LdcInsnNode) insn).cst));
+				return false;
+			case Opcodes.ILOAD:
+				push(insn, load(insn, INTEGER));
+				return false;
+			case Opcodes.LLOAD:
+				push(insn, load(insn, LONG));
+				return false;
+			case Opcodes.FLOAD:
+				push(insn, load(insn, FLOAT));
+				return false;
+			case Opcodes.DLOAD:
+				push(insn, load(insn, DOUBLE));
+				return false;
+			case Opcodes.ALOAD:
+			{
+				final int var = ((VarInsnNode) insn).var;
+				checkLocal(insn, var, 1);
+				final int type = locals[var];
+				if (!isReference(type))
+				{
+					throw new AnalyzerException(insn, "Expected a reference in local " + var);
+				}
+				push(insn, type);
+				return false;
+			}
+			case Opcodes.IALOAD:
+			case Opcodes.BALOAD:
+			case Opcodes.CALOAD:
+			case Opcodes.SALOAD:
+				pop(insn, INTEGER);
+				popArray(insn);
+				push(insn, INTEGER);
+				return false;
+			case Opcodes.LALOAD:
+				pop(insn, INTEGER);
+				popArray(insn);
+				push(insn, LONG);
+				return false;
+			case Opcodes.FALOAD:
+				pop(insn, INTEGER);
+				popArray(insn);
+				push(insn, FLOAT);
+				return false;
+			case Opcodes.DALOAD:
+				pop(insn, INTEGER);
+				popArray(insn);
+				push(insn, DOUBLE);
+				return false;
+			case Opcodes.AALOAD:
+			{
+				pop(insn, INTEGER);
+				final int array = popArray(insn);
+				push(insn, array == NULL ? NULL : computing ? elementType(array) : reference(OBJECT));
+				return false;
+			}
+			case Opcodes.ISTORE:
+				return store(insn, pop(insn, INTEGER));
+			case Opcodes.LSTORE:
+				return store(insn, pop(insn, LONG));
+			case Opcodes.FSTORE:
+				return store(insn, pop(insn, FLOAT));
+			case Opcodes.DSTORE:
+				return store(insn, pop(insn, DOUBLE));
+			case Opcodes.ASTORE:
+				return store(insn, popReference(insn));
+			case Opcodes.IASTORE:
+			case Opcodes.BASTORE:
+			case Opcodes.CASTORE:
+			case Opcodes.SASTORE:
+				pop(insn, INTEGER);
+				pop(insn, INTEGER);
+				popArray(insn);
+				return false;
+			case Opcodes.LASTORE:
+				pop(insn, LONG);
+				pop(insn, INTEGER);
+				popArray(insn);
+				return false;
+			case Opcodes.FASTORE:
+				pop(insn, FLOAT);
+				pop(insn, INTEGER);
+				popArray(insn);
+				return false;
+			case Opcodes.DASTORE:
+				pop(insn, DOUBLE);
+				pop(insn, INTEGER);
+				popArray(insn);
+				return false;
+			case Opcodes.AASTORE:
+				popReference(insn);
+				pop(insn, INTEGER);
+				popArray(insn);
+				return false;
+			case Opcodes.POP:
+				popSlot(insn, true);
+				return false;
+			case Opcodes.POP2:
+				popSlot(insn, false);
+				popSlot(insn, false);
+				return false;
+			case Opcodes.DUP:
+			{
+				final int value = popSlot(insn, true);
+				push(insn, value);
+				push(insn, value);
+				return false;
+			}
+			case Opcodes.DUP_X1:
+			{
+				final int value1 = popSlot(insn, true);
+				final int value2 = popSlot(insn, true);
+				pushSlots(insn, value1, value2, value1);
+				return false;
+			}
+			case Opcodes.DUP_X2:
+			{
+				final int value1 = popSlot(insn, true);
+				final int value2 = popSlot(insn, false);
+				final int value3 = popSlot(insn, false);
+				pushSlots(insn, value1, value3, value2, value1);
+				return false;
+			}
+			case Opcodes.DUP2:
+			{
+				final int value1 = popSlot(insn, false);
+				final int value2 = popSlot(insn, false);
+				pushSlots(insn, value2, value1, value2, value1);
+				return false;
+			}
+			case Opcodes.DUP2_X1:
+			{
+				final int value1 = popSlot(insn, false);
+				final int value2 = popSlot(insn, false);
+				final int value3 = popSlot(insn, true);
+				pushSlots(insn, value2, value1, value3);
+				pushSlots(insn, value2, value1);
+				return false;
+			}
+			case Opcodes.DUP2_X2:
+			{
+				final int value1 = popSlot(insn, false);
+				final int value2 = popSlot(insn, false);
+				final int value3 = popSlot(insn, false);
+				final int value4 = popSlot(insn, false);
+				pushSlots(insn, value2, value1, value4);
+				pushSlots(insn, value3, value2, value1);
+				return false;
+			}
+			case Opcodes.SWAP:
+			{
+				final int value1 = popSlot(insn, true);
+				final int value2 = popSlot(insn, true);
+				pushSlots(insn, value1, value2);
+				return false;
+			}
+			case Opcodes.IADD:
+			case Opcodes.ISUB:
+			case Opcodes.IMUL:
+			case Opcodes.IDIV:
+			case Opcodes.IREM:
+			case Opcodes.ISHL:
+			case Opcodes.ISHR:
+			case Opcodes.IUSHR:
+			case Opcodes.IAND:
+			case Opcodes.IOR:
+			case Opcodes.IXOR:
+				binary(insn, INTEGER, INTEGER, INTEGER);
+				return false;
+			case Opcodes.LADD:
+			case Opcodes.LSUB:
+			case Opcodes.LMUL:
+			case Opcodes.LDIV:
+			case Opcodes.LREM:
+			case Opcodes.LAND:
+			case Opcodes.LOR:
+			case Opcodes.LXOR:
+				binary(insn, LONG, LONG, LONG);
+				return false;
+			case Opcodes.LSHL:
+			case Opcodes.LSHR:
+			case Opcodes.LUSHR:
+				binary(insn, LONG, INTEGER, LONG);
+				return false;
+			case Opcodes.FADD:
+			case Opcodes.FSUB:
+			case Opcodes.FMUL:
+			case Opcodes.FDIV:
+			case Opcodes.FREM:
+				binary(insn, FLOAT, FLOAT, FLOAT);
+				return false;
+			case Opcodes.DADD:
+			case Opcodes.DSUB:
+			case Opcodes.DMUL:
+			case Opcodes.DDIV:
+			case Opcodes.DREM:
+				binary(insn, DOUBLE, DOUBLE, DOUBLE);
+				return false;
+			case Opcodes.INEG:
+				unary(insn, INTEGER, INTEGER);
+				return false;
+			case Opcodes.LNEG:
+				unary(insn, LONG, LONG);
+				return false;
+			case Opcodes.FNEG:
+				unary(insn, FLOAT, FLOAT);
+				return false;
+			case Opcodes.DNEG:
+				unary(insn, DOUBLE, DOUBLE);
+				return false;
+			case Opcodes.IINC:
+			{
+				final int var = ((IincInsnNode) insn).var;
+				checkLocal(insn, var, 1);
+				if (locals[var] != INTEGER)
+				{
+					throw new AnalyzerException(insn, "Expected an int in local " + var);
+				}
+				return false;
+			}
+			case Opcodes.I2L:
+				unary(insn, INTEGER, LONG);
+				return false;
+			case Opcodes.I2F:
+				unary(insn, INTEGER, FLOAT);
+				return false;
+			case Opcodes.I2D:
+				unary(insn, INTEGER, DOUBLE);
+				return false;
+			case Opcodes.L2I:
+				unary(insn, LONG, INTEGER);
+				return false;
+			case Opcodes.L2F:
+				unary(insn, LONG, FLOAT);
+				return false;
+			case Opcodes.L2D:
+				unary(insn, LONG, DOUBLE);
+				return false;
+			case Opcodes.F2I:
+				unary(insn, FLOAT, INTEGER);
+				return false;
+			case Opcodes.F2L:
+				unary(insn, FLOAT, LONG);
+				return false;
+			case Opcodes.F2D:
+				unary(insn, FLOAT, DOUBLE);
+				return false;
+			case Opcodes.D2I:
+				unary(insn, DOUBLE, INTEGER);
+				return false;
+			case Opcodes.D2L:
+				unary(insn, DOUBLE, LONG);
+				return false;
+			case Opcodes.D2F:
+				unary(insn, DOUBLE, FLOAT);
+				return false;
+			case Opcodes.I2B:
+			case Opcodes.I2C:
+			case Opcodes.I2S:
+				unary(insn, INTEGER, INTEGER);
+				return false;
+			case Opcodes.LCMP:
+				binary(insn, LONG, LONG, INTEGER);
+				return false;
+			case Opcodes.FCMPL:
+			case Opcodes.FCMPG:
+				binary(insn, FLOAT, FLOAT, INTEGER);
+				return false;
+			case Opcodes.DCMPL:
+			case Opcodes.DCMPG:
+				binary(insn, DOUBLE, DOUBLE, INTEGER);
+				return false;
+			case Opcodes.IFEQ:
+			case Opcodes.IFNE:
+			case Opcodes.IFLT:
+			case Opcodes.IFGE:
+			case Opcodes.IFGT:
+			case Opcodes.IFLE:
+			case Opcodes.TABLESWITCH:
+			case Opcodes.LOOKUPSWITCH:
+				pop(insn, INTEGER);
+				return false;
+			case Opcodes.IF_ICMPEQ:
+			case Opcodes.IF_ICMPNE:
+			case Opcodes.IF_ICMPLT:
+			case Opcodes.IF_ICMPGE:
+			case Opcodes.IF_ICMPGT:
+			case Opcodes.IF_ICMPLE:
+				pop(insn, INTEGER);
+				pop(insn, INTEGER);
+				return false;
+			case Opcodes.IF_ACMPEQ:
+			case Opcodes.IF_ACMPNE:
+				popReference(insn);
+				popReference(insn);
+				return false;
+			case Opcodes.IFNULL:
+			case Opcodes.IFNONNULL:
+			case Opcodes.ATHROW:
+			case Opcodes.MONITORENTER:
+			case Opcodes.MONITOREXIT:
+				popReference(insn);
+				return false;
+			case Opcodes.GOTO:
+				return false;
+			case Opcodes.IRETURN:
+			case Opcodes.LRETURN:
+			case Opcodes.FRETURN:
+			case Opcodes.DRETURN:
+			case Opcodes.ARETURN:
+			case Opcodes.RETURN:
+				executeReturn(insn);
+				return false;
+			case Opcodes.GETSTATIC:
+				push(insn, fromDescriptor(((FieldInsnNode) insn).desc));
+				return false;
+			case Opcodes.PUTSTATIC:
+				pop(insn, fromDescriptor(((FieldInsnNode) insn).desc));
+				return false;
+			case Opcodes.GETFIELD:
+				popReference(insn);
+				push(insn, fromDescriptor(((FieldInsnNode) insn).desc));
+				return false;
+			case Opcodes.PUTFIELD:
+				pop(insn, fromDescriptor(((FieldInsnNode) insn).desc));
+				popReference(insn);
+				return false;
+			case Opcodes.INVOKEVIRTUAL:
+			case Opcodes.INVOKESPECIAL:
+			case Opcodes.INVOKESTATIC:
+			case Opcodes.INVOKEINTERFACE:
+				return executeInvoke((MethodInsnNode) insn);
+			case Opcodes.INVOKEDYNAMIC:
+				popArguments(insn, ((InvokeDynamicInsnNode) insn).desc);
+				pushReturn(insn, ((InvokeDynamicInsnNode) insn).desc);
+				return false;
+			case Opcodes.NEW:
+				push(insn, UNINITIALIZED | index);
+				return false;
+			case Opcodes.NEWARRAY:
+				pop(insn, INTEGER);
+				push(insn, DIM_ONE | primitiveArrayElement(insn, ((IntInsnNode) insn).operand));
+				return false;
+			case Opcodes.ANEWARRAY:
+				pop(insn, INTEGER);
+				push(insn, DIM_ONE + reference(((TypeInsnNode) insn).desc));
+				return false;
+			case Opcodes.ARRAYLENGTH:
+				popArray(insn);
+				push(insn, INTEGER);
+				return false;
+			case Opcodes.CHECKCAST:
+				popReference(insn);
+				push(insn, reference(((TypeInsnNode) insn).desc));
+				return false;
+			case Opcodes.INSTANCEOF:
+				popReference(insn);
+				push(insn, INTEGER);
+				return false;
+			case Opcodes.MULTIANEWARRAY:
+			{
+				final MultiANewArrayInsnNode multiANewArray = (MultiANewArrayInsnNode) insn;
+				for (int i = 0; i < multiANewArray.dims; i++)
+				{
+					pop(insn, INTEGER);
+				}
+				push(insn, fromDescriptor(multiANewArray.desc));
+				return false;
+			}
+			default:
+				throw new AnalyzerException(insn, "Unsupported opcode " + opcode);
+		}
+	}
+
+	private boolean executeInvoke(MethodInsnNode insn) throws AnalyzerException
+	{
+		popArguments(insn, insn.desc);
+		boolean localsChanged = false;
+		if (insn.getOpcode() != Opcodes.INVOKESTATIC)
+		{
+			final int receiver = popReference(insn);
+			if (insn.getOpcode() == Opcodes.INVOKESPECIAL && "<init>".equals(insn.name) && isUninitialized(receiver))
+			{
+				// Constructing initializes every copy of the receiver
+				final int initialized = receiver == UNINITIALIZED_THIS
+					? reference(owner)
+					: reference(((TypeInsnNode) instructions[receiver & VALUE_MASK]).desc);
+				for (int i = 0; i < maxLocals; i++)
+				{
+					if (locals[i] == receiver)
+					{
+						locals[i] = initialized;
+						localsChanged = true;
+					}
+				}
+				for (int i = 0; i < top; i++)
+				{
+					if (stack[i] == receiver)
+					{
+						stack[i] = initialized;
+					}
+				}
+			}
+		}
+		pushReturn(insn, insn.desc);
+		return localsChanged;
+	}
+
+	private void executeReturn(AbstractInsnNode insn) throws AnalyzerException
+	{
+		final int[] signature = methodTypes(method.desc);
+		final int returnType = signature[signature.length - 1];
+		if (insn.getOpcode() == Opcodes.RETURN)
+		{
+			if (returnType != VOID)
+			{
+				throw new AnalyzerException(insn, "Expected a return value");
+			}
+			return;
+		}
+		if (returnType == VOID)
+		{
+			throw new AnalyzerException(insn, "Unexpected return value");
+		}
+		pop(insn, returnType);
+	}
+
+	private void popArguments(AbstractInsnNode insn, String descriptor) throws AnalyzerException
+	{
+		final int[] signature = methodTypes(descriptor);
+		for (int i = signature.length - 2; i >= 0; i--)
+		{
+			pop(insn, signature[i]);
+		}
+	}
+
+	private void pushReturn(AbstractInsnNode insn, String descriptor) throws AnalyzerException
+	{
+		final int[] signature = methodTypes(descriptor);
+		final int returnType = signature[signature.length - 1];
+		if (returnType != VOID)
+		{
+			push(insn, returnType);
+		}
+	}
+
+	private void unary(AbstractInsnNode insn, int operand, int result) throws AnalyzerException
+	{
+		pop(insn, operand);
+		push(insn, result);
+	}
+
+	private void binary(AbstractInsnNode insn, int operand1, int operand2, int result) throws AnalyzerException
+	{
+		pop(insn, operand2);
+		pop(insn, operand1);
+		push(insn, result);
+	}
+
+	private int load(AbstractInsnNode insn, int expected) throws AnalyzerException
+	{
+		final int var = ((VarInsnNode) insn).var;
+		final int size = expected == LONG || expected == DOUBLE ? 2 : 1;
+		checkLocal(insn, var, size);
+		if (locals[var] != expected || size == 2 && locals[var + 1] != TOP)
+		{
+			throw new AnalyzerException(insn, "Unexpected type in local " + var);
+		}
+		return expected;
+	}
+
+	private boolean store(AbstractInsnNode insn, int type) throws AnalyzerException
+	{
+		final int var = ((VarInsnNode) insn).var;
+		checkLocal(insn, var, isWide(type) ? 2 : 1);
+		setLocal(var, type);
+		return true;
+	}
+
+	/**
+	 * Set a local, invalidating a long or double it overwrites half of
+	 *
+	 * @return the next local
+	 */
+	private int setLocal(int var, int type)
+	{
+		if (var > 0 && isWide(locals[var - 1]))
+		{
+			locals[var - 1] = TOP;
+		}
+		if (var + 1 < maxLocals && isWide(locals[var]) && !isWide(type))
+		{
+			locals[var + 1] = TOP;
+		}
+		locals[var] = type;
+		if (isWide(type))
+		{
+			locals[var + 1] = TOP;
+			return var + 2;
+		}
+		return var + 1;
+	}
+
+	private void checkLocal(AbstractInsnNode insn, int var, int size) throws AnalyzerException
+	{
+		if (var < 0 || var + size > maxLocals)
+		{
+			throw new AnalyzerException(insn, "Invalid local " + var + ", max locals is " + maxLocals);
+		}
+	}
+
+	private void push(AbstractInsnNode insn, int type) throws AnalyzerException
+	{
+		final int size = isWide(type) ? 2 : 1;
+		if (top + size > maxStack)
+		{
+			if (computing)
+			{
+				throw StackOverflow.INSTANCE;
+			}
+			throw new AnalyzerException(insn, "Insufficient maximum stack size");
+		}
+		stack[top++] = type;
+		if (size == 2)
+		{
+			stack[top++] = TOP;
+		}
+		stackHigh = Math.max(stackHigh, top);
+	}
+
+	/**
+	 * Push single slots, as the DUP and SWAP instructions move them
+	 */
+	private void pushSlots(AbstractInsnNode insn, int... types) throws AnalyzerException
+	{
+		if (top + types.length > maxStack)
+		{
+			if (computing)
+			{
+				throw StackOverflow.INSTANCE;
+			}
+			throw new AnalyzerException(insn, "Insufficient maximum stack size");
+		}
+		for (int type : types)
+		{
+			stack[top++] = type;
+		}
+		stackHigh = Math.max(stackHigh, top);
+	}
+
+	/**
+	 * Pop one slot
+	 *
+	 * @param single, true if the slot must hold a whole value, not half of a long or double
+	 */
+	private int popSlot(AbstractInsnNode insn, boolean single) throws AnalyzerException
+	{
+		if (top == 0)
+		{
+			throw new AnalyzerException(insn, "Cannot pop operand off an empty stack");
+		}
+		final int type = stack[--top];
+		if (single && (type == TOP || isWide(type)))
+		{
+			throw new AnalyzerException(insn, "Expected a category 1 value");
+		}
+		return type;
+	}
+
+	private int pop(AbstractInsnNode insn, int expected) throws AnalyzerException
+	{
+		if (isReference(expected))
+		{
+			return popReference(insn);
+		}
+		if (isWide(expected))
+		{
+			if (top < 2 || stack[top - 1] != TOP || stack[top - 2] != expected)
+			{
+				throw new AnalyzerException(insn, "Expected a " + (expected == LONG ? "long" : "double") + " on the stack");
+			}
+			top -= 2;
+			return expected;
+		}
+		if (top == 0)
+		{
+			throw new AnalyzerException(insn, "Cannot pop operand off an empty stack");
+		}
+		final int type = stack[--top];
+		if (type != expected)
+		{
+			throw new AnalyzerException(insn, "Expected " + (expected == INTEGER ? "an int" : "a float") + " on the stack");
+		}
+		return type;
+	}
+
+	private int popReference(AbstractInsnNode insn) throws AnalyzerException
+	{
+		if (top == 0)
+		{
+			throw new AnalyzerException(insn, "Cannot pop operand off an empty stack");
+		}
+		final int type = stack[--top];
+		if (!isReference(type))
+		{
+			throw new AnalyzerException(insn, "Expected a reference on the stack");
+		}
+		return type;
+	}
+
+	private int popArray(AbstractInsnNode insn) throws AnalyzerException
+	{
+		final int type = popReference(insn);
+		if (type != NULL && (type & DIM_MASK) == 0 && (computing || isUninitialized(type)))
+		{
+			throw new AnalyzerException(insn, "Expected an array on the stack");
+		}
+		return type;
+	}
+
+	private static boolean isWide(int type)
+	{
+		return type == LONG || type == DOUBLE;
+	}
+
+	private static boolean isReference(int type)
+	{
+		return (type & DIM_MASK) != 0 || (type & KIND_MASK) != CONSTANT || type == NULL || type == UNINITIALIZED_THIS;
+	}
+
+	private static boolean isUninitialized(int type)
+	{
+		return type == UNINITIALIZED_THIS || (type & (DIM_MASK | KIND_MASK)) == UNINITIALIZED;
+	}
+
+	private int elementType(int array)
+	{
+		final int element = array - DIM_ONE;
+		return (element & DIM_MASK) == 0 && (element & KIND_MASK) == CONSTANT ? toScalar(element) : element;
+	}
+
+	private static int toScalar(int type)
+	{
+		return type == BOOLEAN || type == BYTE || type == CHAR || type == SHORT ? INTEGER : type;
+	}
+
+	private int reference(String internalName)
+	{
+		if (internalName.charAt(0) == '[')
+		{
+			// The internal name of an array is its descriptor
+			return fromDescriptor(internalName);
+		}
+		Integer id = typeIds.get(internalName);
+		if (id == null)
+		{
+			id = typeNames.size();
+			if (id > VALUE_MASK)
+			{
+				throw new IllegalStateException("Too many reference types in method");
+			}
+			typeNames.add(internalName);
+			typeIds.put(internalName, id);
+		}
+		return REFERENCE | id;
+	}
+
+	private int fromDescriptor(String descriptor)
+	{
+		Integer type = descriptorTypes.get(descriptor);
+		if (type == null)
+		{
+			type = fromType(Type.getType(descriptor));
+			descriptorTypes.put(descriptor, type);
+		}
+		return type;
+	}
+
+	/**
+	 * @return the argument types followed by the return type, VOID for void methods
+	 */
+	private int[] methodTypes(String descriptor)
+	{
+		int[] types = methodTypes.get(descriptor);
+		if (types == null)
+		{
+			final Type[] arguments = Type.getArgumentTypes(descriptor);
+			types = new int[arguments.length + 1];
+			for (int i = 0; i < arguments.length; i++)
+			{
+				types[i] = fromType(arguments[i]);
+			}
+			final Type returnType = Type.getReturnType(descriptor);
+			types[arguments.length] = returnType.getSort() == Type.VOID ? VOID : fromType(returnType);
+			methodTypes.put(descriptor, types);
+		}
+		return types;
+	}
+
+	private int fromType(Type type)
+	{
+		switch (type.getSort())
+		{
+			case Type.BOOLEAN:
+			case Type.BYTE:
+			case Type.CHAR:
+			case Type.SHORT:
+			case Type.INT:
+				return INTEGER;
+			case Type.FLOAT:
+				return FLOAT;
+			case Type.LONG:
+				return LONG;
+			case Type.DOUBLE:
+				return DOUBLE;
+			case Type.ARRAY:
+				final int dimensions = type.getDimensions() << DIM_SHIFT;
+				final Type element = type.getElementType();
+				return dimensions | (element.getSort() == Type.OBJECT ? reference(element.getInternalName()) : arrayElement(element));
+			default:
+				return reference(type.getInternalName());
+		}
+	}
+
+	private static int arrayElement(Type element)
+	{
+		switch (element.getSort())
+		{
+			case Type.BOOLEAN:
+				return BOOLEAN;
+			case Type.BYTE:
+				return BYTE;
+			case Type.CHAR:
+				return CHAR;
+			case Type.SHORT:
+				return SHORT;
+			case Type.INT:
+				return INTEGER;
+			case Type.FLOAT:
+				return FLOAT;
+			case Type.LONG:
+				return LONG;
+			default:
+				return DOUBLE;
+		}
+	}
+
+	private static int primitiveArrayElement(AbstractInsnNode insn, int operand) throws AnalyzerException
+	{
+		switch (operand)
+		{
+			case Opcodes.T_BOOLEAN:
+				return BOOLEAN;
+			case Opcodes.T_CHAR:
+				return CHAR;
+			case Opcodes.T_FLOAT:
+				return FLOAT;
+			case Opcodes.T_DOUBLE:
+				return DOUBLE;
+			case Opcodes.T_BYTE:
+				return BYTE;
+			case Opcodes.T_SHORT:
+				return SHORT;
+			case Opcodes.T_INT:
+				return INTEGER;
+			case Opcodes.T_LONG:
+				return LONG;
+			default:
+				throw new AnalyzerException(insn, "Invalid array type " + operand);
+		}
+	}
+
+	private int constantType(AbstractInsnNode insn, Object constant) throws AnalyzerException
+	{
+		if (constant instanceof Integer)
+		{
+			return INTEGER;
+		}
+		if (constant instanceof Float)
+		{
+			return FLOAT;
+		}
+		if (constant instanceof Long)
+		{
+			return LONG;
+		}
+		if (constant instanceof Double)
+		{
+			return DOUBLE;
+		}
+		if (constant instanceof String)
+		{
+			return reference("java/lang/String");
+		}
+		if (constant instanceof Type)
+		{
+			final int sort = ((Type) constant).getSort();
+			return reference(sort == Type.METHOD ? "java/lang/invoke/MethodType" : "java/lang/Class");
+		}
+		if (constant instanceof Handle)
+		{
+			return reference("java/lang/invoke/MethodHandle");
+		}
+		if (constant instanceof ConstantDynamic)
+		{
+			return fromType(Type.getType(((ConstantDynamic) constant).getDescriptor()));
+		}
+		throw new AnalyzerException(insn, "Illegal LDC constant " + constant);
+	}
+
+	/**
+	 * Convert types to frame elements, where a long or double is one element
+	 *
+	 * @param trim, true to leave out trailing TOP types, as for locals
+	 */
+	private Object[] toFrameElements(int[] types, int offset, int size, boolean trim, Map<Integer, LabelNode> newLabels)
+	{
+		int count = 0;
+		int used = 0;
+		for (int i = 0; i < size; i++)
+		{
+			final int type = types[offset + i];
+			count++;
+			if (!trim || type != TOP)
+			{
+				used = count;
+			}
+			if (isWide(type))
+			{
+				i++;
+			}
+		}
+		final Object[] elements = new Object[used];
+		for (int i = 0, element = 0; element < used; i++)
+		{
+			final int type = types[offset + i];
+			elements[element++] = toFrameType(type, newLabels);
+			if (isWide(type))
+			{
+				i++;
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * Build the frame node of a block entry, in the compressed form relative to the locals of the previous frame
+	 */
+	private static FrameNode toFrameNode(Object[] frameLocals, Object[] frameStack, Object[] previousLocals)
+	{
+		if (frameStack.length == 0)
+		{
+			final int delta = frameLocals.length - previousLocals.length;
+			if (delta == 0 && Arrays.equals(frameLocals, previousLocals))
+			{
+				return new FrameNode(Opcodes.F_SAME, 0, null, 0, null);
+			}
+			if (delta > 0 && delta <= 3 && startsWith(frameLocals, previousLocals))
+			{
+				return new FrameNode(Opcodes.F_APPEND, delta, Arrays.copyOfRange(frameLocals, previousLocals.length, frameLocals.length), 0, null);
+			}
+			if (delta < 0 && delta >= -3 && startsWith(previousLocals, frameLocals))
+			{
+				return new FrameNode(Opcodes.F_CHOP, -delta, null, 0, null);
+			}
+		}
+		else if (frameStack.length == 1 && Arrays.equals(frameLocals, previousLocals))
+		{
+			return new FrameNode(Opcodes.F_SAME1, 0, null, 1, frameStack);
+		}
+		return new FrameNode(Opcodes.F_FULL, frameLocals.length, frameLocals, frameStack.length, frameStack);
+	}
+
+	private static boolean startsWith(Object[] elements, Object[] prefix)
+	{
+		for (int i = 0; i < prefix.length; i++)
+		{
+			if (!elements[i].equals(prefix[i]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Object toFrameType(int type, Map<Integer, LabelNode> newLabels)
+	{
+		switch (type)
+		{
+			case TOP:
+				return Opcodes.TOP;
+			case INTEGER:
+				return Opcodes.INTEGER;
+			case FLOAT:
+				return Opcodes.FLOAT;
+			case LONG:
+				return Opcodes.LONG;
+			case DOUBLE:
+				return Opcodes.DOUBLE;
+			case NULL:
+				return Opcodes.NULL;
+			case UNINITIALIZED_THIS:
+				return Opcodes.UNINITIALIZED_THIS;
+			default:
+				break;
+		}
+		if ((type & (DIM_MASK | KIND_MASK)) == UNINITIALIZED)
+		{
+			// The NEW instruction is identified by a label right before it
+			final int index = type & VALUE_MASK;
+			return newLabels.computeIfAbsent(index, i ->
+			{
+				final AbstractInsnNode newInsn = instructions[i];
+				if (newInsn.getPrevious() instanceof LabelNode)
+				{
+					return (LabelNode) newInsn.getPrevious();
+				}
+				final LabelNode label = new LabelNode();
+				method.instructions.insertBefore(newInsn, label);
+				return label;
+			});
+		}
+		return toInternalName(type);
+	}
+
+	private String toInternalName(int type)
+	{
+		final int dimensions = (type & DIM_MASK) >>> DIM_SHIFT;
+		final int element = type & ~DIM_MASK;
+		if (dimensions == 0)
+		{
+			return typeNames.get(element & VALUE_MASK);
+		}
+		final StringBuilder descriptor = new StringBuilder();
+		for (int i = 0; i < dimensions; i++)
+		{
+			descriptor.append('[');
+		}
+		switch (element)
+		{
+			case BOOLEAN:
+				return descriptor.append('Z').toString();
+			case BYTE:
+				return descriptor.append('B').toString();
+			case CHAR:
+				return descriptor.append('C').toString();
+			case SHORT:
+				return descriptor.append('S').toString();
+			case INTEGER:
+				return descriptor.append('I').toString();
+			case FLOAT:
+				return descriptor.append('F').toString();
+			case LONG:
+				return descriptor.append('J').toString();
+			case DOUBLE:
+				return descriptor.append('D').toString();
+			default:
+				return descriptor.append('L').append(typeNames.get(element & VALUE_MASK)).append(';').toString();
+		}
+	}
+
+	private static int[] ensure(int[] array, int size)
+	{
+		return array.length >= size ? array : new int[Math.max(size, array.length * 2)];
+	}
+
+	private static boolean[] ensure(boolean[] array, int size)
+	{
+		return array.length >= size ? array : new boolean[Math.max(size, array.length * 2)];
+	}
+
+	/**
+	 * Thrown when the stack outgrows the guessed max stack while computing frames
+	 */
+	private static class StackOverflow extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		static final StackOverflow INSTANCE = new StackOverflow();
+
+		private StackOverflow()
+		{
+			super(null, null, false, false);
+		}
+	}
+}
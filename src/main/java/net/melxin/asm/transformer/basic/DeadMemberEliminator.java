@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.basic;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
+import net.melxin.asm.transformer.ClassEntry;
+import net.melxin.asm.transformer.ClassHierarchy;
+import net.melxin.asm.transformer.ClassReferenceIndex;
+import net.melxin.asm.transformer.ClassRegistry;
+import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.JarEntryTransformer;
+import net.melxin.asm.transformer.SymbolTable;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes unused fields, methods and classes until nothing else can be removed.
+ * <p>
+ * Uses the criteria of {@link UnusedFieldRemover}, {@link UnusedMethodRemover} and
+ * {@link UnusedClassRemover}, but counts the references to every member once and
+ * keeps a worklist of member IDs: removing a method releases the members it referenced, and
+ * emptying a class may leave the class and then its super types removable.
+ * Members that only reference each other in a cycle are kept.
+ */
+@Slf4j
+public class DeadMemberEliminator implements JarEntryTransformer
+{
+	// Number of references from live code, by member ID
+	private int[] fieldReferences;
+	private int[] methodReferences;
+
+	// Declared members that are still in the jar, by member ID
+	private FieldNode[] fields;
+	private MethodNode[] methods;
+	private ClassNode[] fieldOwners;
+	private ClassNode[] methodOwners;
+
+	private final Deque<Integer> fieldWorklist = new ArrayDeque<>();
+	private final Deque<Integer> methodWorklist = new ArrayDeque<>();
+	private final Deque<String> classWorklist = new ArrayDeque<>();
+
+	private int removedFieldCount;
+	private int removedMethodCount;
+	private int removedClassCount;
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.HIERARCHY, Aspect.MEMBERS, Aspect.INSTRUCTIONS, Aspect.ANNOTATIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.CLASSES, Aspect.HIERARCHY, Aspect.MEMBERS);
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedFieldCount + removedMethodCount + removedClassCount;
+	}
+
+	@Override
+	public void transform(JarEntryGroup jarEntryGroup)
+	{
+		final ClassRegistry classEntries = jarEntryGroup.getClassEntries();
+		final ClassHierarchy hierarchy = jarEntryGroup.getHierarchy();
+		final SymbolTable symbols = jarEntryGroup.getSymbolTable();
+		final int previouslyRemovedFields = removedFieldCount;
+		final int previouslyRemovedMethods = removedMethodCount;
+		final int previouslyRemovedClasses = removedClassCount;
+		fieldReferences = new int[symbols.getFieldCount()];
+		methodReferences = new int[symbols.getMethodCount()];
+		fields = new FieldNode[symbols.getFieldCount()];
+		methods = new MethodNode[symbols.getMethodCount()];
+		fieldOwners = new ClassNode[symbols.getFieldCount()];
+		methodOwners = new ClassNode[symbols.getMethodCount()];
+
+		// Count the references of every method once, members added after loading have no ID and are kept
+		for (ClassEntry classEntry : classEntries)
+		{
+			final ClassNode classNode = classEntry.getNode();
+			for (FieldNode field : classNode.fields)
+			{
+				final int fieldId = symbols.getFieldId(classNode.name, field.name, field.desc);
+				if (fieldId != SymbolTable.MISSING)
+				{
+					fields[fieldId] = field;
+					fieldOwners[fieldId] = classNode;
+				}
+			}
+			for (MethodNode method : classNode.methods)
+			{
+				final int methodId = symbols.getMethodId(classNode.name, method.name, method.desc);
+				if (methodId != SymbolTable.MISSING)
+				{
+					methods[methodId] = method;
+					methodOwners[methodId] = classNode;
+				}
+				updateReferences(symbols, method, 1);
+			}
+		}
+
+		// Seed the worklists with everything that is unused already
+		for (int fieldId = 0; fieldId < fields.length; fieldId++)
+		{
+			fieldWorklist.add(fieldId);
+		}
+		for (int methodId = 0; methodId < methods.length; methodId++)
+		{
+			methodWorklist.add(methodId);
+		}
+		for (ClassEntry classEntry : classEntries)
+		{
+			classWorklist.add(classEntry.getName());
+		}
+
+		ClassReferenceIndex references = null;
+		while (!fieldWorklist.isEmpty() || !methodWorklist.isEmpty() || !classWorklist.isEmpty())
+		{
+			if (!methodWorklist.isEmpty())
+			{
+				removeMethod(symbols, methodWorklist.pop());
+			}
+			else if (!fieldWorklist.isEmpty())
+			{
+				removeField(fieldWorklist.pop());
+			}
+			else
+			{
+				// Removing classes releases no members, so references are indexed once the members are done
+				if (references == null)
+				{
+					references = ClassReferenceIndex.build(jarEntryGroup.getClassNodes(), jarEntryGroup.getParallelism());
+				}
+				removeClass(classEntries, hierarchy, references, classWorklist.pop());
+			}
+		}
+
+		if (removedFieldCount != previouslyRemovedFields || removedMethodCount != previouslyRemovedMethods)
+		{
+			jarEntryGroup.markModified(Aspect.MEMBERS);
+		}
+		log.info("Removed: {} unused fields, {} unused methods, {} unused classes", removedFieldCount - previouslyRemovedFields,
+			removedMethodCount - previouslyRemovedMethods, removedClassCount - previouslyRemovedClasses);
+	}
+
+	private void removeField(int fieldId)
+	{
+		final FieldNode field = fields[fieldId];
+		if (field == null || fieldReferences[fieldId] > 0)
+		{
+			return;
+		}
+
+		final ClassNode owner = fieldOwners[fieldId];
+		fields[fieldId] = null;
+		owner.fields.remove(field);
+		removedFieldCount++;
+		log.debug("Removed unused field: {} {}.{} {}", Modifier.toString(field.access), owner.name, field.name, field.desc);
+		classWorklist.add(owner.name);
+	}
+
+	private void removeMethod(SymbolTable symbols, int methodId)
+	{
+		final MethodNode method = methods[methodId];
+		if (method == null
+			|| method.name.equals("<init>")
+			|| method.name.equals("<clinit>")
+			|| method.name.length() != 2
+			|| methodReferences[methodId] > 0)
+		{
+			return;
+		}
+
+		final ClassNode owner = methodOwners[methodId];
+		methods[methodId] = null;
+		owner.methods.remove(method);
+		removedMethodCount++;
+		log.debug("Removed unused method: {} {}.{} {}", Modifier.toString(method.access), owner.name, method.name, method.desc);
+
+		// Release everything the method referenced
+		updateReferences(symbols, method, -1);
+		classWorklist.add(owner.name);
+	}
+
+	private void removeClass(ClassRegistry classEntries, ClassHierarchy hierarchy, ClassReferenceIndex references, String name)
+	{
+		final ClassEntry classEntry = classEntries.get(name);
+		if (classEntry == null
+			|| !classEntry.getFields().isEmpty()
+			|| !classEntry.getMethods().isEmpty()
+			|| (classEntry.getAccess() & Opcodes.ACC_INTERFACE) != 0
+			|| !hierarchy.getSubTypes(name).isEmpty()
+			|| references.isReferenced(name, classEntries))
+		{
+			return;
+		}
+
+		final String superName = classEntry.getSuperName();
+		final List<String> interfaces = classEntry.getInterfaces();
+		classEntries.remove(classEntry);
+		removedClassCount++;
+		log.debug("Removed unused class: {}", name);
+
+		// The super types may have lost their last sub type
+		if (superName != null)
+		{
+			classWorklist.add(superName);
+		}
+		classWorklist.addAll(interfaces);
+	}
+
+	private void updateReferences(SymbolTable symbols, MethodNode method, int delta)
+	{
+		for (AbstractInsnNode insn : method.instructions)
+		{
+			if (insn instanceof FieldInsnNode)
+			{
+				final FieldInsnNode fin = (FieldInsnNode) insn;
+				update(fieldReferences, fieldWorklist, symbols.getFieldId(fin.owner, fin.name, fin.desc), delta);
+			}
+			else if (insn instanceof MethodInsnNode)
+			{
+				final MethodInsnNode min = (MethodInsnNode) insn;
+				update(methodReferences, methodWorklist, symbols.getMethodId(min.owner, min.name, min.desc), delta);
+			}
+			else if (insn instanceof InvokeDynamicInsnNode)
+			{
+				final InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+				if (indy.bsm != null)
+				{
+					for (Object arg : indy.bsmArgs)
+					{
+						if (arg instanceof Handle)
+						{
+							final Handle handle = (Handle) arg;
+							update(methodReferences, methodWorklist, symbols.getMethodId(handle.getOwner(), handle.getName(), handle.getDesc()), delta);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static void update(int[] references, Deque<Integer> worklist, int memberId, int delta)
+	{
+		// References to members outside of the jar have no ID
+		if (memberId != SymbolTable.MISSING && (references[memberId] += delta) == 0)
+		{
+			worklist.add(memberId);
+		}
+	}
+}
\ No newline at end of file
@@ -25,139 +25,174 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
 import net.melxin.asm.transformer.JarEntryTransformer;
 import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
+import net.melxin.asm.transformer.pass.InstructionHandler;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodNode;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class ExprArgOrder implements JarEntryTransformer
+public class ExprArgOrder implements JarEntryTransformer, InstructionHandler
 {
-	private int reorderedCount;
+	private final AtomicInteger reorderedCount = new AtomicInteger();
+
+	// Count at the last completed run, each run logs only its own changes
+	private int loggedReorderedCount;
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
 
 	@Override
 	public void transform(JarEntryGroup jarEntryGroup)
 	{
-		for (ClassNode classNode : jarEntryGroup.getClassNodes())
-		{
-			for (MethodNode method : classNode.methods)
-			{
-				final AbstractInsnNode[] instructions = method.instructions.toArray();
-				for (int i = 0; i < instructions.length; i++)
-				{
-					final AbstractInsnNode in = instructions[i];
-					if (in instanceof FieldInsnNode)
-					{
-						final FieldInsnNode fin = (FieldInsnNode) in;
-						if (!fin.desc.equals("I") && !fin.desc.equals("J"))
-						{
-							continue;
-						}
+		new FusedInstructionPass(this).transform(jarEntryGroup);
+	}
+
+	@Override
+	public int[] getInsnTypes()
+	{
+		return new int[]{AbstractInsnNode.FIELD_INSN};
+	}
 
-						/**
-						 * LDC * Field -> Field * LDC
-						 */
-						if (in.getNext().getOpcode() == Opcodes.IMUL || in.getNext().getOpcode() == Opcodes.LMUL)
-						{
-							LdcInsnNode LDCInsn = null;
-							if (in.getPrevious() instanceof LdcInsnNode)
-							{
-								LDCInsn = (LdcInsnNode) in.getPrevious();
-							}
-							else if (in.getPrevious().getPrevious() instanceof LdcInsnNode)
-							{
-								LDCInsn = (LdcInsnNode) in.getPrevious().getPrevious();
-							}
+	@Override
+	public boolean visitInsn(ClassNode classNode, MethodNode method, AbstractInsnNode in)
+	{
+		boolean changed = false;
+		final FieldInsnNode fin = (FieldInsnNode) in;
+		if (!fin.desc.equals("I") && !fin.desc.equals("J"))
+		{
+			return false;
+		}
 
-							if (LDCInsn != null)
-							{
-								method.instructions.remove(LDCInsn);
-								method.instructions.insert(in, LDCInsn);
-								reorderedCount++;
-							}
-						}
+		/**
+		 * LDC * Field -> Field * LDC
+		 */
+		if (in.getNext().getOpcode() == Opcodes.IMUL || in.getNext().getOpcode() == Opcodes.LMUL)
+		{
+			LdcInsnNode LDCInsn = null;
+			if (in.getPrevious() instanceof LdcInsnNode)
+			{
+				LDCInsn = (LdcInsnNode) in.getPrevious();
+			}
+			else if (in.getPrevious().getPrevious() instanceof LdcInsnNode)
+			{
+				LDCInsn = (LdcInsnNode) in.getPrevious().getPrevious();
+			}
 
-						/**
-						 * FIELD = LDC * EXPRESSION % VALUE -> FIELD = EXPRESSION % VALUE * LDC
-						 *
-						 *              ldc 173807000 (java.lang.Integer)
-						 *              getstatic client.uq:int
-						 *              ldc 656928497 (java.lang.Integer)
-						 *              imul
-						 *              iconst_1
-						 *              iadd
-						 *              ldc -1288700607 (java.lang.Integer)
-						 *              irem
-						 *              imul
-						 *              putstatic client.uq:int
-						 *
-						 *              ->
-						 *
-						 *              getstatic client.uq:int
-						 *              ldc 656928497 (java.lang.Integer)
-						 *              imul
-						 *              iconst_1
-						 *              iadd
-						 *              ldc -1288700607 (java.lang.Integer)
-						 *              irem
-						 *              ldc 173807000 (java.lang.Integer)
-						 *              imul
-						 *              putstatic client.uq:int
-						 */
-						/*if (in.getPrevious() != null
-							&& in.getPrevious() instanceof LdcInsnNode
-							&& in.getNext() instanceof LdcInsnNode
-							&& (in.getNext().getNext().getOpcode() == Opcodes.IMUL || in.getNext().getNext().getOpcode() == Opcodes.LMUL))
-						{
-							AbstractInsnNode ldc = in.getPrevious();
-							AbstractInsnNode putField = in.getNext().getNext().getNext().getNext().getNext().getNext().getNext().getNext();
-							AbstractInsnNode mul = in.getNext().getNext().getNext().getNext().getNext().getNext().getNext();
-							if (putField.getOpcode() == Opcodes.PUTSTATIC && mul.getOpcode() == Opcodes.IMUL)
-							{
-								method.instructions.remove(ldc);
-								method.instructions.insertBefore(mul, ldc);
-								reorderedCount++;
-							}
-						}*/
+			if (LDCInsn != null)
+			{
+				method.instructions.remove(LDCInsn);
+				method.instructions.insert(in, LDCInsn);
+				reorderedCount.incrementAndGet();
+				changed = true;
+			}
+		}
 
-						/*if (in.getOpcode() == Opcodes.PUTSTATIC && in.getPrevious() != null && (in.getPrevious().getOpcode() == Opcodes.IMUL || in.getPrevious().getOpcode() == Opcodes.LMUL)
-							&& in.getPrevious().getPrevious() != null && in.getPrevious().getPrevious().getOpcode() == Opcodes.IREM)
-						{
-							for (int j = i; j > 1; j--)
-							{
-								AbstractInsnNode in2 = instructions[j];
-								if (in2 instanceof LineNumberNode && in2.getNext() instanceof LdcInsnNode)
-								{
-									LdcInsnNode ldcInsn = (LdcInsnNode) in2.getNext();
-									AbstractInsnNode mul = in.getPrevious();
-									method.instructions.remove(ldcInsn);
-									method.instructions.insertBefore(mul, ldcInsn);
-									break;
-								}
-							}
-						}*/
+		/**
+		 * FIELD = LDC * EXPRESSION % VALUE -> FIELD = EXPRESSION % VALUE * LDC
+		 *
+		 *              ldc 173807000 (java.lang.Integer)
+		 *              getstatic client.uq:int
+		 *              ldc 656928497 (java.lang.Integer)
+		 *              imul
+		 *              iconst_1
+		 *              iadd
+		 *              ldc -1288700607 (java.lang.Integer)
+		 *              irem
+		 *              imul
+		 *              putstatic client.uq:int
+		 *
+		 *              ->
+		 *
+		 *              getstatic client.uq:int
+		 *              ldc 656928497 (java.lang.Integer)
+		 *              imul
+		 *              iconst_1
+		 *              iadd
+		 *              ldc -1288700607 (java.lang.Integer)
+		 *              irem
+		 *              ldc 173807000 (java.lang.Integer)
+		 *              imul
+		 *              putstatic client.uq:int
+		 */
+		/*if (in.getPrevious() != null
+			&& in.getPrevious() instanceof LdcInsnNode
+			&& in.getNext() instanceof LdcInsnNode
+			&& (in.getNext().getNext().getOpcode() == Opcodes.IMUL || in.getNext().getNext().getOpcode() == Opcodes.LMUL))
+		{
+			AbstractInsnNode ldc = in.getPrevious();
+			AbstractInsnNode putField = in.getNext().getNext().getNext().getNext().getNext().getNext().getNext().getNext();
+			AbstractInsnNode mul = in.getNext().getNext().getNext().getNext().getNext().getNext().getNext();
+			if (putField.getOpcode() == Opcodes.PUTSTATIC && mul.getOpcode() == Opcodes.IMUL)
+			{
+				method.instructions.remove(ldc);
+				method.instructions.insertBefore(mul, ldc);
+				reorderedCount.incrementAndGet();
+			}
+		}*/
 
-						//iconst_1
-						//getstatic client.uq:int
-						//ldc 434688723 (java.lang.Integer)
-						//imul
-						//iadd
-						/*if (in.getPrevious() != null && in.getPrevious().getOpcode() == Opcodes.ICONST_0)
-						{
-							if (in.getNext().getNext().getNext() != null && in.getNext().getNext().getNext().getOpcode() == Opcodes.IADD)
-							{
-								method.instructions.remove(in.getPrevious());
-								method.instructions.insertBefore(in.getNext().getNext(), in.getPrevious());
-							}
-						}*/
-					}
+		/*if (in.getOpcode() == Opcodes.PUTSTATIC && in.getPrevious() != null && (in.getPrevious().getOpcode() == Opcodes.IMUL || in.getPrevious().getOpcode() == Opcodes.LMUL)
+			&& in.getPrevious().getPrevious() != null && in.getPrevious().getPrevious().getOpcode() == Opcodes.IREM)
+		{
+			for (int j = i; j > 1; j--)
+			{
+				AbstractInsnNode in2 = instructions[j];
+				if (in2 instanceof LineNumberNode && in2.getNext() instanceof LdcInsnNode)
+				{
+					LdcInsnNode ldcInsn = (LdcInsnNode) in2.getNext();
+					AbstractInsnNode mul = in.getPrevious();
+					method.instructions.remove(ldcInsn);
+					method.instructions.insertBefore(mul, ldcInsn);
+					break;
 				}
 			}
-		}
-		log.info("Reordered {} constants", reorderedCount);
+		}*/
+
+		//iconst_1
+		//getstatic client.uq:int
+		//ldc 434688723 (java.lang.Integer)
+		//imul
+		//iadd
+		/*if (in.getPrevious() != null && in.getPrevious().getOpcode() == Opcodes.ICONST_0)
+		{
+			if (in.getNext().getNext().getNext() != null && in.getNext().getNext().getNext().getOpcode() == Opcodes.IADD)
+			{
+				method.instructions.remove(in.getPrevious());
+				method.instructions.insertBefore(in.getNext().getNext(), in.getPrevious());
+			}
+		}*/
+		return changed;
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return reorderedCount.get();
+	}
+
+	@Override
+	public void complete()
+	{
+		final int reordered = reorderedCount.get();
+		log.info("Reordered {} constants", reordered - loggedReorderedCount);
+		loggedReorderedCount = reordered;
 	}
-}
+}
\ No newline at end of file
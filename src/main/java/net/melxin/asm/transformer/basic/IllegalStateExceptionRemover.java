@@ -25,8 +25,11 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
 import net.melxin.asm.transformer.JarEntryGroup;
 import net.melxin.asm.transformer.JarEntryTransformer;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
+import net.melxin.asm.transformer.pass.InstructionHandler;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
@@ -34,64 +37,98 @@ import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TypeInsnNode;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class IllegalStateExceptionRemover implements JarEntryTransformer
+public class IllegalStateExceptionRemover implements JarEntryTransformer, InstructionHandler
 {
-	private int totalRemovedSequences = 0;
+	private final AtomicInteger totalRemovedSequences = new AtomicInteger();
+
+	// Count at the last completed run, each run logs only its own changes
+	private int loggedRemovedSequences;
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
 
 	@Override
 	public void transform(JarEntryGroup jarEntryGroup)
 	{
-		int totalRemovedSequences = 0;
+		new FusedInstructionPass(this).transform(jarEntryGroup);
+	}
+
+	@Override
+	public int[] getOpcodes()
+	{
+		final int[] opcodes = new int[Opcodes.IF_ACMPEQ - Opcodes.IFEQ + 1];
+		for (int i = 0; i < opcodes.length; i++)
+		{
+			opcodes[i] = Opcodes.IFEQ + i;
+		}
+		return opcodes;
+	}
 
-		for (ClassNode classNode : jarEntryGroup.getClassNodes())
+	@Override
+	public boolean visitInsn(ClassNode classNode, MethodNode method, AbstractInsnNode insn)
+	{
+		final InsnList instructions = method.instructions;
+		if (insn.getNext().getOpcode() == Opcodes.NEW && insn.getNext() instanceof TypeInsnNode)
 		{
-			for (MethodNode method : classNode.methods)
+			final TypeInsnNode newInsn = (TypeInsnNode) insn.getNext();
+
+			if ("java/lang/IllegalStateException".equals(newInsn.desc))
 			{
-				final InsnList instructions = method.instructions;
+				// Mark the IF instruction for removal
+				//instructions.remove(insn);
+
+				// Remove the NEW instruction
+				instructions.remove(newInsn);
 
-				for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext())
+				// Traverse and remove until ATHROW
+				AbstractInsnNode current = newInsn.getNext();
+				while (current != null && current.getOpcode() != Opcodes.ATHROW)
 				{
-					if (insn.getOpcode() >= Opcodes.IFEQ && insn.getOpcode() <= Opcodes.IF_ACMPEQ)
-					{
-						if (insn.getNext().getOpcode() == Opcodes.NEW && insn.getNext() instanceof TypeInsnNode)
-						{
-							final TypeInsnNode newInsn = (TypeInsnNode) insn.getNext();
-
-							if ("java/lang/IllegalStateException".equals(newInsn.desc))
-							{
-								// Mark the IF instruction for removal
-								//instructions.remove(insn);
-
-								// Remove the NEW instruction
-								instructions.remove(newInsn);
-
-								// Traverse and remove until ATHROW
-								AbstractInsnNode current = newInsn.getNext();
-								while (current != null && current.getOpcode() != Opcodes.ATHROW)
-								{
-									instructions.remove(current);
-									current = current.getNext();
-								}
-
-								// Remove ATHROW if found
-								if (current != null && current.getOpcode() == Opcodes.ATHROW)
-								{
-									instructions.remove(current);
-								}
-
-								// Insert GOTO
-								instructions.insert(insn, new JumpInsnNode(Opcodes.GOTO, ((JumpInsnNode) insn).label));
-
-								totalRemovedSequences++;
-							}
-						}
-					}
+					instructions.remove(current);
+					current = current.getNext();
 				}
+
+				// Remove ATHROW if found
+				if (current != null && current.getOpcode() == Opcodes.ATHROW)
+				{
+					instructions.remove(current);
+				}
+
+				// Insert GOTO
+				instructions.insert(insn, new JumpInsnNode(Opcodes.GOTO, ((JumpInsnNode) insn).label));
+
+				totalRemovedSequences.incrementAndGet();
+				return true;
 			}
 		}
+		return false;
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return totalRemovedSequences.get();
+	}
 
-		log.info("Total sequences replaced with goto: {}", totalRemovedSequences);
+	@Override
+	public void complete()
+	{
+		final int removed = totalRemovedSequences.get();
+		log.info("Sequences replaced with goto: {}", removed - loggedRemovedSequences);
+		loggedRemovedSequences = removed;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,1156 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.basic;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
+import net.melxin.asm.transformer.ClassEntry;
+import net.melxin.asm.transformer.ClassHierarchy;
+import net.melxin.asm.transformer.ClassPath;
+import net.melxin.asm.transformer.ClassRegistry;
+import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.JarEntryTransformer;
+import net.melxin.asm.transformer.SymbolTable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.regex.Pattern;
+
+/**
+ * Removes every class, field and method that is not reachable from a set of roots.
+ * <p>
+ * Roots are patterns of the form {@code class[#name[#desc]]}, where {@code *} matches
+ * within a package or name and {@code **} matches across packages. A class pattern
+ * alone keeps the class with all of its members. {@code @desc} keeps the classes and
+ * members annotated with the given annotation.
+ * <p>
+ * Reachable code is walked with a parallel worklist. Virtual calls are dispatched to
+ * the implementations in every reachable sub type, also when the sub type becomes
+ * reachable later, and methods overriding library methods are kept for reachable
+ * classes. Class names in string constants are kept with all their members, as they
+ * are likely loaded by reflection.
+ * <p>
+ * When no root matches the jar the fallback transformers run instead. What the roots
+ * match in one round stays a root in the later rounds on the same jar.
+ */
+@Slf4j
+public class ReachabilityShrinker implements JarEntryTransformer
+{
+	private static final Set<String> UNKNOWN = Collections.emptySet();
+
+	@Getter(AccessLevel.PUBLIC)
+	private final List<String> patterns;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final List<JarEntryTransformer> fallback;
+
+	private final List<Root> roots = new ArrayList<>();
+
+	// Classes and members matched by the roots in any round on the same jar, as owner#name#desc. Later
+	// transformers may remove what a root matched on, e.g. annotations, so the matches are kept across rounds.
+	private JarEntryGroup resolvedGroup;
+	private final Set<String> resolvedClasses = new HashSet<>();
+	private final Set<String> resolvedMembers = new HashSet<>();
+
+	private int removedClassCount;
+	private int removedFieldCount;
+	private int removedMethodCount;
+
+	/**
+	 * Constructor
+	 *
+	 * @param roots, the root patterns
+	 * @param fallback, run when no root matches
+	 */
+	public ReachabilityShrinker(List<String> roots, List<JarEntryTransformer> fallback)
+	{
+		this.patterns = List.copyOf(roots);
+		this.fallback = fallback;
+		for (String root : roots)
+		{
+			this.roots.add(Root.parse(root));
+		}
+	}
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		final Set<Aspect> reads = EnumSet.of(Aspect.HIERARCHY, Aspect.MEMBERS, Aspect.INSTRUCTIONS, Aspect.ANNOTATIONS);
+		fallback.forEach(transformer -> reads.addAll(transformer.reads()));
+		return reads;
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		final Set<Aspect> writes = EnumSet.of(Aspect.CLASSES, Aspect.HIERARCHY, Aspect.MEMBERS);
+		fallback.forEach(transformer -> writes.addAll(transformer.writes()));
+		return writes;
+	}
+
+	/**
+	 * Check from the class headers whether any root may match, without building class nodes
+	 *
+	 * @param classEntries
+	 * @return true if the jar will be shrunk
+	 */
+	public boolean hasRoots(Iterable<ClassEntry> classEntries)
+	{
+		for (ClassEntry classEntry : classEntries)
+		{
+			for (Root root : roots)
+			{
+				if (root.mayMatch(classEntry))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		long count = removedClassCount + removedFieldCount + removedMethodCount;
+		for (JarEntryTransformer transformer : fallback)
+		{
+			count += Math.max(0, transformer.getChangeCount());
+		}
+		return count;
+	}
+
+	@Override
+	public void transform(JarEntryGroup jarEntryGroup)
+	{
+		final Marker marker = new Marker(jarEntryGroup);
+		if (!marker.markRoots())
+		{
+			log.info("No shrinking roots in the jar, using the unused member removers");
+			fallback.forEach(transformer -> transformer.transform(jarEntryGroup));
+			return;
+		}
+
+		marker.run();
+		final int previouslyRemovedClasses = removedClassCount;
+		final int previouslyRemovedFields = removedFieldCount;
+		final int previouslyRemovedMethods = removedMethodCount;
+		marker.sweep();
+		if (removedFieldCount != previouslyRemovedFields || removedMethodCount != previouslyRemovedMethods)
+		{
+			jarEntryGroup.markModified(Aspect.MEMBERS);
+		}
+		log.info("Removed: {} unreachable classes, {} unreachable fields, {} unreachable methods", removedClassCount - previouslyRemovedClasses,
+			removedFieldCount - previouslyRemovedFields, removedMethodCount - previouslyRemovedMethods);
+	}
+
+	/**
+	 * Marking state of a single run
+	 */
+	private class Marker
+	{
+		private final JarEntryGroup jarEntryGroup;
+		private final ClassRegistry classEntries;
+		private final ClassHierarchy hierarchy;
+		private final ClassPath classPath;
+		private final SymbolTable symbols;
+
+		// Declared members by ID
+		private final FieldNode[] fields;
+		private final MethodNode[] methods;
+		private final String[] fieldOwners;
+		private final String[] methodOwners;
+
+		private final Set<String> reachableClasses = ConcurrentHashMap.newKeySet();
+		private final AtomicIntegerArray reachableFields;
+		private final AtomicIntegerArray reachableMethods;
+		private final Set<MethodNode> reachableUnindexed = ConcurrentHashMap.newKeySet();
+
+		// Virtually invoked name + desc by owner
+		private final Map<String, Set<String>> dispatched = new ConcurrentHashMap<>();
+
+		// Overridable methods of library classes, empty if the class file is missing
+		private final Map<String, Set<String>> libraryMethods = new ConcurrentHashMap<>();
+
+		private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+		private Marker(JarEntryGroup jarEntryGroup)
+		{
+			this.jarEntryGroup = jarEntryGroup;
+			this.classEntries = jarEntryGroup.getClassEntries();
+			this.hierarchy = jarEntryGroup.getHierarchy();
+			this.classPath = jarEntryGroup.getClassPath();
+			this.symbols = jarEntryGroup.getSymbolTable();
+			this.fields = new FieldNode[symbols.getFieldCount()];
+			this.methods = new MethodNode[symbols.getMethodCount()];
+			this.fieldOwners = new String[symbols.getFieldCount()];
+			this.methodOwners = new String[symbols.getMethodCount()];
+			this.reachableFields = new AtomicIntegerArray(symbols.getFieldCount());
+			this.reachableMethods = new AtomicIntegerArray(symbols.getMethodCount());
+
+			for (ClassNode classNode : jarEntryGroup.getClassNodes())
+			{
+				for (FieldNode field : classNode.fields)
+				{
+					final int fieldId = symbols.getFieldId(classNode.name, field.name, field.desc);
+					if (fieldId != SymbolTable.MISSING)
+					{
+						fields[fieldId] = field;
+						fieldOwners[fieldId] = classNode.name;
+					}
+				}
+				for (MethodNode method : classNode.methods)
+				{
+					final int methodId = symbols.getMethodId(classNode.name, method.name, method.desc);
+					if (methodId != SymbolTable.MISSING)
+					{
+						methods[methodId] = method;
+						methodOwners[methodId] = classNode.name;
+					}
+				}
+			}
+		}
+
+		private boolean markRoots()
+		{
+			resolveRoots();
+			boolean matched = false;
+			for (ClassNode classNode : jarEntryGroup.getClassNodes())
+			{
+				if (resolvedClasses.contains(classNode.name))
+				{
+					keepAll(classNode);
+					matched = true;
+					continue;
+				}
+
+				for (FieldNode field : classNode.fields)
+				{
+					if (resolvedMembers.contains(classNode.name + '#' + field.name + '#' + field.desc))
+					{
+						markClass(classNode.name);
+						markField(classNode.name, field.name, field.desc);
+						matched = true;
+					}
+				}
+				for (MethodNode method : classNode.methods)
+				{
+					if (resolvedMembers.contains(classNode.name + '#' + method.name + '#' + method.desc))
+					{
+						markClass(classNode.name);
+						markMethod(classNode.name, method);
+						matched = true;
+					}
+				}
+			}
+			return matched;
+		}
+
+		/**
+		 * Add the classes and members the roots match now to those they matched in the earlier rounds
+		 */
+		private void resolveRoots()
+		{
+			if (resolvedGroup != jarEntryGroup)
+			{
+				resolvedGroup = jarEntryGroup;
+				resolvedClasses.clear();
+				resolvedMembers.clear();
+			}
+
+			for (ClassNode classNode : jarEntryGroup.getClassNodes())
+			{
+				for (Root root : roots)
+				{
+					if (root.keepsClass(classNode))
+					{
+						resolvedClasses.add(classNode.name);
+						continue;
+					}
+					if (!root.matchesClass(classNode))
+					{
+						continue;
+					}
+
+					for (FieldNode field : classNode.fields)
+					{
+						if (root.matches(field.name, field.desc, field.visibleAnnotations, field.invisibleAnnotations))
+						{
+							resolvedMembers.add(classNode.name + '#' + field.name + '#' + field.desc);
+						}
+					}
+					for (MethodNode method : classNode.methods)
+					{
+						if (root.matches(method.name, method.desc, method.visibleAnnotations, method.invisibleAnnotations))
+						{
+							resolvedMembers.add(classNode.name + '#' + method.name + '#' + method.desc);
+						}
+					}
+				}
+			}
+		}
+
+		private void run()
+		{
+			final int parallelism = jarEntryGroup.getParallelism();
+			final ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+			try
+			{
+				while (!pending.isEmpty())
+				{
+					// Drain the current frontier, new work is queued for the next one
+					final List<Runnable> frontier = new ArrayList<>();
+					for (Runnable task; (task = pending.poll()) != null; )
+					{
+						frontier.add(task);
+					}
+
+					if (pool == null)
+					{
+						frontier.forEach(Runnable::run);
+					}
+					else
+					{
+						pool.submit(() -> frontier.parallelStream().forEach(Runnable::run)).get();
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while marking reachable code", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new IllegalStateException("Failed to mark reachable code", e.getCause());
+			}
+			finally
+			{
+				if (pool != null)
+				{
+					pool.shutdown();
+				}
+			}
+		}
+
+		private void sweep()
+		{
+			final List<ClassEntry> unreachable = new ArrayList<>();
+			for (ClassEntry classEntry : classEntries)
+			{
+				if (!reachableClasses.contains(classEntry.getName()))
+				{
+					unreachable.add(classEntry);
+					continue;
+				}
+
+				final ClassNode classNode = classEntry.getNode();
+				for (Iterator<FieldNode> iter = classNode.fields.iterator(); iter.hasNext(); )
+				{
+					final FieldNode field = iter.next();
+					final int fieldId = symbols.getFieldId(classNode.name, field.name, field.desc);
+					if (fieldId != SymbolTable.MISSING && reachableFields.get(fieldId) == 0)
+					{
+						iter.remove();
+						removedFieldCount++;
+						log.debug("Removed unreachable field: {} {}.{} {}", Modifier.toString(field.access), classNode.name, field.name, field.desc);
+					}
+				}
+				for (Iterator<MethodNode> iter = classNode.methods.iterator(); iter.hasNext(); )
+				{
+					final MethodNode method = iter.next();
+					final int methodId = symbols.getMethodId(classNode.name, method.name, method.desc);
+					if (methodId != SymbolTable.MISSING && reachableMethods.get(methodId) == 0)
+					{
+						iter.remove();
+						removedMethodCount++;
+						log.debug("Removed unreachable method: {} {}.{} {}", Modifier.toString(method.access), classNode.name, method.name, method.desc);
+					}
+				}
+			}
+
+			for (ClassEntry classEntry : unreachable)
+			{
+				classEntries.remove(classEntry);
+				removedClassCount++;
+				log.debug("Removed unreachable class: {}", classEntry.getName());
+			}
+
+			// Drop attributes naming removed classes or methods
+			for (ClassNode classNode : jarEntryGroup.getClassNodes())
+			{
+				if (classNode.innerClasses != null)
+				{
+					classNode.innerClasses.removeIf(inner -> isRemoved(inner.name) || isRemoved(inner.outerName));
+				}
+				if (classNode.nestMembers != null)
+				{
+					classNode.nestMembers.removeIf(this::isRemoved);
+				}
+				if (classNode.permittedSubclasses != null)
+				{
+					classNode.permittedSubclasses.removeIf(this::isRemoved);
+				}
+				if (isRemoved(classNode.nestHostClass))
+				{
+					classNode.nestHostClass = null;
+				}
+				if (classNode.outerClass != null)
+				{
+					if (isRemoved(classNode.outerClass))
+					{
+						classNode.outerClass = null;
+						classNode.outerMethod = null;
+						classNode.outerMethodDesc = null;
+					}
+					else if (classNode.outerMethod != null)
+					{
+						final int methodId = symbols.getMethodId(classNode.outerClass, classNode.outerMethod, classNode.outerMethodDesc);
+						if (methodId != SymbolTable.MISSING && reachableMethods.get(methodId) == 0)
+						{
+							classNode.outerMethod = null;
+							classNode.outerMethodDesc = null;
+						}
+					}
+				}
+			}
+		}
+
+		private boolean isRemoved(String name)
+		{
+			return name != null && symbols.getClassId(name) != SymbolTable.MISSING && !reachableClasses.contains(name);
+		}
+
+		private void keepAll(ClassNode classNode)
+		{
+			markClass(classNode.name);
+			classNode.fields.forEach(field -> markField(classNode.name, field.name, field.desc));
+			classNode.methods.forEach(method -> markMethod(classNode.name, method));
+		}
+
+		private void markClass(String name)
+		{
+			final ClassEntry classEntry = classEntries.get(name);
+			if (classEntry != null && reachableClasses.add(name))
+			{
+				pending.add(() -> visitClass(classEntry.getNode()));
+			}
+		}
+
+		private void markClassName(String name)
+		{
+			if (name.startsWith("["))
+			{
+				markType(Type.getType(name));
+			}
+			else
+			{
+				markClass(name);
+			}
+		}
+
+		private void markType(Type type)
+		{
+			switch (type.getSort())
+			{
+				case Type.ARRAY:
+					markType(type.getElementType());
+					break;
+				case Type.OBJECT:
+					markClass(type.getInternalName());
+					break;
+				case Type.METHOD:
+					for (Type argument : type.getArgumentTypes())
+					{
+						markType(argument);
+					}
+					markType(type.getReturnType());
+					break;
+				default:
+					break;
+			}
+		}
+
+		private void markField(String owner, String name, String desc)
+		{
+			final int fieldId = symbols.getFieldId(owner, name, desc);
+			if (fieldId != SymbolTable.MISSING && reachableFields.compareAndSet(fieldId, 0, 1))
+			{
+				final FieldNode field = fields[fieldId];
+				markClass(owner);
+				markType(Type.getType(field.desc));
+				markAnnotations(field.visibleAnnotations);
+				markAnnotations(field.invisibleAnnotations);
+			}
+		}
+
+		private void markMethod(String owner, MethodNode method)
+		{
+			final int methodId = symbols.getMethodId(owner, method.name, method.desc);
+			final boolean added = methodId != SymbolTable.MISSING
+				? reachableMethods.compareAndSet(methodId, 0, 1)
+				: reachableUnindexed.add(method);
+			if (added)
+			{
+				markClass(owner);
+				pending.add(() -> visitMethod(method));
+			}
+		}
+
+		private void markMethodId(int methodId)
+		{
+			if (methodId != SymbolTable.MISSING && methods[methodId] != null)
+			{
+				markMethod(methodOwners[methodId], methods[methodId]);
+			}
+		}
+
+		private void visitClass(ClassNode classNode)
+		{
+			if (classNode.superName != null)
+			{
+				markClass(classNode.superName);
+			}
+			classNode.interfaces.forEach(this::markClass);
+			markAnnotations(classNode.visibleAnnotations);
+			markAnnotations(classNode.invisibleAnnotations);
+
+			final boolean annotation = (classNode.access & Opcodes.ACC_ANNOTATION) != 0;
+			final boolean enumeration = (classNode.access & Opcodes.ACC_ENUM) != 0;
+			final boolean serializable = hierarchy.isAssignableFrom("java/io/Serializable", classNode.name);
+			for (MethodNode method : classNode.methods)
+			{
+				final int methodId = symbols.getMethodId(classNode.name, method.name, method.desc);
+				if (method.name.equals("<clinit>")
+					|| methodId == SymbolTable.MISSING
+					|| annotation
+					|| (enumeration && (method.name.equals("values") || method.name.equals("valueOf")))
+					|| (serializable && isSerializationMethod(method.name)))
+				{
+					markMethod(classNode.name, method);
+				}
+			}
+			for (FieldNode field : classNode.fields)
+			{
+				if (symbols.getFieldId(classNode.name, field.name, field.desc) == SymbolTable.MISSING
+					|| (serializable && (field.name.equals("serialVersionUID") || field.name.equals("serialPersistentFields"))))
+				{
+					markField(classNode.name, field.name, field.desc);
+				}
+			}
+
+			// Calls dispatched to a super type, and library methods this class may override
+			for (String superType : getAllSuperTypes(classNode.name))
+			{
+				final Set<String> signatures = dispatched.get(superType);
+				if (signatures != null)
+				{
+					signatures.forEach(signature -> dispatch(classNode.name, signature));
+				}
+				if (!superType.equals(classNode.name))
+				{
+					markLibraryOverrides(classNode, superType);
+				}
+			}
+		}
+
+		private void markLibraryOverrides(ClassNode classNode, String library)
+		{
+			if (classEntries.get(library) != null)
+			{
+				return;
+			}
+
+			final Set<String> signatures = getLibraryMethods(library);
+			for (MethodNode method : classNode.methods)
+			{
+				if ((method.access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0
+					&& !method.name.startsWith("<")
+					&& (signatures == null || signatures.contains(method.name + method.desc)))
+				{
+					markMethod(classNode.name, method);
+				}
+			}
+		}
+
+		private void visitMethod(MethodNode method)
+		{
+			markType(Type.getMethodType(method.desc));
+			if (method.exceptions != null)
+			{
+				method.exceptions.forEach(this::markClass);
+			}
+			markAnnotations(method.visibleAnnotations);
+			markAnnotations(method.invisibleAnnotations);
+			markParameterAnnotations(method.visibleParameterAnnotations);
+			markParameterAnnotations(method.invisibleParameterAnnotations);
+			if (method.tryCatchBlocks != null)
+			{
+				for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks)
+				{
+					if (tryCatchBlock.type != null)
+					{
+						markClass(tryCatchBlock.type);
+					}
+				}
+			}
+
+			for (AbstractInsnNode insn : method.instructions)
+			{
+				switch (insn.getType())
+				{
+					case AbstractInsnNode.FIELD_INSN:
+					{
+						final FieldInsnNode fin = (FieldInsnNode) insn;
+						markClassName(fin.owner);
+						markType(Type.getType(fin.desc));
+						resolveField(fin.owner, fin.name, fin.desc);
+						break;
+					}
+					case AbstractInsnNode.METHOD_INSN:
+					{
+						final MethodInsnNode min = (MethodInsnNode) insn;
+						markClassName(min.owner);
+						markType(Type.getMethodType(min.desc));
+						final boolean virtual = min.getOpcode() == Opcodes.INVOKEVIRTUAL || min.getOpcode() == Opcodes.INVOKEINTERFACE;
+						resolveMethod(min.owner, min.name, min.desc, virtual);
+						break;
+					}
+					case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+					{
+						final InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+						markType(Type.getMethodType(indy.desc));
+						markHandle(indy.bsm);
+						for (Object arg : indy.bsmArgs)
+						{
+							markConstant(arg);
+						}
+						break;
+					}
+					case AbstractInsnNode.TYPE_INSN:
+						markClassName(((TypeInsnNode) insn).desc);
+						break;
+					case AbstractInsnNode.LDC_INSN:
+						markConstant(((LdcInsnNode) insn).cst);
+						break;
+					case AbstractInsnNode.MULTIANEWARRAY_INSN:
+						markType(Type.getType(((MultiANewArrayInsnNode) insn).desc));
+						break;
+					case AbstractInsnNode.FRAME:
+					{
+						final FrameNode frame = (FrameNode) insn;
+						markFrameTypes(frame.local);
+						markFrameTypes(frame.stack);
+						break;
+					}
+					default:
+						break;
+				}
+			}
+		}
+
+		private void markConstant(Object constant)
+		{
+			if (constant instanceof Type)
+			{
+				markType((Type) constant);
+			}
+			else if (constant instanceof Handle)
+			{
+				markHandle((Handle) constant);
+			}
+			else if (constant instanceof String)
+			{
+				// Likely loaded by reflection
+				final ClassEntry classEntry = classEntries.get(((String) constant).replace('.', '/'));
+				if (classEntry != null)
+				{
+					pending.add(() -> keepAll(classEntry.getNode()));
+				}
+			}
+		}
+
+		private void markHandle(Handle handle)
+		{
+			markClass(handle.getOwner());
+			if (handle.getTag() <= Opcodes.H_PUTSTATIC)
+			{
+				markType(Type.getType(handle.getDesc()));
+				resolveField(handle.getOwner(), handle.getName(), handle.getDesc());
+			}
+			else
+			{
+				markType(Type.getMethodType(handle.getDesc()));
+				final boolean virtual = handle.getTag() == Opcodes.H_INVOKEVIRTUAL || handle.getTag() == Opcodes.H_INVOKEINTERFACE;
+				resolveMethod(handle.getOwner(), handle.getName(), handle.getDesc(), virtual);
+			}
+		}
+
+		private void markFrameTypes(List<Object> types)
+		{
+			if (types != null)
+			{
+				for (Object type : types)
+				{
+					if (type instanceof String)
+					{
+						markClassName((String) type);
+					}
+				}
+			}
+		}
+
+		private void markAnnotations(List<AnnotationNode> annotations)
+		{
+			if (annotations != null)
+			{
+				for (AnnotationNode annotation : annotations)
+				{
+					markType(Type.getType(annotation.desc));
+					markAnnotationValues(annotation.values);
+				}
+			}
+		}
+
+		private void markParameterAnnotations(List<AnnotationNode>[] parameterAnnotations)
+		{
+			if (parameterAnnotations != null)
+			{
+				for (List<AnnotationNode> annotations : parameterAnnotations)
+				{
+					markAnnotations(annotations);
+				}
+			}
+		}
+
+		private void markAnnotationValues(List<Object> values)
+		{
+			if (values == null)
+			{
+				return;
+			}
+
+			for (Object value : values)
+			{
+				if (value instanceof Type)
+				{
+					markType((Type) value);
+				}
+				else if (value instanceof String[])
+				{
+					// Enum constant as descriptor and name
+					markType(Type.getType(((String[]) value)[0]));
+				}
+				else if (value instanceof AnnotationNode)
+				{
+					markAnnotations(Collections.singletonList((AnnotationNode) value));
+				}
+				else if (value instanceof List)
+				{
+					@SuppressWarnings("unchecked")
+					final List<Object> list = (List<Object>) value;
+					markAnnotationValues(list);
+				}
+			}
+		}
+
+		/**
+		 * Mark the field a reference resolves to, conservatively every match among the super types
+		 */
+		private void resolveField(String owner, String name, String desc)
+		{
+			for (String type : getAllSuperTypes(owner))
+			{
+				final int fieldId = symbols.getFieldId(type, name, desc);
+				if (fieldId != SymbolTable.MISSING)
+				{
+					markField(type, name, desc);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Mark the method a reference resolves to, and for virtual calls every
+		 * implementation in the reachable sub types
+		 */
+		private void resolveMethod(String owner, String name, String desc, boolean virtual)
+		{
+			boolean found = false;
+			for (String type : getAllSuperTypes(owner))
+			{
+				final int methodId = symbols.getMethodId(type, name, desc);
+				if (methodId != SymbolTable.MISSING)
+				{
+					markMethodId(methodId);
+					found = true;
+					if (!hierarchy.isInterface(type))
+					{
+						break;
+					}
+				}
+			}
+
+			if (!virtual || owner.startsWith("["))
+			{
+				return;
+			}
+
+			final String signature = name + desc;
+			if (dispatched.computeIfAbsent(owner, key -> ConcurrentHashMap.newKeySet()).add(signature))
+			{
+				for (String subType : hierarchy.getAllSubTypes(owner))
+				{
+					if (reachableClasses.contains(subType))
+					{
+						dispatch(subType, signature);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Mark the implementation a virtual call runs for instances of a class
+		 */
+		private void dispatch(String type, String signature)
+		{
+			final int split = signature.indexOf('(');
+			final String name = signature.substring(0, split);
+			final String desc = signature.substring(split);
+			for (String ancestor = type; ancestor != null && classEntries.get(ancestor) != null; ancestor = hierarchy.getSuperName(ancestor))
+			{
+				final int methodId = symbols.getMethodId(ancestor, name, desc);
+				if (methodId != SymbolTable.MISSING)
+				{
+					markMethodId(methodId);
+					return;
+				}
+			}
+
+			// Default methods
+			for (String superType : getAllSuperTypes(type))
+			{
+				if (hierarchy.isInterface(superType))
+				{
+					markMethodId(symbols.getMethodId(superType, name, desc));
+				}
+			}
+		}
+
+		private Set<String> getLibraryMethods(String name)
+		{
+			final Set<String> signatures = libraryMethods.computeIfAbsent(name, key ->
+			{
+				final byte[] classFile = classPath.getClassFile(key);
+				if (classFile == null)
+				{
+					return UNKNOWN;
+				}
+
+				final Set<String> result = new HashSet<>();
+				try
+				{
+					new ClassReader(classFile).accept(new ClassVisitor(Opcodes.ASM9)
+					{
+						@Override
+						public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
+						{
+							if ((access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0)
+							{
+								result.add(name + descriptor);
+							}
+							return null;
+						}
+					}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+					return result;
+				}
+				catch (RuntimeException e)
+				{
+					// e.g. a class file newer than ASM supports
+					log.warn("Failed to read library class: {}, treating its methods as unknown", key, e);
+					return UNKNOWN;
+				}
+			});
+
+			// Unknown library classes may declare anything
+			return signatures == UNKNOWN ? null : signatures;
+		}
+
+		/**
+		 * @return the type itself and every super class and interface, directly or not
+		 */
+		private List<String> getAllSuperTypes(String name)
+		{
+			final List<String> superTypes = new ArrayList<>();
+			final Set<String> seen = new HashSet<>();
+			final Deque<String> queue = new ArrayDeque<>();
+			queue.add(name);
+			while (!queue.isEmpty())
+			{
+				final String type = queue.poll();
+				if (seen.add(type))
+				{
+					superTypes.add(type);
+					queue.addAll(hierarchy.getSuperTypes(type));
+				}
+			}
+			return superTypes;
+		}
+	}
+
+	private static boolean isSerializationMethod(String name)
+	{
+		return name.equals("writeObject")
+			|| name.equals("readObject")
+			|| name.equals("readObjectNoData")
+			|| name.equals("writeReplace")
+			|| name.equals("readResolve");
+	}
+
+	/**
+	 * A root pattern
+	 */
+	private static class Root
+	{
+		private final String annotation;
+		private final Pattern classPattern;
+		private final Pattern namePattern;
+		private final Pattern descPattern;
+
+		private Root(String annotation, Pattern classPattern, Pattern namePattern, Pattern descPattern)
+		{
+			this.annotation = annotation;
+			this.classPattern = classPattern;
+			this.namePattern = namePattern;
+			this.descPattern = descPattern;
+		}
+
+		private static Root parse(String root)
+		{
+			if (root.startsWith("@"))
+			{
+				return new Root(root.substring(1), null, null, null);
+			}
+
+			final String[] parts = root.split("#", 3);
+			return new Root(null,
+				glob(parts[0].replace('.', '/'), true),
+				parts.length > 1 ? glob(parts[1], false) : null,
+				parts.length > 2 ? glob(parts[2], false) : null);
+		}
+
+		/**
+		 * @return true if the class is kept with all of its members
+		 */
+		private boolean keepsClass(ClassNode classNode)
+		{
+			if (annotation != null)
+			{
+				return hasAnnotation(classNode.visibleAnnotations) || hasAnnotation(classNode.invisibleAnnotations);
+			}
+			return namePattern == null && classPattern.matcher(classNode.name).matches();
+		}
+
+		/**
+		 * @return true if members of the class may be roots
+		 */
+		private boolean matchesClass(ClassNode classNode)
+		{
+			return annotation != null || classPattern.matcher(classNode.name).matches();
+		}
+
+		private boolean matches(String name, String desc, List<AnnotationNode> visible, List<AnnotationNode> invisible)
+		{
+			if (annotation != null)
+			{
+				return hasAnnotation(visible) || hasAnnotation(invisible);
+			}
+			return namePattern.matcher(name).matches() && (descPattern == null || descPattern.matcher(desc).matches());
+		}
+
+		private boolean hasAnnotation(List<AnnotationNode> annotations)
+		{
+			if (annotations != null)
+			{
+				for (AnnotationNode node : annotations)
+				{
+					if (node.desc.equals(annotation))
+					{
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		private boolean mayMatch(ClassEntry classEntry)
+		{
+			if (annotation != null)
+			{
+				final byte[] classFile = classEntry.getClassFileBuffer();
+				if (classFile == null)
+				{
+					final ClassNode classNode = classEntry.getNode();
+					if (keepsClass(classNode))
+					{
+						return true;
+					}
+					for (FieldNode field : classNode.fields)
+					{
+						if (matches(field.name, field.desc, field.visibleAnnotations, field.invisibleAnnotations))
+						{
+							return true;
+						}
+					}
+					for (MethodNode method : classNode.methods)
+					{
+						if (matches(method.name, method.desc, method.visibleAnnotations, method.invisibleAnnotations))
+						{
+							return true;
+						}
+					}
+					return false;
+				}
+
+				// Only the constant pool is searched, a hit may not be an annotation
+				return containsUtf8(classFile, annotation);
+			}
+
+			if (!classPattern.matcher(classEntry.getName()).matches())
+			{
+				return false;
+			}
+			if (namePattern == null)
+			{
+				return true;
+			}
+			for (ClassEntry.Member member : classEntry.getFields())
+			{
+				if (matches(member.getName(), member.getDesc(), null, null))
+				{
+					return true;
+				}
+			}
+			for (ClassEntry.Member member : classEntry.getMethods())
+			{
+				if (matches(member.getName(), member.getDesc(), null, null))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return true if the class file has the ASCII string as a length prefixed constant
+		 */
+		private static boolean containsUtf8(byte[] classFile, String value)
+		{
+			final int length = value.length();
+			for (int i = 0; i + 2 + length <= classFile.length; i++)
+			{
+				if ((classFile[i] & 0xFF) != (length >>> 8) || (classFile[i + 1] & 0xFF) != (length & 0xFF))
+				{
+					continue;
+				}
+
+				int j = 0;
+				while (j < length && classFile[i + 2 + j] == value.charAt(j))
+				{
+					j++;
+				}
+				if (j == length)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @param glob, with * and, in class patterns, ** across packages
+		 * @param classes, true if * stops at package separators
+		 */
+		private static Pattern glob(String glob, boolean classes)
+		{
+			final StringBuilder regex = new StringBuilder();
+			for (int i = 0; i < glob.length(); i++)
+			{
+				final char c = glob.charAt(i);
+				if (c == '*')
+				{
+					if (i + 1 < glob.length() && glob.charAt(i + 1) == '*')
+					{
+						regex.append(".*");
+						i++;
+					}
+					else
+					{
+						regex.append(classes ? "[^/]*" : ".*");
+					}
+				}
+				else
+				{
+					regex.append(Pattern.quote(String.valueOf(c)));
+				}
+			}
+			return Pattern.compile(regex.toString());
+		}
+	}
+}
@@ -25,44 +25,79 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
 import net.melxin.asm.transformer.JarEntryTransformer;
 import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
+import net.melxin.asm.transformer.pass.InstructionHandler;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.JumpInsnNode;
 import org.objectweb.asm.tree.MethodNode;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class RedundantGotoRemover implements JarEntryTransformer
+public class RedundantGotoRemover implements JarEntryTransformer, InstructionHandler
 {
-	private int removedGotoCount;
+	private final AtomicInteger removedGotoCount = new AtomicInteger();
+
+	// Count at the last completed run, each run logs only its own changes
+	private int loggedGotoCount;
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
 
 	@Override
 	public void transform(JarEntryGroup jarEntryGroup)
 	{
-		for (ClassNode classNode : jarEntryGroup.getClassNodes())
+		new FusedInstructionPass(this).transform(jarEntryGroup);
+	}
+
+	@Override
+	public int[] getOpcodes()
+	{
+		return new int[]{Opcodes.GOTO};
+	}
+
+	@Override
+	public boolean visitInsn(ClassNode classNode, MethodNode method, AbstractInsnNode insn)
+	{
+		final JumpInsnNode jumpInsn = (JumpInsnNode) insn;
+		final AbstractInsnNode labelInsn = jumpInsn.label;
+		final AbstractInsnNode nextInsn = insn.getNext();
+		if (labelInsn.equals(nextInsn))
 		{
-			for (MethodNode method : classNode.methods)
-			{
-				final AbstractInsnNode[] instructions = method.instructions.toArray();
-				for (AbstractInsnNode insn : instructions)
-				{
-					if (insn.getOpcode() == Opcodes.GOTO)
-					{
-						final JumpInsnNode jumpInsn = (JumpInsnNode) insn;
-						final AbstractInsnNode labelInsn = jumpInsn.label;
-						final AbstractInsnNode nextInsn = insn.getNext();
-						if (labelInsn.equals(nextInsn))
-						{
-							// Remove the GOTO
-							method.instructions.remove(insn);
-							removedGotoCount++;
-						}
-					}
-				}
-			}
+			// Remove the GOTO
+			method.instructions.remove(insn);
+			removedGotoCount.incrementAndGet();
+			return true;
 		}
-		log.info("Removed: {} redundant GOTO jumps", removedGotoCount);
+		return false;
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedGotoCount.get();
+	}
+
+	@Override
+	public void complete()
+	{
+		final int removed = removedGotoCount.get();
+		log.info("Removed: {} redundant GOTO jumps", removed - loggedGotoCount);
+		loggedGotoCount = removed;
 	}
 }
\ No newline at end of file
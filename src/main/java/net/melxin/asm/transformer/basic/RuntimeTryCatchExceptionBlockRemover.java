@@ -25,47 +25,175 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
-import net.melxin.asm.transformer.JarEntryTransformer;
+import net.melxin.asm.transformer.Aspect;
 import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.StreamingTransformer;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
+import net.melxin.asm.transformer.pass.InstructionHandler;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.TypeReference;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TryCatchBlockNode;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class RuntimeTryCatchExceptionBlockRemover implements JarEntryTransformer
+public class RuntimeTryCatchExceptionBlockRemover implements StreamingTransformer, InstructionHandler
 {
-	private int removedRuntimeExceptionTryCatchBlockCount;
+	private static final String runtimeExceptionName = Type.getInternalName(RuntimeException.class);
+
+	private final AtomicInteger removedRuntimeExceptionTryCatchBlockCount = new AtomicInteger();
+
+	// Count at the last completed run, each run logs only its own changes
+	private int loggedTryCatchBlockCount;
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.MEMBERS, Aspect.INSTRUCTIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
 
 	@Override
 	public void transform(JarEntryGroup jarEntryGroup)
 	{
-		for (ClassNode classNode : jarEntryGroup.getClassNodes())
+		new FusedInstructionPass(this).transform(jarEntryGroup);
+	}
+
+	@Override
+	public boolean transform(ClassNode classNode)
+	{
+		boolean changed = false;
+		for (MethodNode method : classNode.methods)
+		{
+			changed |= visitMethod(classNode, method);
+		}
+		return changed;
+	}
+
+	@Override
+	public ClassVisitor adapt(ClassVisitor next)
+	{
+		return new ClassVisitor(Opcodes.ASM9, next)
 		{
-			for (MethodNode method : classNode.methods)
+			private String className;
+
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
+			{
+				className = name;
+				super.visit(version, access, name, signature, superName, interfaces);
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
 			{
-				// Keep one handler in the client so the deobfuscator
-				// keeps the client error handling related methods
-				if (classNode.name.equals("client") && method.name.equals("init"))
+				final MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+				if (mv == null || isKept(className, name))
 				{
-					continue;
+					return mv;
 				}
 
-				if (method.tryCatchBlocks != null)
+				return new MethodVisitor(Opcodes.ASM9, mv)
 				{
-					for (ListIterator<TryCatchBlockNode> iter = method.tryCatchBlocks.listIterator(); iter.hasNext(); )
+					// New index of each visited try catch block, -1 when removed
+					private final List<Integer> newIndices = new ArrayList<>();
+					private int keptCount;
+
+					@Override
+					public void visitTryCatchBlock(Label start, Label end, Label handler, String type)
+					{
+						if (runtimeExceptionName.equals(type))
+						{
+							newIndices.add(-1);
+							removedRuntimeExceptionTryCatchBlockCount.incrementAndGet();
+							return;
+						}
+						newIndices.add(keptCount++);
+						super.visitTryCatchBlock(start, end, handler, type);
+					}
+
+					/**
+					 * All try catch blocks are visited before the annotations,
+					 * which refer to them by index
+					 */
+					@Override
+					public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible)
 					{
-						final TryCatchBlockNode tcbn = iter.next();
-						if (tcbn.type != null && tcbn.type.equals(Type.getInternalName(RuntimeException.class)))
+						final int index = new TypeReference(typeRef).getTryCatchBlockIndex();
+						final int newIndex = index < newIndices.size() ? newIndices.get(index) : index;
+						if (newIndex < 0)
 						{
-							iter.remove();
-							removedRuntimeExceptionTryCatchBlockCount++;
+							return null;
 						}
+						return super.visitTryCatchAnnotation(TypeReference.newTryCatchReference(newIndex).getValue(), typePath, descriptor, visible);
 					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public boolean visitMethod(ClassNode classNode, MethodNode method)
+	{
+		if (isKept(classNode.name, method.name))
+		{
+			return false;
+		}
+
+		boolean changed = false;
+		if (method.tryCatchBlocks != null)
+		{
+			for (ListIterator<TryCatchBlockNode> iter = method.tryCatchBlocks.listIterator(); iter.hasNext(); )
+			{
+				final TryCatchBlockNode tcbn = iter.next();
+				if (runtimeExceptionName.equals(tcbn.type))
+				{
+					iter.remove();
+					removedRuntimeExceptionTryCatchBlockCount.incrementAndGet();
+					changed = true;
 				}
 			}
 		}
-		log.info("Removed: {} RuntimeException try catch blocks", removedRuntimeExceptionTryCatchBlockCount);
+		return changed;
+	}
+
+	/**
+	 * Keep one handler in the client so the deobfuscator
+	 * keeps the client error handling related methods
+	 */
+	private static boolean isKept(String className, String methodName)
+	{
+		return className.equals("client") && methodName.equals("init");
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedRuntimeExceptionTryCatchBlockCount.get();
+	}
+
+	@Override
+	public void complete()
+	{
+		final int removed = removedRuntimeExceptionTryCatchBlockCount.get();
+		log.info("Removed: {} RuntimeException try catch blocks", removed - loggedTryCatchBlockCount);
+		loggedTryCatchBlockCount = removed;
 	}
 }
\ No newline at end of file
@@ -24,26 +24,103 @@
  */
 package net.melxin.asm.transformer.basic;
 
-import net.melxin.asm.transformer.JarEntryTransformer;
-import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.Aspect;
+import net.melxin.asm.transformer.ClassEntry;
+import net.melxin.asm.transformer.StreamingTransformer;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
-public class SortMembersByName implements JarEntryTransformer
+public class SortMembersByName implements StreamingTransformer
 {
 	@Override
-	public void transform(JarEntryGroup jarEntryGroup)
+	public boolean accepts(ClassEntry classEntry)
 	{
-		for (ClassNode classNode : jarEntryGroup.getClassNodes())
+		// Skip classes that are already sorted without building their tree
+		return !isSorted(classEntry.getFields()) || !isSorted(classEntry.getMethods());
+	}
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.MEMBERS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.MEMBERS);
+	}
+
+	@Override
+	public boolean transform(ClassNode classNode)
+	{
+		if (classNode.fields != null)
 		{
-			if (classNode.fields != null)
+			classNode.fields.sort(Comparator.comparing(f -> f.name));
+		}
+		if (classNode.methods != null)
+		{
+			classNode.methods.sort(Comparator.comparing(m -> m.name));
+		}
+		return true;
+	}
+
+	@Override
+	public ClassVisitor adapt(ClassVisitor next)
+	{
+		// Only the members of the current class are buffered, they are replayed sorted at the end
+		return new ClassVisitor(Opcodes.ASM9, next)
+		{
+			private final List<FieldNode> fields = new ArrayList<>();
+			private final List<MethodNode> methods = new ArrayList<>();
+
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value)
+			{
+				final FieldNode field = new FieldNode(Opcodes.ASM9, access, name, descriptor, signature, value);
+				fields.add(field);
+				return field;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
 			{
-				classNode.fields.sort(Comparator.comparing(f -> f.name));
+				final MethodNode method = new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions);
+				methods.add(method);
+				return method;
 			}
-			if (classNode.methods != null)
+
+			@Override
+			public void visitEnd()
+			{
+				fields.sort(Comparator.comparing(f -> f.name));
+				methods.sort(Comparator.comparing(m -> m.name));
+				fields.forEach(field -> field.accept(cv));
+				methods.forEach(method -> method.accept(cv));
+				super.visitEnd();
+			}
+		};
+	}
+
+	private static boolean isSorted(List<ClassEntry.Member> members)
+	{
+		for (int i = 1; i < members.size(); i++)
+		{
+			if (members.get(i - 1).getName().compareTo(members.get(i).getName()) > 0)
 			{
-				classNode.methods.sort(Comparator.comparing(m -> m.name));
+				return false;
 			}
 		}
+		return true;
 	}
 }
\ No newline at end of file
@@ -25,54 +25,214 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
-import net.melxin.asm.transformer.JarEntryTransformer;
-import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.Aspect;
+import net.melxin.asm.transformer.ClassTransformer;
+import net.melxin.asm.transformer.analysis.AnalysisBudget;
+import net.melxin.asm.transformer.analysis.AnalysisBudgetExceededException;
+import net.melxin.asm.transformer.analysis.MethodAnalysis;
+import net.melxin.asm.transformer.analysis.Reachability;
+import net.melxin.asm.transformer.jfr.MethodAnalysisEvent;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.tree.analysis.Analyzer;
 import org.objectweb.asm.tree.analysis.AnalyzerException;
-import org.objectweb.asm.tree.analysis.BasicInterpreter;
 import org.objectweb.asm.tree.analysis.BasicValue;
 import org.objectweb.asm.tree.analysis.Frame;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class UnreachableInstructionRemover implements JarEntryTransformer
+public class UnreachableInstructionRemover implements ClassTransformer
 {
-	private int removedInstructionsCount;
+	private final AtomicInteger removedInstructionsCount = new AtomicInteger();
+
+	// Count at the last completed run, each run logs only its own changes
+	private int loggedInstructionsCount;
+
+	// Limits of the analysis of each method
+	private final AnalysisBudget budget;
+
+	public UnreachableInstructionRemover()
+	{
+		this(AnalysisBudget.UNLIMITED);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param budget, the limits of the analysis of each method, methods over them are recorded with it and left as they are
+	 */
+	public UnreachableInstructionRemover(AnalysisBudget budget)
+	{
+		this.budget = budget;
+	}
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.INSTRUCTIONS);
+	}
 
 	@Override
-	public void transform(JarEntryGroup jarEntryGroup)
+	public boolean transform(ClassNode classNode)
 	{
-		for (ClassNode classNode : jarEntryGroup.getClassNodes())
+		boolean changed = false;
+		for (MethodNode method : classNode.methods)
 		{
-			for (MethodNode method : classNode.methods)
+			final MethodAnalysisEvent event = new MethodAnalysisEvent();
+			event.begin();
+			final int instructionCount = method.instructions.size();
+			final boolean[] reachable;
+			try
 			{
-				final AbstractInsnNode[] instructions = method.instructions.toArray();
-				final Frame<BasicValue>[] frames;
-				try
+				// Analyze control flow
+				reachable = findReachable(classNode.name, method);
+			}
+			catch (AnalysisBudgetExceededException e)
+			{
+				budget.record("UnreachableInstructionRemover", classNode.name, method, e, "skipped");
+				event.budgetExceeded = true;
+				commit(event, classNode, method, instructionCount);
+				continue;
+			}
+			catch (AnalyzerException e)
+			{
+				log.error("Method: {}.{}{} failed analysis, skipped", classNode.name, method.name, method.desc, e);
+				event.failed = true;
+				commit(event, classNode, method, instructionCount);
+				continue;
+			}
+
+			AbstractInsnNode insn = method.instructions.getFirst();
+			for (int i = 0; insn != null; i++)
+			{
+				final AbstractInsnNode next = insn.getNext();
+				if (!reachable[i])
 				{
-					// Analyze control flow
-					frames = new Analyzer<>(new BasicInterpreter()).analyze(classNode.name, method);
+					// Remove instruction
+					method.instructions.remove(insn);
+					removedInstructionsCount.incrementAndGet();
+					event.removedInstructions++;
+					changed = true;
 				}
-				catch (AnalyzerException e)
+				insn = next;
+			}
+			commit(event, classNode, method, instructionCount);
+		}
+		return changed;
+	}
+
+	/**
+	 * Find the reachable instructions from the control flow, methods with subroutines
+	 * fall back to the frames of a full data flow analysis. When that analysis is over
+	 * the budget the blocks reached in the control flow graph are kept, where RET
+	 * may return after any JSR, which keeps a superset of the reachable instructions.
+	 *
+	 * @param owner
+	 * @param method
+	 * @return whether each instruction is reachable, by index
+	 * @throws AnalyzerException, or {@link AnalysisBudgetExceededException} if the control flow is over the budget
+	 */
+	private boolean[] findReachable(String owner, MethodNode method) throws AnalyzerException
+	{
+		final boolean[] reachable = Reachability.compute(method, budget);
+		if (reachable != null)
+		{
+			return reachable;
+		}
+
+		final MethodAnalysis analysis = new MethodAnalysis(owner, method);
+		final Frame<BasicValue>[] frames;
+		try
+		{
+			frames = analysis.getFrames(budget);
+		}
+		catch (AnalysisBudgetExceededException e)
+		{
+			budget.record("UnreachableInstructionRemover", owner, method, e, "control flow graph");
+			return findReachableBlocks(analysis);
+		}
+		final boolean[] framed = new boolean[frames.length];
+		for (int i = 0; i < frames.length; i++)
+		{
+			framed[i] = frames[i] != null;
+		}
+		return framed;
+	}
+
+	private static boolean[] findReachableBlocks(MethodAnalysis analysis)
+	{
+		final int blockCount = analysis.getBlockCount();
+		final boolean[] reached = new boolean[blockCount];
+		final int[] worklist = new int[blockCount];
+		int size = 0;
+		reached[0] = true;
+		worklist[size++] = 0;
+		while (size > 0)
+		{
+			final int block = worklist[--size];
+			for (int successor : analysis.getSuccessors(block))
+			{
+				if (!reached[successor])
 				{
-					log.error("", e);
-					continue;
+					reached[successor] = true;
+					worklist[size++] = successor;
 				}
-
-				for (int i = 0; i < frames.length; i++)
+			}
+			for (int successor : analysis.getExceptionSuccessors(block))
+			{
+				if (!reached[successor])
 				{
-					if (frames[i] == null)
-					{
-						// Remove instruction
-						final AbstractInsnNode insn = instructions[i];
-						method.instructions.remove(insn);
-						removedInstructionsCount++;
-					}
+					reached[successor] = true;
+					worklist[size++] = successor;
 				}
 			}
 		}
-		log.info("Removed: {} unreachable instructions", removedInstructionsCount);
+
+		final boolean[] reachable = new boolean[analysis.getInstructionCount()];
+		for (int block = 0; block < blockCount; block++)
+		{
+			if (reached[block])
+			{
+				Arrays.fill(reachable, analysis.getBlockStart(block), analysis.getBlockEnd(block), true);
+			}
+		}
+		return reachable;
+	}
+
+	private static void commit(MethodAnalysisEvent event, ClassNode classNode, MethodNode method, int instructionCount)
+	{
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.analysis = "UnreachableInstructionRemover";
+			event.className = classNode.name;
+			event.methodName = method.name;
+			event.methodDescriptor = method.desc;
+			event.instructionCount = instructionCount;
+			event.commit();
+		}
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedInstructionsCount.get();
+	}
+
+	@Override
+	public void complete()
+	{
+		final int removed = removedInstructionsCount.get();
+		log.info("Removed: {} unreachable instructions", removed - loggedInstructionsCount);
+		loggedInstructionsCount = removed;
 	}
 }
\ No newline at end of file
@@ -25,96 +25,93 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
+import net.melxin.asm.transformer.ClassEntry;
+import net.melxin.asm.transformer.ClassHierarchy;
+import net.melxin.asm.transformer.ClassReferenceIndex;
+import net.melxin.asm.transformer.ClassRegistry;
 import net.melxin.asm.transformer.JarEntryGroup;
 import net.melxin.asm.transformer.JarEntryTransformer;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldInsnNode;
-import org.objectweb.asm.tree.MethodInsnNode;
-import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.tree.TypeInsnNode;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
 
 @Slf4j
 public class UnusedClassRemover implements JarEntryTransformer
 {
-	private final Set<ClassNode> unused = new HashSet<>();
+	private final Set<ClassEntry> unused = new HashSet<>();
 	private int removedClassCount;
 
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.HIERARCHY, Aspect.MEMBERS, Aspect.INSTRUCTIONS, Aspect.ANNOTATIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.CLASSES, Aspect.HIERARCHY);
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedClassCount;
+	}
+
 	@Override
 	public void transform(JarEntryGroup jarEntryGroup)
 	{
-		final Set<ClassNode> classNodes = jarEntryGroup.getClassNodes();
+		final ClassRegistry classEntries = jarEntryGroup.getClassEntries();
+		final ClassHierarchy hierarchy = jarEntryGroup.getHierarchy();
+		final int previouslyRemoved = removedClassCount;
+		unused.clear();
 
-		// Check for class usages
-		for (ClassNode classNode : classNodes)
+		// The headers are enough to find candidates, references are only indexed once
+		ClassReferenceIndex references = null;
+		for (ClassEntry classEntry : classEntries)
 		{
-			if (!classNode.fields.isEmpty())
+			if (!classEntry.getFields().isEmpty())
 			{
 				continue;
 			}
 
-			if (!classNode.methods.isEmpty())
+			if (!classEntry.getMethods().isEmpty())
 			{
 				continue;
 			}
 
-			if ((classNode.access & Opcodes.ACC_INTERFACE) != 0)
+			if ((classEntry.getAccess() & Opcodes.ACC_INTERFACE) != 0)
 			{
 				continue;
 			}
 
-			if (isImplemented(classNodes, classNode))
+			// Implemented or extended by another class
+			if (!hierarchy.getSubTypes(classEntry.getName()).isEmpty())
 			{
 				continue;
 			}
 
-			unused.add(classNode);
+			if (references == null)
+			{
+				references = ClassReferenceIndex.build(jarEntryGroup.getClassNodes(), jarEntryGroup.getParallelism());
+			}
 
-			for (MethodNode method : classNode.methods)
+			if (!references.isReferenced(classEntry.getName(), classEntries))
 			{
-				for (AbstractInsnNode insn : method.instructions)
-				{
-					if (insn instanceof FieldInsnNode)
-					{
-						final FieldInsnNode fin = (FieldInsnNode) insn;
-						unused.removeIf(x -> x.name.equals(fin.owner));
-					}
-					else if (insn instanceof MethodInsnNode)
-					{
-						final MethodInsnNode min = (MethodInsnNode) insn;
-						unused.removeIf(x -> x.name.equals(min.owner));
-					}
-					else if (insn instanceof TypeInsnNode)
-					{
-						final TypeInsnNode tin = (TypeInsnNode) insn;
-						unused.removeIf(x -> x.name.equals(tin.desc.replace('/', '.')));
-					}
-				}
+				unused.add(classEntry);
 			}
 		}
 
 		// Check if class is unused and remove it
-		for (ClassNode classNode : unused)
+		for (ClassEntry classEntry : unused)
 		{
-			classNodes.remove(classNode);
+			classEntries.remove(classEntry);
 			removedClassCount++;
-			log.debug("Removed unused class: {}", classNode.name);
-		}
-		log.info("Removed: {} unused classes", removedClassCount);
-	}
-
-	private boolean isImplemented(Set<ClassNode> classNodes, ClassNode iface)
-	{
-		for (ClassNode classNode : classNodes)
-		{
-			if (classNode.interfaces.contains(iface.name))
-			{
-				return true;
-			}
+			log.debug("Removed unused class: {}", classEntry.getName());
 		}
-		return false;
+		log.info("Removed: {} unused classes", removedClassCount - previouslyRemoved);
 	}
 }
@@ -25,28 +25,51 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
 import net.melxin.asm.transformer.JarEntryGroup;
 import net.melxin.asm.transformer.JarEntryTransformer;
+import net.melxin.asm.transformer.SymbolTable;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
 import java.lang.reflect.Modifier;
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.BitSet;
 import java.util.ListIterator;
 import java.util.Set;
 
 @Slf4j
 public class UnusedFieldRemover implements JarEntryTransformer
 {
-	private final Set<String> used = new HashSet<>();
 	private int removedFieldCount;
 
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.MEMBERS, Aspect.INSTRUCTIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.MEMBERS);
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedFieldCount;
+	}
+
 	@Override
 	public void transform(JarEntryGroup jarEntryGroup)
 	{
 		final Set<ClassNode> classNodes = jarEntryGroup.getClassNodes();
+		final SymbolTable symbols = jarEntryGroup.getSymbolTable();
+		final BitSet used = new BitSet(symbols.getFieldCount());
+		final int previouslyRemoved = removedFieldCount;
 
 		// Check for field usages
 		for (ClassNode classNode : classNodes)
@@ -58,7 +81,11 @@ public class UnusedFieldRemover implements JarEntryTransformer
 					if (in instanceof FieldInsnNode)
 					{
 						final FieldInsnNode fi = (FieldInsnNode) in;
-						used.add(fi.owner + "#" + fi.name + "#" + fi.desc);
+						final int fieldId = symbols.getFieldId(fi.owner, fi.name, fi.desc);
+						if (fieldId != SymbolTable.MISSING)
+						{
+							used.set(fieldId);
+						}
 					}
 				}
 			}
@@ -70,7 +97,9 @@ public class UnusedFieldRemover implements JarEntryTransformer
 			for (ListIterator<FieldNode> iter = classNode.fields.listIterator(); iter.hasNext(); )
 			{
 				final FieldNode field = iter.next();
-				if (!used.contains(classNode.name + "#" + field.name + "#" + field.desc))
+				// Fields added after loading have no ID and are kept
+				final int fieldId = symbols.getFieldId(classNode.name, field.name, field.desc);
+				if (fieldId != SymbolTable.MISSING && !used.get(fieldId))
 				{
 					iter.remove();
 					removedFieldCount++;
@@ -78,6 +107,10 @@ public class UnusedFieldRemover implements JarEntryTransformer
 				}
 			}
 		}
-		log.info("Removed: {} unused fields", removedFieldCount);
+		if (removedFieldCount != previouslyRemoved)
+		{
+			jarEntryGroup.markModified(Aspect.MEMBERS);
+		}
+		log.info("Removed: {} unused fields", removedFieldCount - previouslyRemoved);
 	}
 }
@@ -25,8 +25,10 @@
 package net.melxin.asm.transformer.basic;
 
 import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.Aspect;
 import net.melxin.asm.transformer.JarEntryGroup;
 import net.melxin.asm.transformer.JarEntryTransformer;
+import net.melxin.asm.transformer.SymbolTable;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
@@ -34,20 +36,41 @@ import org.objectweb.asm.tree.InvokeDynamicInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import java.lang.reflect.Modifier;
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.BitSet;
 import java.util.ListIterator;
 import java.util.Set;
 
 @Slf4j
 public class UnusedMethodRemover implements JarEntryTransformer
 {
-	private final Set<String> used = new HashSet<>();
 	private int removedMethodCount;
 
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.MEMBERS, Aspect.INSTRUCTIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.MEMBERS);
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedMethodCount;
+	}
+
 	@Override
 	public void transform(JarEntryGroup jarEntryGroup)
 	{
 		final Set<ClassNode> classNodes = jarEntryGroup.getClassNodes();
+		final SymbolTable symbols = jarEntryGroup.getSymbolTable();
+		final BitSet used = new BitSet(symbols.getMethodCount());
+		final int previouslyRemoved = removedMethodCount;
 
 		// Check for method usages
 		for (ClassNode classNode : classNodes)
@@ -59,7 +82,7 @@ public class UnusedMethodRemover implements JarEntryTransformer
 					if (insn instanceof MethodInsnNode)
 					{
 						final MethodInsnNode methodInsn = (MethodInsnNode) insn;
-						used.add(methodInsn.owner + "#" + methodInsn.name + "#" + methodInsn.desc);
+						markUsed(symbols, used, methodInsn.owner, methodInsn.name, methodInsn.desc);
 					}
 					else if (insn instanceof InvokeDynamicInsnNode)
 					{
@@ -74,7 +97,7 @@ public class UnusedMethodRemover implements JarEntryTransformer
 								if (arg instanceof Handle)
 								{
 									final Handle handle = (Handle) arg;
-									used.add(handle.getOwner() + "#" + handle.getName() + "#" + handle.getDesc());
+									markUsed(symbols, used, handle.getOwner(), handle.getName(), handle.getDesc());
 									log.debug("Invoke dynamic handle: {}.{} {}", handle.getOwner(), handle.getName(), handle.getDesc());
 								}
 							}
@@ -137,7 +160,9 @@ public class UnusedMethodRemover implements JarEntryTransformer
 					continue;
 				}
 
-				if (!used.contains(classNode.name + "#" + method.name + "#" + method.desc))
+				// Methods added after loading have no ID and are kept
+				final int methodId = symbols.getMethodId(classNode.name, method.name, method.desc);
+				if (methodId != SymbolTable.MISSING && !used.get(methodId))
 				{
 					iter.remove();
 					removedMethodCount++;
@@ -145,6 +170,19 @@ public class UnusedMethodRemover implements JarEntryTransformer
 				}
 			}
 		}
-		log.info("Removed: {} unused methods", removedMethodCount);
+		if (removedMethodCount != previouslyRemoved)
+		{
+			jarEntryGroup.markModified(Aspect.MEMBERS);
+		}
+		log.info("Removed: {} unused methods", removedMethodCount - previouslyRemoved);
+	}
+
+	private static void markUsed(SymbolTable symbols, BitSet used, String owner, String name, String desc)
+	{
+		final int methodId = symbols.getMethodId(owner, name, desc);
+		if (methodId != SymbolTable.MISSING)
+		{
+			used.set(methodId);
+		}
 	}
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import net.melxin.asm.transformer.io.CompressedEntry;
+import net.melxin.asm.transformer.io.JarArchiveWriter;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Writes deterministic jars that look like an obfuscated gamepack, for benchmarks
+ * and scaling tests.
+ * <p>
+ * Classes and members have short generated names. Most classes extend an
+ * earlier class and have:
+ * <ul>
+ * <li>int fields whose reads and writes are scaled by ldc/imul multipliers, with
+ * the constant both before and after the field</li>
+ * <li>methods with an opaque predicate parameter whose check throws a new
+ * IllegalStateException</li>
+ * <li>method bodies wrapped in a RuntimeException handler</li>
+ * <li>dead code after the handler, calls into earlier classes, and fields and
+ * methods that are never used</li>
+ * <li>invisible @javax.inject.Named annotations with the original names</li>
+ * </ul>
+ * Some classes are empty, half of them are referenced by an instanceof check.
+ * <p>
+ * The same class count and seed always give a byte-identical jar.
+ * <p>
+ * Usage: SyntheticJarGenerator &lt;output.jar&gt; &lt;classes&gt; [seed]
+ */
+@Slf4j
+public class SyntheticJarGenerator
+{
+	private static final String NAMED = "Ljavax/inject/Named;";
+	private static final int FIELDS = 4;
+	private static final int METHODS = 6;
+
+	private final int classCount;
+	private final long seed;
+
+	/**
+	 * Constructor
+	 *
+	 * @param classCount, the number of classes
+	 * @param seed
+	 */
+	public SyntheticJarGenerator(int classCount, long seed)
+	{
+		this.classCount = classCount;
+		this.seed = seed;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.out.println("Usage: SyntheticJarGenerator <output.jar> <classes> [seed]");
+			return;
+		}
+
+		final File outputJar = new File(args[0]);
+		final int classes = Integer.parseInt(args[1]);
+		final long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		new SyntheticJarGenerator(classes, seed).write(outputJar);
+		log.info("Wrote {} classes to {}", classes, outputJar.getAbsolutePath());
+	}
+
+	/**
+	 * Write the jar
+	 *
+	 * @param outputJar
+	 */
+	public void write(File outputJar) throws IOException
+	{
+		try (JarArchiveWriter writer = new JarArchiveWriter(outputJar))
+		{
+			for (int i = 0; i < classCount; i++)
+			{
+				// Every class has its own random stream, so a class does not depend on the ones before it
+				final Random random = new Random(seed * 31 + i);
+				final byte[] classFile = isEmpty(i) ? createEmptyClass(i) : createClass(i, random);
+				writer.putEntry(CompressedEntry.deflate(className(i) + ".class", classFile, Deflater.BEST_SPEED));
+			}
+		}
+	}
+
+	/**
+	 * @param i, the class index
+	 * @return the name of the class, the first class is the client
+	 */
+	static String className(int i)
+	{
+		return i == 0 ? "client" : name(i - 1);
+	}
+
+	/**
+	 * @return a name of at least two lower case letters, aa, ab, ..., zz, aaa, ...
+	 */
+	private static String name(int index)
+	{
+		final StringBuilder sb = new StringBuilder();
+		int n = index;
+		int length = 2;
+		int count = 26 * 26;
+		while (n >= count)
+		{
+			n -= count;
+			length++;
+			count *= 26;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			sb.append((char) ('a' + n % 26));
+			n /= 26;
+		}
+		return sb.reverse().toString();
+	}
+
+	private static boolean isEmpty(int i)
+	{
+		return i % 50 == 49;
+	}
+
+	private byte[] createEmptyClass(int i)
+	{
+		final ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, className(i), null, "java/lang/Object", null);
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private byte[] createClass(int i, Random random)
+	{
+		final String name = className(i);
+		final int superClass = i > 1 && random.nextInt(5) == 0 ? earlierClass(i, random) : -1;
+		final String superName = superClass >= 0 && !isEmpty(superClass) ? className(superClass) : "java/lang/Object";
+		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES)
+		{
+			@Override
+			protected String getCommonSuperClass(String type1, String type2)
+			{
+				// Only generated types meet, none of them can be loaded
+				return "java/lang/Object";
+			}
+		};
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+
+		final int[] multipliers = new int[FIELDS];
+		for (int f = 0; f < FIELDS; f++)
+		{
+			// Odd, so it has a modular inverse like the real encodings
+			multipliers[f] = random.nextInt() | 1;
+			final FieldVisitor fv = cw.visitField(Opcodes.ACC_STATIC, name(f), "I", null, null);
+			named(fv.visitAnnotation(NAMED, false), "field" + f);
+			fv.visitEnd();
+		}
+
+		final MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+
+		for (int m = 0; m < METHODS; m++)
+		{
+			createMethod(cw, i, m, multipliers, random);
+		}
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	/**
+	 * static int xx(int value, int predicate)
+	 */
+	private void createMethod(ClassWriter cw, int i, int m, int[] multipliers, Random random)
+	{
+		final String owner = className(i);
+		final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, name(FIELDS + m), "(II)I", null, null);
+		named(mv.visitAnnotation(NAMED, false), "method" + m);
+		mv.visitCode();
+
+		final Label start = new Label();
+		final Label end = new Label();
+		final Label handler = new Label();
+		mv.visitTryCatchBlock(start, end, handler, "java/lang/RuntimeException");
+		mv.visitLabel(start);
+
+		// Opaque predicate
+		final int predicate = random.nextInt(1000) + 1;
+		final Label valid = new Label();
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitLdcInsn(predicate);
+		mv.visitJumpInsn(Opcodes.IF_ICMPGE, valid);
+		mv.visitTypeInsn(Opcodes.NEW, "java/lang/IllegalStateException");
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IllegalStateException", "<init>", "()V", false);
+		mv.visitInsn(Opcodes.ATHROW);
+		mv.visitLabel(valid);
+
+		for (int s = 0, statements = 2 + random.nextInt(4); s < statements; s++)
+		{
+			final int f = random.nextInt(FIELDS);
+			switch (random.nextInt(4))
+			{
+				case 0:
+					// field = value * multiplier
+					mv.visitVarInsn(Opcodes.ILOAD, 0);
+					mv.visitLdcInsn(multipliers[f]);
+					mv.visitInsn(Opcodes.IMUL);
+					mv.visitFieldInsn(Opcodes.PUTSTATIC, owner, name(f), "I");
+					break;
+				case 1:
+					// value += multiplier * field, constant first
+					mv.visitVarInsn(Opcodes.ILOAD, 0);
+					mv.visitLdcInsn(multipliers[f]);
+					mv.visitFieldInsn(Opcodes.GETSTATIC, owner, name(f), "I");
+					mv.visitInsn(Opcodes.IMUL);
+					mv.visitInsn(Opcodes.IADD);
+					mv.visitVarInsn(Opcodes.ISTORE, 0);
+					break;
+				case 2:
+					// value ^= field * multiplier
+					mv.visitVarInsn(Opcodes.ILOAD, 0);
+					mv.visitFieldInsn(Opcodes.GETSTATIC, owner, name(f), "I");
+					mv.visitLdcInsn(multipliers[f]);
+					mv.visitInsn(Opcodes.IMUL);
+					mv.visitInsn(Opcodes.IXOR);
+					mv.visitVarInsn(Opcodes.ISTORE, 0);
+					break;
+				default:
+					// value = earlier.xx(value, predicate)
+					final int target = i > 1 ? earlierClass(i, random) : i;
+					if (isEmpty(target))
+					{
+						break;
+					}
+					mv.visitVarInsn(Opcodes.ILOAD, 0);
+					mv.visitLdcInsn(predicate + random.nextInt(100));
+					mv.visitMethodInsn(Opcodes.INVOKESTATIC, className(target), name(FIELDS + random.nextInt(METHODS - 1)), "(II)I", false);
+					mv.visitVarInsn(Opcodes.ISTORE, 0);
+					break;
+			}
+		}
+
+		if (m == 0 && i + 1 < classCount && isEmpty(i + 1) && (i + 1) % 100 == 49)
+		{
+			// Keep every other empty class referenced
+			mv.visitInsn(Opcodes.ACONST_NULL);
+			mv.visitTypeInsn(Opcodes.INSTANCEOF, className(i + 1));
+			mv.visitInsn(Opcodes.POP);
+		}
+
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitLabel(end);
+		mv.visitInsn(Opcodes.IRETURN);
+
+		// The handler rethrows, the obfuscator wraps the exception with the method name here
+		mv.visitLabel(handler);
+		mv.visitInsn(Opcodes.ATHROW);
+
+		// Dead code, the class writer replaces it with nop and athrow
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * @return a random class before the given one, skipping the client
+	 */
+	private static int earlierClass(int i, Random random)
+	{
+		return 1 + random.nextInt(i - 1);
+	}
+
+	private static void named(AnnotationVisitor av, String value)
+	{
+		av.visit("value", value);
+		av.visitEnd();
+	}
+}
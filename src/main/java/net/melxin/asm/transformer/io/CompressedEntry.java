@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.io;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A jar entry whose data has already been deflated, ready to be
+ * appended to a {@link JarArchiveWriter}
+ */
+public class CompressedEntry
+{
+	@Getter(AccessLevel.PUBLIC)
+	private final String name;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final long crc;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final long size;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final ByteBuffer compressedData;
+
+	public CompressedEntry(String name, long crc, long size, ByteBuffer compressedData)
+	{
+		this.name = name;
+		this.crc = crc;
+		this.size = size;
+		this.compressedData = compressedData;
+	}
+
+	/**
+	 * Deflate entry data, safe to call from any thread
+	 *
+	 * @param name, the entry name
+	 * @param data, the uncompressed data
+	 * @param level, the compression level (0-9)
+	 * @return the compressed entry
+	 */
+	public static CompressedEntry deflate(String name, byte[] data, int level)
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+
+		// Zip entries hold raw deflate data without zlib header
+		final Deflater deflater = new Deflater(level, true);
+		try
+		{
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buffer = new byte[Math.max(64, data.length / 2)];
+			int length = 0;
+			while (!deflater.finished())
+			{
+				if (length == buffer.length)
+				{
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+			return new CompressedEntry(name, crc.getValue(), data.length, ByteBuffer.wrap(buffer, 0, length));
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes pre-compressed entries to a jar file in the order they are appended.
+ * <p>
+ * Every entry gets the same fixed timestamp, so equal input always produces a
+ * byte-identical archive. Zip64 end records are written when the entry count
+ * or the central directory offset do not fit the classic format.
+ */
+public class JarArchiveWriter implements Closeable
+{
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+
+	private static final int VERSION_DEFLATE = 20;
+	private static final int VERSION_ZIP64 = 45;
+	private static final int FLAG_UTF8 = 0x0800;
+
+	// 1980-01-01 00:00:00, the earliest dos date
+	private static final int DOS_TIME = 0;
+	private static final int DOS_DATE = (1 << 5) | 1;
+
+	private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+	private static final int ZIP16_LIMIT = 0xFFFF;
+
+	private final OutputStream out;
+	private final List<CentralEntry> centralEntries = new ArrayList<>();
+	private long offset;
+
+	public JarArchiveWriter(File outputJar) throws IOException
+	{
+		this.out = new BufferedOutputStream(new FileOutputStream(outputJar), 1 << 16);
+	}
+
+	/**
+	 * Append a pre-compressed entry
+	 *
+	 * @param entry
+	 */
+	public void putEntry(CompressedEntry entry) throws IOException
+	{
+		final byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer data = entry.getCompressedData().duplicate();
+		if (entry.getSize() > ZIP32_LIMIT)
+		{
+			throw new ZipException("Entry too large: " + entry.getName());
+		}
+
+		final int flags = isAscii(name) ? 0 : FLAG_UTF8;
+		final CentralEntry centralEntry = new CentralEntry(name, flags, entry.getCrc(), data.remaining(), entry.getSize(), offset);
+		centralEntries.add(centralEntry);
+
+		writeInt(LOCAL_HEADER_SIGNATURE);
+		writeShort(VERSION_DEFLATE);
+		writeShort(flags);
+		writeShort(ZipEntry.DEFLATED);
+		writeShort(DOS_TIME);
+		writeShort(DOS_DATE);
+		writeInt(entry.getCrc());
+		writeInt(data.remaining());
+		writeInt(entry.getSize());
+		writeShort(name.length);
+		writeShort(0);
+		write(name);
+		write(data);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			writeCentralDirectory();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private void writeCentralDirectory() throws IOException
+	{
+		final long centralOffset = offset;
+		for (CentralEntry entry : centralEntries)
+		{
+			final boolean zip64 = entry.offset >= ZIP32_LIMIT;
+			writeInt(CENTRAL_HEADER_SIGNATURE);
+			writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+			writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+			writeShort(entry.flags);
+			writeShort(ZipEntry.DEFLATED);
+			writeShort(DOS_TIME);
+			writeShort(DOS_DATE);
+			writeInt(entry.crc);
+			writeInt(entry.compressedSize);
+			writeInt(entry.size);
+			writeShort(entry.name.length);
+			writeShort(zip64 ? 12 : 0);
+			writeShort(0); // comment length
+			writeShort(0); // disk number
+			writeShort(0); // internal attributes
+			writeInt(0); // external attributes
+			writeInt(zip64 ? ZIP32_LIMIT : entry.offset);
+			write(entry.name);
+			if (zip64)
+			{
+				writeShort(ZIP64_EXTRA_ID);
+				writeShort(8);
+				writeLong(entry.offset);
+			}
+		}
+		final long centralSize = offset - centralOffset;
+		final int count = centralEntries.size();
+
+		if (count >= ZIP16_LIMIT || centralOffset >= ZIP32_LIMIT || centralSize >= ZIP32_LIMIT)
+		{
+			final long zip64EndOffset = offset;
+			writeInt(ZIP64_END_SIGNATURE);
+			writeLong(44); // remaining record size
+			writeShort(VERSION_ZIP64);
+			writeShort(VERSION_ZIP64);
+			writeInt(0); // disk number
+			writeInt(0); // central directory disk
+			writeLong(count);
+			writeLong(count);
+			writeLong(centralSize);
+			writeLong(centralOffset);
+
+			writeInt(ZIP64_LOCATOR_SIGNATURE);
+			writeInt(0);
+			writeLong(zip64EndOffset);
+			writeInt(1); // total disks
+		}
+
+		writeInt(END_SIGNATURE);
+		writeShort(0);
+		writeShort(0);
+		writeShort(Math.min(count, ZIP16_LIMIT));
+		writeShort(Math.min(count, ZIP16_LIMIT));
+		writeInt(Math.min(centralSize, ZIP32_LIMIT));
+		writeInt(Math.min(centralOffset, ZIP32_LIMIT));
+		writeShort(0); // comment length
+	}
+
+	private void write(byte[] data) throws IOException
+	{
+		out.write(data);
+		offset += data.length;
+	}
+
+	private void write(ByteBuffer data) throws IOException
+	{
+		final int length = data.remaining();
+		if (data.hasArray())
+		{
+			out.write(data.array(), data.arrayOffset() + data.position(), length);
+		}
+		else
+		{
+			// Copy mapped data through a small buffer instead of the whole entry
+			final byte[] chunk = new byte[Math.min(length, 1 << 16)];
+			while (data.hasRemaining())
+			{
+				final int n = Math.min(chunk.length, data.remaining());
+				data.get(chunk, 0, n);
+				out.write(chunk, 0, n);
+			}
+		}
+		offset += length;
+	}
+
+	private void writeShort(int value) throws IOException
+	{
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+		offset += 2;
+	}
+
+	private void writeInt(long value) throws IOException
+	{
+		writeShort((int) (value & 0xFFFF));
+		writeShort((int) ((value >>> 16) & 0xFFFF));
+	}
+
+	private void writeLong(long value) throws IOException
+	{
+		writeInt(value & ZIP32_LIMIT);
+		writeInt(value >>> 32);
+	}
+
+	private static boolean isAscii(byte[] name)
+	{
+		for (byte b : name)
+		{
+			if (b < 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class CentralEntry
+	{
+		private final byte[] name;
+		private final int flags;
+		private final long crc;
+		private final long compressedSize;
+		private final long size;
+		private final long offset;
+
+		private CentralEntry(byte[] name, int flags, long crc, long compressedSize, long size, long offset)
+		{
+			this.name = name;
+			this.flags = flags;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.offset = offset;
+		}
+	}
+}
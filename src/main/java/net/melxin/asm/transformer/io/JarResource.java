@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.io;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Data of a jar entry, either held on the heap or as a slice of a mapped archive.
+ * <p>
+ * Deflated data is kept compressed until the uncompressed bytes are asked for,
+ * so it can be copied to the output jar as is.
+ */
+public class JarResource
+{
+	// ZipEntry.STORED or ZipEntry.DEFLATED
+	@Getter(AccessLevel.PUBLIC)
+	private final int method;
+
+	@Getter(AccessLevel.PUBLIC)
+	private final long crc;
+
+	// Uncompressed size
+	@Getter(AccessLevel.PUBLIC)
+	private final long size;
+
+	// Entry data as stored in the archive
+	private final ByteBuffer rawData;
+
+	JarResource(int method, long crc, long size, ByteBuffer rawData)
+	{
+		this.method = method;
+		this.crc = crc;
+		this.size = size;
+		this.rawData = rawData;
+	}
+
+	/**
+	 * Create a heap resource
+	 *
+	 * @param data, the uncompressed data
+	 * @return the resource
+	 */
+	public static JarResource of(byte[] data)
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		return new JarResource(ZipEntry.STORED, crc.getValue(), data.length, ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * @return the entry data as stored in the archive, compressed if the method is deflated
+	 */
+	public ByteBuffer getRawData()
+	{
+		return rawData.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the uncompressed data, a view of the archive for stored entries
+	 */
+	public ByteBuffer getData() throws ZipException
+	{
+		if (method == ZipEntry.STORED)
+		{
+			return getRawData();
+		}
+		return ByteBuffer.wrap(inflate());
+	}
+
+	/**
+	 * @return a copy of the uncompressed data
+	 */
+	public byte[] getBytes() throws ZipException
+	{
+		if (method == ZipEntry.STORED)
+		{
+			final byte[] data = new byte[rawData.remaining()];
+			rawData.duplicate().get(data);
+			return data;
+		}
+		return inflate();
+	}
+
+	/**
+	 * @return this resource with its data copied to the heap
+	 */
+	public JarResource toHeap()
+	{
+		if (rawData.hasArray())
+		{
+			return this;
+		}
+		final ByteBuffer copy = ByteBuffer.allocate(rawData.remaining());
+		copy.put(rawData.duplicate()).flip();
+		return new JarResource(method, crc, size, copy);
+	}
+
+	/**
+	 * Compress this resource for a {@link JarArchiveWriter}, deflated data is passed through
+	 *
+	 * @param name, the entry name
+	 * @param level, the compression level used for stored data
+	 * @return the compressed entry
+	 */
+	public CompressedEntry toCompressedEntry(String name, int level) throws ZipException
+	{
+		if (method == ZipEntry.DEFLATED)
+		{
+			return new CompressedEntry(name, crc, size, getRawData());
+		}
+		return CompressedEntry.deflate(name, getBytes(), level);
+	}
+
+	private byte[] inflate() throws ZipException
+	{
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new ZipException("Entry too large: " + size + " bytes");
+		}
+
+		final byte[] data = new byte[(int) size];
+		final Inflater inflater = new Inflater(true);
+		try
+		{
+			inflater.setInput(rawData.duplicate());
+			int length = 0;
+			while (length < data.length && !inflater.finished())
+			{
+				final int n = inflater.inflate(data, length, data.length - length);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				{
+					break;
+				}
+				length += n;
+			}
+			if (length != data.length)
+			{
+				throw new ZipException("Truncated deflate data, expected " + data.length + " bytes but got " + length);
+			}
+			return data;
+		}
+		catch (DataFormatException e)
+		{
+			throw new ZipException("Invalid deflate data: " + e.getMessage());
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.io;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only jar file backed by a memory mapped buffer.
+ * <p>
+ * The central directory is parsed directly and entry data is exposed as slices
+ * of the mapping, nothing is copied to the heap until an entry is inflated.
+ * The mapping stays valid after the file channel is closed, for as long as any
+ * resource of this jar is reachable.
+ */
+public class MappedJarFile
+{
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+	private static final int FLAG_ENCRYPTED = 0x0001;
+	private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+
+	private final ByteBuffer buffer;
+
+	// Entries in central directory order
+	@Getter(AccessLevel.PUBLIC)
+	private final List<Entry> entries;
+
+	private MappedJarFile(ByteBuffer buffer) throws ZipException
+	{
+		this.buffer = buffer;
+		this.entries = Collections.unmodifiableList(readCentralDirectory());
+	}
+
+	/**
+	 * Map a jar file
+	 *
+	 * @param file
+	 * @return the mapped jar file
+	 */
+	public static MappedJarFile open(File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new ZipException("Jar too large to map: " + file.getAbsolutePath());
+			}
+			final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			return new MappedJarFile(mapped.order(ByteOrder.LITTLE_ENDIAN));
+		}
+	}
+
+	private List<Entry> readCentralDirectory() throws ZipException
+	{
+		final int endOffset = findEnd();
+		long count = buffer.getShort(endOffset + 10) & 0xFFFF;
+		long centralOffset = buffer.getInt(endOffset + 16) & ZIP32_LIMIT;
+
+		// Zip64 end record, found through the locator right before the end record
+		final int locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+		if (locatorOffset >= 0 && buffer.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE)
+		{
+			final int zip64EndOffset = checkOffset(buffer.getLong(locatorOffset + 8));
+			if (buffer.getInt(zip64EndOffset) != ZIP64_END_SIGNATURE)
+			{
+				throw new ZipException("Invalid zip64 end record");
+			}
+			count = buffer.getLong(zip64EndOffset + 32);
+			centralOffset = buffer.getLong(zip64EndOffset + 48);
+		}
+
+		final List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+		int offset = checkOffset(centralOffset);
+		for (long i = 0; i < count; i++)
+		{
+			if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE)
+			{
+				throw new ZipException("Invalid central directory header at " + offset);
+			}
+
+			final int flags = buffer.getShort(offset + 8) & 0xFFFF;
+			final int method = buffer.getShort(offset + 10) & 0xFFFF;
+			final long crc = buffer.getInt(offset + 16) & ZIP32_LIMIT;
+			long compressedSize = buffer.getInt(offset + 20) & ZIP32_LIMIT;
+			long size = buffer.getInt(offset + 24) & ZIP32_LIMIT;
+			final int nameLength = buffer.getShort(offset + 28) & 0xFFFF;
+			final int extraLength = buffer.getShort(offset + 30) & 0xFFFF;
+			final int commentLength = buffer.getShort(offset + 32) & 0xFFFF;
+			long localOffset = buffer.getInt(offset + 42) & ZIP32_LIMIT;
+			final String name = readString(offset + CENTRAL_HEADER_SIZE, nameLength);
+
+			// Zip64 extra field holds the values that did not fit, in this order
+			if (size == ZIP32_LIMIT || compressedSize == ZIP32_LIMIT || localOffset == ZIP32_LIMIT)
+			{
+				int extra = offset + CENTRAL_HEADER_SIZE + nameLength;
+				final int extraEnd = extra + extraLength;
+				while (extra + 4 <= extraEnd)
+				{
+					final int id = buffer.getShort(extra) & 0xFFFF;
+					final int length = buffer.getShort(extra + 2) & 0xFFFF;
+					if (id == ZIP64_EXTRA_ID)
+					{
+						int value = extra + 4;
+						if (size == ZIP32_LIMIT)
+						{
+							size = buffer.getLong(value);
+							value += 8;
+						}
+						if (compressedSize == ZIP32_LIMIT)
+						{
+							compressedSize = buffer.getLong(value);
+							value += 8;
+						}
+						if (localOffset == ZIP32_LIMIT)
+						{
+							localOffset = buffer.getLong(value);
+						}
+						break;
+					}
+					extra += 4 + length;
+				}
+			}
+
+			if ((flags & FLAG_ENCRYPTED) != 0)
+			{
+				throw new ZipException("Encrypted entry: " + name);
+			}
+			if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+			{
+				throw new ZipException("Unsupported compression method " + method + " for entry: " + name);
+			}
+
+			entries.add(new Entry(name, method, crc, size, slice(dataOffset(name, checkOffset(localOffset)), compressedSize)));
+			offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	private int findEnd() throws ZipException
+	{
+		final int last = buffer.limit() - END_SIZE;
+		final int first = Math.max(0, last - MAX_COMMENT_SIZE);
+		for (int offset = last; offset >= first; offset--)
+		{
+			if (buffer.getInt(offset) == END_SIGNATURE)
+			{
+				return offset;
+			}
+		}
+		throw new ZipException("End of central directory not found");
+	}
+
+	private int dataOffset(String name, int localOffset) throws ZipException
+	{
+		if (buffer.getInt(localOffset) != LOCAL_HEADER_SIGNATURE)
+		{
+			throw new ZipException("Invalid local header for entry: " + name);
+		}
+		final int nameLength = buffer.getShort(localOffset + 26) & 0xFFFF;
+		final int extraLength = buffer.getShort(localOffset + 28) & 0xFFFF;
+		return localOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+	}
+
+	private ByteBuffer slice(int offset, long length) throws ZipException
+	{
+		if (offset + length > buffer.limit())
+		{
+			throw new ZipException("Entry data out of bounds at " + offset);
+		}
+		final ByteBuffer slice = buffer.duplicate();
+		slice.position(offset).limit(offset + (int) length);
+		return slice.slice();
+	}
+
+	private String readString(int offset, int length)
+	{
+		final byte[] bytes = new byte[length];
+		buffer.duplicate().position(offset).get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int checkOffset(long offset) throws ZipException
+	{
+		if (offset < 0 || offset >= buffer.limit())
+		{
+			throw new ZipException("Invalid offset: " + offset);
+		}
+		return (int) offset;
+	}
+
+	public static class Entry
+	{
+		@Getter(AccessLevel.PUBLIC)
+		private final String name;
+
+		@Getter(AccessLevel.PUBLIC)
+		private final JarResource resource;
+
+		private Entry(String name, int method, long crc, long size, ByteBuffer rawData)
+		{
+			this.name = name;
+			this.resource = new JarResource(method, crc, size, rawData);
+		}
+
+		public boolean isDirectory()
+		{
+			return name.endsWith("/");
+		}
+	}
+}
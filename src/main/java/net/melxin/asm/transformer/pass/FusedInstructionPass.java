@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.pass;
+
+import net.melxin.asm.transformer.Aspect;
+import net.melxin.asm.transformer.ClassTransformer;
+import net.melxin.asm.transformer.JarEntryTransformer;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Runs several {@link InstructionHandler}s in a single walk over every method,
+ * instead of one full walk per pass.
+ */
+public class FusedInstructionPass implements ClassTransformer
+{
+	private static final int OPCODES = 256;
+	private static final int INSN_TYPES = 16;
+
+	private final InstructionHandler[] handlers;
+
+	// Handlers per opcode, and per node type for opcode-less nodes like labels
+	private final AtomicReferenceArray<InstructionHandler[]> byOpcode = new AtomicReferenceArray<>(OPCODES);
+	private final AtomicReferenceArray<InstructionHandler[]> byInsnType = new AtomicReferenceArray<>(INSN_TYPES);
+
+	public FusedInstructionPass(InstructionHandler... handlers)
+	{
+		this.handlers = handlers.clone();
+	}
+
+	public List<InstructionHandler> getHandlers()
+	{
+		return List.of(handlers);
+	}
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		final Set<Aspect> reads = EnumSet.of(Aspect.INSTRUCTIONS);
+		for (InstructionHandler handler : handlers)
+		{
+			if (handler instanceof JarEntryTransformer)
+			{
+				reads.addAll(((JarEntryTransformer) handler).reads());
+			}
+		}
+		return reads;
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		final Set<Aspect> writes = EnumSet.of(Aspect.INSTRUCTIONS);
+		for (InstructionHandler handler : handlers)
+		{
+			if (handler instanceof JarEntryTransformer)
+			{
+				writes.addAll(((JarEntryTransformer) handler).writes());
+			}
+		}
+		return writes;
+	}
+
+	@Override
+	public boolean transform(ClassNode classNode)
+	{
+		boolean changed = false;
+		for (MethodNode method : classNode.methods)
+		{
+			for (InstructionHandler handler : handlers)
+			{
+				changed |= handler.visitMethod(classNode, method);
+			}
+
+			final InsnList instructions = method.instructions;
+			AbstractInsnNode insn = instructions.getFirst();
+			while (insn != null)
+			{
+				final AbstractInsnNode previous = insn.getPrevious();
+				final AbstractInsnNode next = insn.getNext();
+				for (InstructionHandler handler : getHandlers(insn))
+				{
+					changed |= handler.visitInsn(classNode, method, insn);
+					if (isRemoved(instructions, insn))
+					{
+						break;
+					}
+				}
+
+				// Continue after the current instruction, or where it was
+				if (!isRemoved(instructions, insn))
+				{
+					insn = insn.getNext();
+				}
+				else if (previous == null)
+				{
+					insn = instructions.getFirst();
+				}
+				else if (!isRemoved(instructions, previous))
+				{
+					insn = previous.getNext();
+				}
+				else if (next != null && !isRemoved(instructions, next))
+				{
+					insn = next;
+				}
+				else
+				{
+					break;
+				}
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		long count = -1;
+		for (InstructionHandler handler : handlers)
+		{
+			final long handlerCount = handler.getChangeCount();
+			if (handlerCount >= 0)
+			{
+				count = Math.max(count, 0) + handlerCount;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void complete()
+	{
+		for (InstructionHandler handler : handlers)
+		{
+			handler.complete();
+		}
+	}
+
+	private InstructionHandler[] getHandlers(AbstractInsnNode insn)
+	{
+		final int opcode = insn.getOpcode();
+		final int insnType = insn.getType();
+		final AtomicReferenceArray<InstructionHandler[]> table = opcode >= 0 ? byOpcode : byInsnType;
+		final int index = opcode >= 0 ? opcode : insnType;
+		InstructionHandler[] dispatch = table.get(index);
+		if (dispatch == null)
+		{
+			// Built on first use, racing threads compute the same array
+			final List<InstructionHandler> matching = new ArrayList<>();
+			for (InstructionHandler handler : handlers)
+			{
+				if ((opcode >= 0 && contains(handler.getOpcodes(), opcode)) || contains(handler.getInsnTypes(), insnType))
+				{
+					matching.add(handler);
+				}
+			}
+			dispatch = matching.toArray(new InstructionHandler[0]);
+			table.set(index, dispatch);
+		}
+		return dispatch;
+	}
+
+	private static boolean contains(int[] values, int value)
+	{
+		return Arrays.stream(values).anyMatch(v -> v == value);
+	}
+
+	private static boolean isRemoved(InsnList instructions, AbstractInsnNode insn)
+	{
+		// InsnList.remove unlinks the node from both neighbours
+		return insn.getPrevious() == null && insn.getNext() == null && instructions.getFirst() != insn;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.pass;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * A local pass run by {@link FusedInstructionPass}, which walks every method once
+ * and hands each instruction to the handlers registered for its opcode or node type.
+ * <p>
+ * Handlers see the instruction stream as left by the handlers declared before them.
+ * A handler may remove or insert instructions anywhere in the method, the walk
+ * continues after the current instruction, or after its predecessor if it was removed.
+ */
+public interface InstructionHandler
+{
+	int[] NONE = new int[0];
+
+	/**
+	 * @return the opcodes to receive, e.g. Opcodes.GOTO
+	 */
+	default int[] getOpcodes()
+	{
+		return NONE;
+	}
+
+	/**
+	 * @return the node types to receive, e.g. AbstractInsnNode.FIELD_INSN
+	 */
+	default int[] getInsnTypes()
+	{
+		return NONE;
+	}
+
+	/**
+	 * Called for every method before its instructions
+	 *
+	 * @param classNode
+	 * @param method
+	 * @return true if the method was changed
+	 */
+	default boolean visitMethod(ClassNode classNode, MethodNode method)
+	{
+		return false;
+	}
+
+	/**
+	 * Called for every instruction with a registered opcode or node type
+	 *
+	 * @param classNode
+	 * @param method
+	 * @param insn
+	 * @return true if the method was changed
+	 */
+	default boolean visitInsn(ClassNode classNode, MethodNode method, AbstractInsnNode insn)
+	{
+		return false;
+	}
+
+	/**
+	 * @return the number of items changed so far, or -1 if not counted
+	 */
+	default long getChangeCount()
+	{
+		return -1;
+	}
+
+	/**
+	 * Called once after every class has been visited
+	 */
+	default void complete()
+	{
+	}
+}
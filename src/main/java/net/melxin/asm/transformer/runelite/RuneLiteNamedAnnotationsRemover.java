@@ -25,64 +25,149 @@
 package net.melxin.asm.transformer.runelite;
 
 import lombok.extern.slf4j.Slf4j;
-import net.melxin.asm.transformer.JarEntryTransformer;
-import net.melxin.asm.transformer.JarEntryGroup;
+import net.melxin.asm.transformer.Aspect;
+import net.melxin.asm.transformer.ClassEntry;
+import net.melxin.asm.transformer.StreamingTransformer;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
+import java.util.EnumSet;
 import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class RuneLiteNamedAnnotationsRemover implements JarEntryTransformer
+public class RuneLiteNamedAnnotationsRemover implements StreamingTransformer
 {
-	private int removedFieldAnnotations;
-	private int removedMethodAnnotations;
+	private static final String namedAnnotationDescriptor = "Ljavax/inject/Named;";
+
+	private final AtomicInteger removedFieldAnnotations = new AtomicInteger();
+	private final AtomicInteger removedMethodAnnotations = new AtomicInteger();
+
+	// Count at the last completed run, each run logs only its own changes
+	private int loggedAnnotations;
+
+	@Override
+	public Set<Aspect> reads()
+	{
+		return EnumSet.of(Aspect.ANNOTATIONS);
+	}
+
+	@Override
+	public Set<Aspect> writes()
+	{
+		return EnumSet.of(Aspect.ANNOTATIONS);
+	}
+
+	@Override
+	public boolean accepts(ClassEntry classEntry)
+	{
+		final String className = classEntry.getName();
+		return className.length() <= 2 || className.equals("client") || className.startsWith("com/jagex/") || className.startsWith("rl");
+	}
 
 	@Override
-	public void transform(JarEntryGroup jarEntryGroup)
+	public boolean transform(ClassNode classNode)
 	{
-		final String namedAnnotationDescriptor = "Ljavax/inject/Named;";
-		for (ClassNode classNode : jarEntryGroup.getClassNodes())
+		boolean changed = false;
+		for (FieldNode field : classNode.fields)
 		{
-			final String className = classNode.name;
-			if (className.length() > 2 && !className.equals("client") && !className.startsWith("com/jagex/") && !className.startsWith("rl"))
+			if (field.invisibleAnnotations != null)
 			{
-				continue;
+				for (ListIterator<AnnotationNode> iter = field.invisibleAnnotations.listIterator(); iter.hasNext(); )
+				{
+					final AnnotationNode ian = iter.next();
+					if (ian.desc.equals(namedAnnotationDescriptor) /*&& ian.values.get(1).toString().length() > 1000*/)
+					{
+						iter.remove();
+						removedFieldAnnotations.incrementAndGet();
+						changed = true;
+					}
+				}
 			}
+		}
 
-			for (FieldNode field : classNode.fields)
+		for (MethodNode method : classNode.methods)
+		{
+			if (method.invisibleAnnotations != null)
 			{
-				if (field.invisibleAnnotations != null)
+				for (ListIterator<AnnotationNode> iter = method.invisibleAnnotations.listIterator(); iter.hasNext(); )
 				{
-					for (ListIterator<AnnotationNode> iter = field.invisibleAnnotations.listIterator(); iter.hasNext(); )
+					final AnnotationNode ian = iter.next();
+					if (ian.desc.equals(namedAnnotationDescriptor) /*&& ian.values.get(1).toString().length() > 1000*/)
 					{
-						final AnnotationNode ian = iter.next();
-						if (ian.desc.equals(namedAnnotationDescriptor) /*&& ian.values.get(1).toString().length() > 1000*/)
+						iter.remove();
+						removedMethodAnnotations.incrementAndGet();
+						changed = true;
+					}
+				}
+			}
+		}
+		return changed;
+	}
+
+	@Override
+	public ClassVisitor adapt(ClassVisitor next)
+	{
+		return new ClassVisitor(Opcodes.ASM9, next)
+		{
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value)
+			{
+				final FieldVisitor fv = super.visitField(access, name, descriptor, signature, value);
+				return fv == null ? null : new FieldVisitor(Opcodes.ASM9, fv)
+				{
+					@Override
+					public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
+					{
+						if (!visible && descriptor.equals(namedAnnotationDescriptor))
 						{
-							iter.remove();
-							removedFieldAnnotations++;
+							removedFieldAnnotations.incrementAndGet();
+							return null;
 						}
+						return super.visitAnnotation(descriptor, visible);
 					}
-				}
+				};
 			}
 
-			for (MethodNode method : classNode.methods)
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions)
 			{
-				if (method.invisibleAnnotations != null)
+				final MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+				return mv == null ? null : new MethodVisitor(Opcodes.ASM9, mv)
 				{
-					for (ListIterator<AnnotationNode> iter = method.invisibleAnnotations.listIterator(); iter.hasNext(); )
+					@Override
+					public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
 					{
-						final AnnotationNode ian = iter.next();
-						if (ian.desc.equals(namedAnnotationDescriptor) /*&& ian.values.get(1).toString().length() > 1000*/)
+						if (!visible && descriptor.equals(namedAnnotationDescriptor))
 						{
-							iter.remove();
-							removedMethodAnnotations++;
+							removedMethodAnnotations.incrementAndGet();
+							return null;
 						}
+						return super.visitAnnotation(descriptor, visible);
 					}
-				}
+				};
 			}
-		}
-		log.info("Removed: {} named annotations", removedFieldAnnotations + removedMethodAnnotations);
+		};
+	}
+
+	@Override
+	public long getChangeCount()
+	{
+		return removedFieldAnnotations.get() + removedMethodAnnotations.get();
+	}
+
+	@Override
+	public void complete()
+	{
+		final int removed = removedFieldAnnotations.get() + removedMethodAnnotations.get();
+		log.info("Removed: {} named annotations", removed - loggedAnnotations);
+		loggedAnnotations = removed;
 	}
 }
\ No newline at end of file
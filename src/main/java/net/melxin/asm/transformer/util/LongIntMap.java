@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.util;
+
+/**
+ * Open addressing hash map from long keys to int values, without boxing.
+ */
+public class LongIntMap
+{
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private final int missingValue;
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size;
+
+	/**
+	 * Constructor
+	 *
+	 * @param expectedSize
+	 * @param missingValue, returned by {@link #get(long)} for absent keys
+	 */
+	public LongIntMap(int expectedSize, int missingValue)
+	{
+		this.missingValue = missingValue;
+		final int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.used = new boolean[capacity];
+	}
+
+	public int get(long key)
+	{
+		final int mask = keys.length - 1;
+		for (int slot = mix(key) & mask; used[slot]; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+			{
+				return values[slot];
+			}
+		}
+		return missingValue;
+	}
+
+	/**
+	 * Put a value
+	 *
+	 * @param key
+	 * @param value
+	 * @return the previous value or the missing value
+	 */
+	public int put(long key, int value)
+	{
+		final int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		for (; used[slot]; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+			{
+				final int previous = values[slot];
+				values[slot] = value;
+				return previous;
+			}
+		}
+
+		used[slot] = true;
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > keys.length * LOAD_FACTOR)
+		{
+			rehash(keys.length << 1);
+		}
+		return missingValue;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	private void rehash(int capacity)
+	{
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		final boolean[] oldUsed = used;
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		final int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldUsed[i])
+			{
+				int slot = mix(oldKeys[i]) & mask;
+				while (used[slot])
+				{
+					slot = (slot + 1) & mask;
+				}
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static int mix(long key)
+	{
+		// Spread both halves, the keys are pairs of small dense ids
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LongIntMap[size=" + size + ", capacity=" + keys.length + "]";
+	}
+
+	/**
+	 * Pack two ints into a key
+	 *
+	 * @param high
+	 * @param low
+	 * @return the key
+	 */
+	public static long key(int high, int low)
+	{
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import net.melxin.asm.transformer.io.MappedJarFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reads jars for the tests
+ */
+public class TestJars
+{
+	private TestJars()
+	{
+	}
+
+	/**
+	 * Read the entries of a jar
+	 *
+	 * @param jar
+	 * @return the uncompressed data of each entry by name, in the order of the jar
+	 */
+	public static Map<String, byte[]> readEntries(File jar) throws IOException
+	{
+		final Map<String, byte[]> entries = new LinkedHashMap<>();
+		for (MappedJarFile.Entry entry : MappedJarFile.open(jar).getEntries())
+		{
+			entries.put(entry.getName(), entry.getResource().getBytes());
+		}
+		return entries;
+	}
+
+	/**
+	 * Assert two jars have the same entries in the same order with the same data,
+	 * entry times and compression are not compared
+	 *
+	 * @param expected
+	 * @param actual
+	 */
+	public static void assertSameEntries(File expected, File actual) throws IOException
+	{
+		final Map<String, byte[]> expectedEntries = readEntries(expected);
+		final Map<String, byte[]> actualEntries = readEntries(actual);
+		assertEquals(new ArrayList<>(expectedEntries.keySet()), new ArrayList<>(actualEntries.keySet()));
+		for (Map.Entry<String, byte[]> entry : expectedEntries.entrySet())
+		{
+			assertArrayEquals(entry.getValue(), actualEntries.get(entry.getKey()), entry.getKey());
+		}
+	}
+}
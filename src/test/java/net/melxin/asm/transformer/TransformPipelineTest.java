@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer;
+
+import net.melxin.asm.transformer.analysis.AnalysisBudget;
+import net.melxin.asm.transformer.basic.ExprArgOrder;
+import net.melxin.asm.transformer.basic.IllegalStateExceptionRemover;
+import net.melxin.asm.transformer.basic.ReachabilityShrinker;
+import net.melxin.asm.transformer.basic.RedundantGotoRemover;
+import net.melxin.asm.transformer.basic.RuntimeTryCatchExceptionBlockRemover;
+import net.melxin.asm.transformer.basic.SortMembersByName;
+import net.melxin.asm.transformer.basic.UnreachableInstructionRemover;
+import net.melxin.asm.transformer.basic.UnusedClassRemover;
+import net.melxin.asm.transformer.basic.UnusedFieldRemover;
+import net.melxin.asm.transformer.basic.UnusedMethodRemover;
+import net.melxin.asm.transformer.benchmark.SyntheticJarGenerator;
+import net.melxin.asm.transformer.pass.FusedInstructionPass;
+import net.melxin.asm.transformer.runelite.RuneLiteNamedAnnotationsRemover;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the transformers of {@link Main} over a synthetic jar
+ */
+class TransformPipelineTest
+{
+	private static final int CLASS_COUNT = 300;
+
+	@TempDir
+	File directory;
+
+	private File inputJar;
+
+	@BeforeEach
+	void generateInputJar() throws IOException
+	{
+		inputJar = new File(directory, "input.jar");
+		new SyntheticJarGenerator(CLASS_COUNT, 1).write(inputJar);
+	}
+
+	@Test
+	void parallelRunMatchesSingleThreadedRun() throws IOException
+	{
+		final File sequential = new File(directory, "sequential.jar");
+		final File parallel = new File(directory, "parallel.jar");
+		transform(sequential, 1, null, false);
+		transform(parallel, 4, null, false);
+		TestJars.assertSameEntries(sequential, parallel);
+	}
+
+	@Test
+	void cachedRunMatchesUncachedRun() throws IOException
+	{
+		final File uncached = new File(directory, "uncached.jar");
+		final File cold = new File(directory, "cold.jar");
+		final File warm = new File(directory, "warm.jar");
+		final File cacheDirectory = new File(directory, "cache");
+		transform(uncached, 4, null, false);
+		transform(cold, 4, cacheDirectory, false);
+		transform(warm, 4, cacheDirectory, false);
+		TestJars.assertSameEntries(uncached, cold);
+		TestJars.assertSameEntries(uncached, warm);
+	}
+
+	@Test
+	void typedFramesPassFullVerification() throws IOException
+	{
+		final File outputJar = new File(directory, "typed.jar");
+		transform(outputJar, 4, null, true);
+
+		final Map<String, String> failures;
+		try (ClassVerifier verifier = new ClassVerifier(VerificationLevel.FULL, 100, null, 1))
+		{
+			int classCount = 0;
+			for (Map.Entry<String, byte[]> entry : TestJars.readEntries(outputJar).entrySet())
+			{
+				if (entry.getKey().endsWith(".class"))
+				{
+					verifier.verify(entry.getKey(), entry.getValue());
+					classCount++;
+				}
+			}
+			assertTrue(classCount > 0);
+			failures = verifier.finish();
+		}
+		assertEquals(Collections.emptyMap(), failures);
+	}
+
+	/**
+	 * Transform the input jar like {@link Main} with its default options
+	 *
+	 * @param outputJar
+	 * @param threads
+	 * @param cacheDirectory, the directory of the transformation cache, null to run without it
+	 * @param typedFrames
+	 */
+	private void transform(File outputJar, int threads, File cacheDirectory, boolean typedFrames)
+	{
+		final AnalysisBudget analysisBudget = new AnalysisBudget(0, 10_000_000, 0);
+		final ReachabilityShrinker shrinker = new ReachabilityShrinker(List.of("client", "@Ljavax/inject/Named;"),
+			List.of(new UnusedFieldRemover(), new UnusedMethodRemover(), new UnusedClassRemover()));
+		final List<JarEntryTransformer> transformers = List.of(
+			new UnreachableInstructionRemover(analysisBudget),
+			new FusedInstructionPass(new RedundantGotoRemover(), new RuntimeTryCatchExceptionBlockRemover()),
+			new SortMembersByName(),
+			shrinker,
+			new FusedInstructionPass(new ExprArgOrder(), new IllegalStateExceptionRemover()),
+			new RuneLiteNamedAnnotationsRemover()
+		);
+
+		final JarEntryGroup jarEntryGroup = new JarEntryGroup(inputJar, threads);
+		jarEntryGroup.setTypedFrames(typedFrames);
+		jarEntryGroup.setAnalysisBudget(analysisBudget);
+		if (cacheDirectory != null)
+		{
+			final String fingerprint = TransformationCache.fingerprint(transformers, jarEntryGroup.getWriterFlags(), typedFrames, analysisBudget, 1, List.of());
+			jarEntryGroup.useCache(new TransformationCache(cacheDirectory, fingerprint), shrinker.hasRoots(jarEntryGroup.getClassEntries()));
+		}
+		new TransformerRunner(transformers, threads).run(jarEntryGroup);
+		jarEntryGroup.writeOutputJar(outputJar);
+		assertTrue(outputJar.isFile(), "Output jar was not written");
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2025, Melxin <https://github.com/melxin>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.melxin.asm.transformer.io;
+
+import net.melxin.asm.transformer.TestJars;
+import net.melxin.asm.transformer.benchmark.SyntheticJarGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.Deflater;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class JarArchiveRoundTripTest
+{
+	private static final int CLASS_COUNT = 200;
+
+	@TempDir
+	File directory;
+
+	@Test
+	void generatedJarReadsBackLikeTheJdk() throws IOException
+	{
+		final File jar = new File(directory, "synthetic.jar");
+		new SyntheticJarGenerator(CLASS_COUNT, 1).write(jar);
+
+		final Map<String, byte[]> entries = TestJars.readEntries(jar);
+		assertEquals(CLASS_COUNT, entries.size());
+		try (JarFile jarFile = new JarFile(jar))
+		{
+			for (JarEntry jarEntry : Collections.list(jarFile.entries()))
+			{
+				final byte[] data = entries.get(jarEntry.getName());
+				assertNotNull(data, jarEntry.getName());
+				assertArrayEquals(jarFile.getInputStream(jarEntry).readAllBytes(), data, jarEntry.getName());
+			}
+		}
+		for (Map.Entry<String, byte[]> entry : entries.entrySet())
+		{
+			assertEquals(entry.getKey(), new ClassReader(entry.getValue()).getClassName() + ".class");
+		}
+	}
+
+	@Test
+	void copiedEntriesKeepTheirData() throws IOException
+	{
+		final File jar = new File(directory, "synthetic.jar");
+		final File copy = new File(directory, "copy.jar");
+		new SyntheticJarGenerator(CLASS_COUNT, 2).write(jar);
+
+		// Deflated entries are passed through without being inflated
+		try (JarArchiveWriter writer = new JarArchiveWriter(copy))
+		{
+			for (MappedJarFile.Entry entry : MappedJarFile.open(jar).getEntries())
+			{
+				writer.putEntry(entry.getResource().toCompressedEntry(entry.getName(), Deflater.BEST_SPEED));
+			}
+		}
+		TestJars.assertSameEntries(jar, copy);
+	}
+
+	@Test
+	void sameSeedGivesIdenticalJar() throws IOException
+	{
+		final File first = new File(directory, "first.jar");
+		final File second = new File(directory, "second.jar");
+		new SyntheticJarGenerator(CLASS_COUNT, 3).write(first);
+		new SyntheticJarGenerator(CLASS_COUNT, 3).write(second);
+		assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+	}
+}